@@ -0,0 +1,37 @@
+package com.soaresdev.uploaddownloadapi.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.archive")
+public class FileArchiveConfig {
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private DataSize maxBufferedSize = DataSize.ofMegabytes(64);
+    private DataSize maxBufferedEntrySize = DataSize.ofMegabytes(1);
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public DataSize getMaxBufferedSize() {
+        return maxBufferedSize;
+    }
+
+    public void setMaxBufferedSize(DataSize maxBufferedSize) {
+        this.maxBufferedSize = maxBufferedSize;
+    }
+
+    public DataSize getMaxBufferedEntrySize() {
+        return maxBufferedEntrySize;
+    }
+
+    public void setMaxBufferedEntrySize(DataSize maxBufferedEntrySize) {
+        this.maxBufferedEntrySize = maxBufferedEntrySize;
+    }
+}
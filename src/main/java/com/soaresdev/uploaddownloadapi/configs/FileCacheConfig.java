@@ -0,0 +1,60 @@
+package com.soaresdev.uploaddownloadapi.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.cache")
+public class FileCacheConfig {
+    private boolean enabled = true;
+    private EvictionPolicy policy = EvictionPolicy.TINY_LFU;
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+    private DataSize maxFileSize = DataSize.ofMegabytes(1);
+    private boolean offHeap;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(EvictionPolicy policy) {
+        this.policy = policy;
+    }
+
+    public DataSize getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(DataSize maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public DataSize getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(DataSize maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public enum EvictionPolicy {
+        LRU,
+        TINY_LFU
+    }
+}
@@ -0,0 +1,29 @@
+package com.soaresdev.uploaddownloadapi.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.compression")
+public class FileCompressionConfig {
+    private boolean enabled;
+    private List<String> mimeTypes = List.of("text/*", "application/json", "application/xml", "application/javascript",
+            "image/svg+xml");
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getMimeTypes() {
+        return mimeTypes;
+    }
+
+    public void setMimeTypes(List<String> mimeTypes) {
+        this.mimeTypes = mimeTypes;
+    }
+}
@@ -0,0 +1,37 @@
+package com.soaresdev.uploaddownloadapi.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.database")
+public class FileDatabaseConfig {
+    private DataSize chunkSize = DataSize.ofMegabytes(1);
+    private boolean deduplicationEnabled;
+    private int batchSize = 50;
+
+    public DataSize getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(DataSize chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public boolean isDeduplicationEnabled() {
+        return deduplicationEnabled;
+    }
+
+    public void setDeduplicationEnabled(boolean deduplicationEnabled) {
+        this.deduplicationEnabled = deduplicationEnabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
@@ -0,0 +1,38 @@
+package com.soaresdev.uploaddownloadapi.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.multipart")
+public class FileMultipartConfig {
+    private DataSize maxFileSize = DataSize.ofGigabytes(5);
+    private DataSize maxRequestSize = DataSize.ofGigabytes(10);
+    //the headers of a single part (name, type, disposition) are buffered while parsed, so they are kept small
+    private DataSize maxPartHeaderSize = DataSize.ofKilobytes(1);
+
+    public DataSize getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(DataSize maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public DataSize getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    public void setMaxRequestSize(DataSize maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    public DataSize getMaxPartHeaderSize() {
+        return maxPartHeaderSize;
+    }
+
+    public void setMaxPartHeaderSize(DataSize maxPartHeaderSize) {
+        this.maxPartHeaderSize = maxPartHeaderSize;
+    }
+}
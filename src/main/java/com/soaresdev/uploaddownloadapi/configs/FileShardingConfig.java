@@ -0,0 +1,46 @@
+package com.soaresdev.uploaddownloadapi.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.sharding")
+public class FileShardingConfig {
+    private boolean enabled;
+    private int depth = 2;
+    private int width = 2;
+    private Duration migrationGracePeriod = Duration.ofSeconds(30);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public Duration getMigrationGracePeriod() {
+        return migrationGracePeriod;
+    }
+
+    public void setMigrationGracePeriod(Duration migrationGracePeriod) {
+        this.migrationGracePeriod = migrationGracePeriod;
+    }
+}
@@ -2,11 +2,22 @@ package com.soaresdev.uploaddownloadapi.configs;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 @ConfigurationProperties(prefix = "file")
 public class FileSystemConfig {
     private String uploadDirectory;
+    private String indexSnapshot;
+    private boolean sendfileEnabled = true;
+    private DataSize sendfileMinSize = DataSize.ofKilobytes(48);
+    private boolean deduplicationEnabled;
+    private int batchUploadThreads = Runtime.getRuntime().availableProcessors();
+    private List<String> volumes = new ArrayList<>();
+    private PlacementPolicy placementPolicy = PlacementPolicy.FREE_SPACE;
+    private DataSize volumeMinFreeSpace = DataSize.ofMegabytes(100);
 
     public String getUploadDirectory() {
         return uploadDirectory;
@@ -15,4 +26,74 @@ public class FileSystemConfig {
     public void setUploadDirectory(String uploadDirectory) {
         this.uploadDirectory = uploadDirectory;
     }
-}
\ No newline at end of file
+
+    public String getIndexSnapshot() {
+        return indexSnapshot;
+    }
+
+    public void setIndexSnapshot(String indexSnapshot) {
+        this.indexSnapshot = indexSnapshot;
+    }
+
+    public boolean isSendfileEnabled() {
+        return sendfileEnabled;
+    }
+
+    public void setSendfileEnabled(boolean sendfileEnabled) {
+        this.sendfileEnabled = sendfileEnabled;
+    }
+
+    public DataSize getSendfileMinSize() {
+        return sendfileMinSize;
+    }
+
+    public void setSendfileMinSize(DataSize sendfileMinSize) {
+        this.sendfileMinSize = sendfileMinSize;
+    }
+
+    public boolean isDeduplicationEnabled() {
+        return deduplicationEnabled;
+    }
+
+    public void setDeduplicationEnabled(boolean deduplicationEnabled) {
+        this.deduplicationEnabled = deduplicationEnabled;
+    }
+
+    public int getBatchUploadThreads() {
+        return batchUploadThreads;
+    }
+
+    public void setBatchUploadThreads(int batchUploadThreads) {
+        this.batchUploadThreads = batchUploadThreads;
+    }
+
+    public List<String> getVolumes() {
+        return volumes;
+    }
+
+    public void setVolumes(List<String> volumes) {
+        this.volumes = volumes;
+    }
+
+    public PlacementPolicy getPlacementPolicy() {
+        return placementPolicy;
+    }
+
+    public void setPlacementPolicy(PlacementPolicy placementPolicy) {
+        this.placementPolicy = placementPolicy;
+    }
+
+    public DataSize getVolumeMinFreeSpace() {
+        return volumeMinFreeSpace;
+    }
+
+    public void setVolumeMinFreeSpace(DataSize volumeMinFreeSpace) {
+        this.volumeMinFreeSpace = volumeMinFreeSpace;
+    }
+
+    public enum PlacementPolicy {
+        FREE_SPACE,
+        ROUND_ROBIN,
+        LEAST_IN_FLIGHT
+    }
+}
@@ -0,0 +1,74 @@
+package com.soaresdev.uploaddownloadapi.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.database.tiering")
+public class FileTieringConfig {
+    private boolean enabled;
+    private DataSize threshold = DataSize.ofMegabytes(1);
+    private String directory = "tiered";
+    private Duration moverInterval = Duration.ofMinutes(10);
+    private int moverBatchSize = 100;
+    private Duration coldAfter = Duration.ofDays(30);
+    private Duration gracePeriod = Duration.ofSeconds(30);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public DataSize getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(DataSize threshold) {
+        this.threshold = threshold;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public Duration getMoverInterval() {
+        return moverInterval;
+    }
+
+    public void setMoverInterval(Duration moverInterval) {
+        this.moverInterval = moverInterval;
+    }
+
+    public int getMoverBatchSize() {
+        return moverBatchSize;
+    }
+
+    public void setMoverBatchSize(int moverBatchSize) {
+        this.moverBatchSize = moverBatchSize;
+    }
+
+    public Duration getColdAfter() {
+        return coldAfter;
+    }
+
+    public void setColdAfter(Duration coldAfter) {
+        this.coldAfter = coldAfter;
+    }
+
+    public Duration getGracePeriod() {
+        return gracePeriod;
+    }
+
+    public void setGracePeriod(Duration gracePeriod) {
+        this.gracePeriod = gracePeriod;
+    }
+}
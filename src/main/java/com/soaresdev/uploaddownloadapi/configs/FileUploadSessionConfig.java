@@ -0,0 +1,47 @@
+package com.soaresdev.uploaddownloadapi.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.upload-session")
+public class FileUploadSessionConfig {
+    private DataSize defaultPartSize = DataSize.ofMegabytes(8);
+    private int maxPartCount = 10000;
+    private int maxOpenSessions = 100;
+    private Duration expiration = Duration.ofHours(24);
+
+    public DataSize getDefaultPartSize() {
+        return defaultPartSize;
+    }
+
+    public void setDefaultPartSize(DataSize defaultPartSize) {
+        this.defaultPartSize = defaultPartSize;
+    }
+
+    public int getMaxPartCount() {
+        return maxPartCount;
+    }
+
+    public void setMaxPartCount(int maxPartCount) {
+        this.maxPartCount = maxPartCount;
+    }
+
+    public int getMaxOpenSessions() {
+        return maxOpenSessions;
+    }
+
+    public void setMaxOpenSessions(int maxOpenSessions) {
+        this.maxOpenSessions = maxOpenSessions;
+    }
+
+    public Duration getExpiration() {
+        return expiration;
+    }
+
+    public void setExpiration(Duration expiration) {
+        this.expiration = expiration;
+    }
+}
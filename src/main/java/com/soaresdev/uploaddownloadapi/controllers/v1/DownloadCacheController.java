@@ -0,0 +1,35 @@
+package com.soaresdev.uploaddownloadapi.controllers.v1;
+
+import com.soaresdev.uploaddownloadapi.dtos.DownloadCacheStatsDTO;
+import com.soaresdev.uploaddownloadapi.services.FileDownloadCache;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/download-cache")
+@Tag(name = "Download cache", description = "Allows inspect the in-memory cache of hot files")
+public class DownloadCacheController {
+    private final FileDownloadCache fileDownloadCache;
+
+    public DownloadCacheController(FileDownloadCache fileDownloadCache) {
+        this.fileDownloadCache = fileDownloadCache;
+    }
+
+    @Operation(description = "Get size, hit and miss counters of the download cache", method = "GET")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = DownloadCacheStatsDTO.class)))
+    })
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DownloadCacheStatsDTO> getStats() {
+        return ResponseEntity.ok(fileDownloadCache.getStats());
+    }
+}
@@ -1,32 +1,56 @@
 package com.soaresdev.uploaddownloadapi.controllers.v1;
 
+import com.soaresdev.uploaddownloadapi.configs.FileMultipartConfig;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.dtos.ExtractedFileDTO;
 import com.soaresdev.uploaddownloadapi.dtos.UploadedFileDTO;
-import com.soaresdev.uploaddownloadapi.entities.FileDatabaseEntity;
+import com.soaresdev.uploaddownloadapi.dtos.UploadedFilePageDTO;
 import com.soaresdev.uploaddownloadapi.exceptions.StandardError;
-import com.soaresdev.uploaddownloadapi.services.FileDatabaseService;
+import com.soaresdev.uploaddownloadapi.services.FileArchiveExtractor;
+import com.soaresdev.uploaddownloadapi.services.FileStorageEngine;
+import com.soaresdev.uploaddownloadapi.services.FileTransferMetrics;
+import com.soaresdev.uploaddownloadapi.utils.ArchiveUtils;
+import com.soaresdev.uploaddownloadapi.utils.DownloadUtils;
+import com.soaresdev.uploaddownloadapi.utils.MultipartUtils;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.media.SchemaProperty;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.springframework.core.io.ByteArrayResource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import java.io.IOException;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/v1/in-database/files")
 @Tag(name = "Database system", description = "Allows manipulate files on database")
 public class FileDatabaseController {
-    private final FileDatabaseService fileDatabaseService;
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
-    public FileDatabaseController(FileDatabaseService fileDatabaseService) {
-        this.fileDatabaseService = fileDatabaseService;
+    private final FileStorageEngine fileStorageEngine;
+    private final FileMultipartConfig fileMultipartConfig;
+    private final FileArchiveExtractor fileArchiveExtractor;
+    private final FileTransferMetrics fileTransferMetrics;
+
+    public FileDatabaseController(@Qualifier("fileDatabaseService") FileStorageEngine fileStorageEngine,
+                                  FileMultipartConfig fileMultipartConfig, FileArchiveExtractor fileArchiveExtractor,
+                                  FileTransferMetrics fileTransferMetrics) {
+        this.fileStorageEngine = fileStorageEngine;
+        this.fileMultipartConfig = fileMultipartConfig;
+        this.fileArchiveExtractor = fileArchiveExtractor;
+        this.fileTransferMetrics = fileTransferMetrics;
     }
 
     @Operation(description = "Upload file into database", method = "POST")
@@ -34,9 +58,12 @@ public class FileDatabaseController {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = UploadedFileDTO.class))),
             @ApiResponse(responseCode = "400", description = "Error in file upload", content = @Content(schema = @Schema(implementation = StandardError.class))),
     })
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE,
+            schemaProperties = @SchemaProperty(name = "file", schema = @Schema(type = "string", format = "binary"))))
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<UploadedFileDTO> uploadFile(@RequestParam("file") MultipartFile file) {
-        return ResponseEntity.ok(fileDatabaseService.uploadFile(file));
+    public ResponseEntity<UploadedFileDTO> uploadFile(HttpServletRequest request) {
+        return ResponseEntity.ok(fileTransferMetrics.record(FileTransferMetrics.IN_DATABASE, FileTransferMetrics.UPLOAD, () ->
+                fileStorageEngine.uploadFile(MultipartUtils.getFile(request, "file", fileMultipartConfig))));
     }
 
     @Operation(description = "Upload files into database", method = "POST")
@@ -44,34 +71,107 @@ public class FileDatabaseController {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = UploadedFileDTO.class))),
             @ApiResponse(responseCode = "400", description = "Error in files upload", content = @Content(schema = @Schema(implementation = StandardError.class))),
     })
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE,
+            schemaProperties = @SchemaProperty(name = "files", array = @ArraySchema(schema = @Schema(type = "string", format = "binary")))))
     @PostMapping(value = "/uploads", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<UploadedFileDTO>> uploadFiles(@RequestParam("files") List<MultipartFile> files) {
-        return ResponseEntity.ok(fileDatabaseService.uploadFiles(files));
+    public ResponseEntity<List<UploadedFileDTO>> uploadFiles(HttpServletRequest request) {
+        //parts already parsed by a MultipartResolver are all available at once, streamed ones arrive one by one
+        return ResponseEntity.ok(fileTransferMetrics.record(FileTransferMetrics.IN_DATABASE, FileTransferMetrics.BATCH_UPLOAD, () ->
+                request instanceof MultipartHttpServletRequest multipartRequest ?
+                        fileStorageEngine.uploadFiles(MultipartUtils.getParsedFiles(multipartRequest, "files")) :
+                        fileStorageEngine.uploadFiles(MultipartUtils.getFiles(request, "files", fileMultipartConfig))));
+    }
+
+    @Operation(description = "Upload the request body as a file into database, without multipart encoding", method = "PUT")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = UploadedFileDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Error in file upload", content = @Content(schema = @Schema(implementation = StandardError.class))),
+    })
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            schema = @Schema(type = "string", format = "binary")))
+    @PutMapping(value = "/{fileName:.+}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UploadedFileDTO> putFile(@PathVariable String fileName, HttpServletRequest request) {
+        return ResponseEntity.ok(fileTransferMetrics.record(FileTransferMetrics.IN_DATABASE, FileTransferMetrics.UPLOAD, () ->
+                fileStorageEngine.uploadFile(fileName, MultipartUtils.getBody(request, fileName, fileMultipartConfig))));
+    }
+
+    @Operation(description = "Upload a ZIP or TAR archive and store each of its files into database, with a result per file", method = "POST")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(array = @ArraySchema(schema = @Schema(implementation = ExtractedFileDTO.class)))),
+            @ApiResponse(responseCode = "400", description = "Error in archive upload", content = @Content(schema = @Schema(implementation = StandardError.class))),
+    })
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            schema = @Schema(type = "string", format = "binary")))
+    @PostMapping(value = "/uploads/archive", consumes = {"application/zip", "application/x-tar", "application/gzip",
+            MediaType.APPLICATION_OCTET_STREAM_VALUE}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ExtractedFileDTO>> uploadArchive(HttpServletRequest request) {
+        return ResponseEntity.ok(fileTransferMetrics.record(FileTransferMetrics.IN_DATABASE, FileTransferMetrics.ARCHIVE_UPLOAD, () ->
+                fileArchiveExtractor.extract(MultipartUtils.getArchiveBody(request, fileMultipartConfig), fileStorageEngine::uploadFile)));
     }
 
-    @Operation(description = "Download file from file database", method = "GET")
+    @Operation(description = "Download file from file database. Supports Range and If-Range requests", method = "GET")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "206", description = "Partial content"),
             @ApiResponse(responseCode = "400", description = "Error in file download", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = StandardError.class))),
             @ApiResponse(responseCode = "404", description = "File not found", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = StandardError.class))),
+            @ApiResponse(responseCode = "416", description = "Range not satisfiable")
     })
     @GetMapping(value = "/download/{fileName:.+}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable String fileName) {
-        FileDatabaseEntity downloadedFile = fileDatabaseService.downloadFile(fileName);
+    public ResponseEntity<Resource> downloadFile(@PathVariable String fileName, @RequestHeader HttpHeaders requestHeaders) {
+        FileTransferMetrics.Transfer transfer = fileTransferMetrics.startRequestTransfer(FileTransferMetrics.IN_DATABASE,
+                FileTransferMetrics.DOWNLOAD);
+        DownloadedFileDTO downloadedFile = fileTransferMetrics.meter(transfer, fileStorageEngine.downloadFile(fileName));
+
+        return DownloadUtils.toDownloadResponse(downloadedFile, DownloadUtils.getContentType(downloadedFile), requestHeaders);
+    }
 
-        return ResponseEntity.ok().
-                contentType(MediaType.parseMediaType(downloadedFile.getFileType())).
-                header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=" + downloadedFile.getFileName()).
-                body(new ByteArrayResource(downloadedFile.getBinaryData()));
+    @Operation(description = "Download many files from file database as one ZIP archive, built while it is sent", method = "GET")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = "application/zip")),
+            @ApiResponse(responseCode = "400", description = "Error in files download", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = StandardError.class))),
+            @ApiResponse(responseCode = "404", description = "File not found", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = StandardError.class)))
+    })
+    @RequestMapping(value = "/archive", method = {RequestMethod.GET, RequestMethod.POST})
+    public void downloadArchive(@Parameter(description = "Names of the files, the order of the archive entries")
+                                @RequestParam(value = "names", required = false) List<String> fileNames,
+                                @Parameter(description = "Prefix of the names of the files, instead of names")
+                                @RequestParam(value = "prefix", required = false) String prefix,
+                                HttpServletResponse response) throws IOException {
+        try(FileTransferMetrics.Transfer transfer = fileTransferMetrics.startTransfer(FileTransferMetrics.IN_DATABASE,
+                FileTransferMetrics.ARCHIVE_DOWNLOAD)) {
+            ArchiveUtils.writeZipResponse(fileTransferMetrics.meter(transfer, fileStorageEngine.downloadFiles(fileNames, prefix)), response);
+            transfer.succeeded();
+        }
     }
 
-    @Operation(description = "List all files from file database", method = "GET")
+    @Operation(description = "List files from file database ordered by name, one page at a time", method = "GET")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK")
     })
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<UploadedFileDTO>> listAllFiles() {
-        return ResponseEntity.ok(fileDatabaseService.listAllFiles());
+    public ResponseEntity<List<UploadedFileDTO>> listAllFiles(
+            @Parameter(description = "Name of the last file of the previous page")
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size, up to " + FileStorageEngine.MAX_PAGE_SIZE)
+            @RequestParam(value = "size", defaultValue = "100") int size) {
+        UploadedFilePageDTO page = fileStorageEngine.listFiles(cursor, size);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if(page.getNextCursor() != null)
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        return response.body(page.getFiles());
+    }
+
+    @Operation(description = "Delete file from file database", method = "DELETE")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "No content"),
+            @ApiResponse(responseCode = "400", description = "Invalid file name", content = @Content(schema = @Schema(implementation = StandardError.class))),
+            @ApiResponse(responseCode = "404", description = "File not found", content = @Content(schema = @Schema(implementation = StandardError.class)))
+    })
+    @DeleteMapping(value = "/{fileName:.+}")
+    public ResponseEntity<Void> deleteFile(@PathVariable String fileName) {
+        fileStorageEngine.deleteFile(fileName);
+        return ResponseEntity.noContent().build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.soaresdev.uploaddownloadapi.controllers.v1;
+
+import com.soaresdev.uploaddownloadapi.dtos.ShardMigrationDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.StandardError;
+import com.soaresdev.uploaddownloadapi.services.FileShardMigrator;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/in-system/shards/migration")
+@Tag(name = "Shard migration", description = "Allows move the files of a flat upload directory into their shards")
+public class FileShardMigrationController {
+    private final FileShardMigrator fileShardMigrator;
+
+    public FileShardMigrationController(FileShardMigrator fileShardMigrator) {
+        this.fileShardMigrator = fileShardMigrator;
+    }
+
+    @Operation(description = "Start moving the files at the root of the upload directory into their shards", method = "POST")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Accepted", content = @Content(schema = @Schema(implementation = ShardMigrationDTO.class))),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content(schema = @Schema(implementation = StandardError.class)))
+    })
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ShardMigrationDTO> startMigration() {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(fileShardMigrator.startMigration());
+    }
+
+    @Operation(description = "Get the progress of the last migration", method = "GET")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = ShardMigrationDTO.class)))
+    })
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ShardMigrationDTO> getStatus() {
+        return ResponseEntity.ok(fileShardMigrator.getStatus());
+    }
+}
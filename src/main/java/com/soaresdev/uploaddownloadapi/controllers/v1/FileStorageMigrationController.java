@@ -0,0 +1,50 @@
+package com.soaresdev.uploaddownloadapi.controllers.v1;
+
+import com.soaresdev.uploaddownloadapi.dtos.StorageMigrationDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.StandardError;
+import com.soaresdev.uploaddownloadapi.services.FileStorageMigrator;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/migration")
+@Tag(name = "Storage migration", description = "Allows copy the files of a storage backend to another one")
+public class FileStorageMigrationController {
+    private final FileStorageMigrator fileStorageMigrator;
+
+    public FileStorageMigrationController(FileStorageMigrator fileStorageMigrator) {
+        this.fileStorageMigrator = fileStorageMigrator;
+    }
+
+    @Operation(description = "Start copying the files of the source backend to the target one, from the checkpoint of the last migration between them", method = "POST")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Accepted", content = @Content(schema = @Schema(implementation = StorageMigrationDTO.class))),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content(schema = @Schema(implementation = StandardError.class)))
+    })
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StorageMigrationDTO> startMigration(@RequestParam("source") String source,
+                                                              @RequestParam("target") String target) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(fileStorageMigrator.startMigration(source, target));
+    }
+
+    @Operation(description = "Get the progress of the last migration", method = "GET")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = StorageMigrationDTO.class)))
+    })
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StorageMigrationDTO> getStatus() {
+        return ResponseEntity.ok(fileStorageMigrator.getStatus());
+    }
+}
@@ -0,0 +1,102 @@
+package com.soaresdev.uploaddownloadapi.controllers.v1;
+
+import com.soaresdev.uploaddownloadapi.dtos.UploadSessionDTO;
+import com.soaresdev.uploaddownloadapi.dtos.UploadSessionRequestDTO;
+import com.soaresdev.uploaddownloadapi.dtos.UploadedFileDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.StandardError;
+import com.soaresdev.uploaddownloadapi.services.FileTransferMetrics;
+import com.soaresdev.uploaddownloadapi.services.FileUploadSessionService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/v1/in-system/upload-sessions")
+@Tag(name = "File system upload sessions", description = "Allows upload large files into file system in resumable parts")
+public class FileUploadSessionController {
+    private final FileUploadSessionService fileUploadSessionService;
+    private final FileTransferMetrics fileTransferMetrics;
+
+    public FileUploadSessionController(FileUploadSessionService fileUploadSessionService,
+                                       FileTransferMetrics fileTransferMetrics) {
+        this.fileUploadSessionService = fileUploadSessionService;
+        this.fileTransferMetrics = fileTransferMetrics;
+    }
+
+    @Operation(description = "Initiate an upload session for a file of known size", method = "POST")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Created", content = @Content(schema = @Schema(implementation = UploadSessionDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Error in upload session", content = @Content(schema = @Schema(implementation = StandardError.class))),
+            @ApiResponse(responseCode = "500", description = "Internal file system error", content = @Content(schema = @Schema(implementation = StandardError.class)))
+    })
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UploadSessionDTO> initiateSession(@RequestBody UploadSessionRequestDTO request) {
+        UploadSessionDTO session = fileUploadSessionService.initiateSession(request);
+
+        URI location = ServletUriComponentsBuilder.fromCurrentRequestUri().
+                path("/{sessionId}").
+                buildAndExpand(session.getSessionId()).
+                toUri();
+        return ResponseEntity.created(location).body(session);
+    }
+
+    @Operation(description = "Get the parts already received by an upload session", method = "GET")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = UploadSessionDTO.class))),
+            @ApiResponse(responseCode = "404", description = "Upload session not found", content = @Content(schema = @Schema(implementation = StandardError.class)))
+    })
+    @GetMapping(value = "/{sessionId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UploadSessionDTO> getSessionStatus(@PathVariable UUID sessionId) {
+        return ResponseEntity.ok(fileUploadSessionService.getSessionStatus(sessionId));
+    }
+
+    @Operation(description = "Upload one part of an upload session, parts can be sent concurrently and in any order", method = "PUT")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "No content"),
+            @ApiResponse(responseCode = "400", description = "Error in part upload", content = @Content(schema = @Schema(implementation = StandardError.class))),
+            @ApiResponse(responseCode = "404", description = "Upload session not found", content = @Content(schema = @Schema(implementation = StandardError.class))),
+            @ApiResponse(responseCode = "500", description = "Internal file system error", content = @Content(schema = @Schema(implementation = StandardError.class)))
+    })
+    @PutMapping(value = "/{sessionId}/parts/{partNumber}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Void> uploadPart(@PathVariable UUID sessionId, @PathVariable int partNumber, InputStream inputStream) {
+        try(FileTransferMetrics.Transfer transfer = fileTransferMetrics.startTransfer(FileTransferMetrics.IN_SYSTEM,
+                FileTransferMetrics.PART_UPLOAD)) {
+            fileUploadSessionService.uploadPart(sessionId, partNumber, fileTransferMetrics.meter(transfer, inputStream));
+            transfer.succeeded();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @Operation(description = "Complete an upload session once all parts were received", method = "POST")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = UploadedFileDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Error in upload session", content = @Content(schema = @Schema(implementation = StandardError.class))),
+            @ApiResponse(responseCode = "404", description = "Upload session not found", content = @Content(schema = @Schema(implementation = StandardError.class))),
+            @ApiResponse(responseCode = "500", description = "Internal file system error", content = @Content(schema = @Schema(implementation = StandardError.class)))
+    })
+    @PostMapping(value = "/{sessionId}/complete", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UploadedFileDTO> completeSession(@PathVariable UUID sessionId) {
+        return ResponseEntity.ok(fileUploadSessionService.completeSession(sessionId));
+    }
+
+    @Operation(description = "Abort an upload session and discard its parts", method = "DELETE")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "No content"),
+            @ApiResponse(responseCode = "404", description = "Upload session not found", content = @Content(schema = @Schema(implementation = StandardError.class)))
+    })
+    @DeleteMapping(value = "/{sessionId}")
+    public ResponseEntity<Void> abortSession(@PathVariable UUID sessionId) {
+        fileUploadSessionService.abortSession(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,97 @@
+package com.soaresdev.uploaddownloadapi.dtos;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+public class DownloadCacheStatsDTO implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private String policy;
+    private long entryCount;
+    private long byteSize;
+    private long maxByteSize;
+    private boolean offHeap;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public DownloadCacheStatsDTO() {
+    }
+
+    public DownloadCacheStatsDTO(String policy, long entryCount, long byteSize, long maxByteSize, boolean offHeap,
+                                 long hitCount, long missCount, long evictionCount) {
+        this.policy = policy;
+        this.entryCount = entryCount;
+        this.byteSize = byteSize;
+        this.maxByteSize = maxByteSize;
+        this.offHeap = offHeap;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(long entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    public void setByteSize(long byteSize) {
+        this.byteSize = byteSize;
+    }
+
+    public long getMaxByteSize() {
+        return maxByteSize;
+    }
+
+    public void setMaxByteSize(long maxByteSize) {
+        this.maxByteSize = maxByteSize;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public void setHitCount(long hitCount) {
+        this.hitCount = hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public void setMissCount(long missCount) {
+        this.missCount = missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public void setEvictionCount(long evictionCount) {
+        this.evictionCount = evictionCount;
+    }
+}
@@ -0,0 +1,112 @@
+package com.soaresdev.uploaddownloadapi.dtos;
+
+import org.springframework.core.io.Resource;
+import java.time.Instant;
+
+public class DownloadedFileDTO {
+    private String fileName;
+    private String fileType;
+    private long fileByteSize;
+    private Instant lastModifiedTime;
+    private String contentHash;
+    private Resource resource;
+    private String contentEncoding;
+    private long encodedByteSize;
+    private Resource encodedResource;
+
+    public DownloadedFileDTO() {
+    }
+
+    public DownloadedFileDTO(String fileName, String fileType, long fileByteSize, Instant lastModifiedTime,
+                             String contentHash, Resource resource) {
+        this.fileName = fileName;
+        this.fileType = fileType;
+        this.fileByteSize = fileByteSize;
+        this.lastModifiedTime = lastModifiedTime;
+        this.contentHash = contentHash;
+        this.resource = resource;
+        this.encodedByteSize = fileByteSize;
+    }
+
+    //resource is the decoded content, encodedResource the bytes as they are stored
+    public DownloadedFileDTO(String fileName, String fileType, long fileByteSize, Instant lastModifiedTime,
+                             String contentHash, Resource resource, String contentEncoding, long encodedByteSize,
+                             Resource encodedResource) {
+        this(fileName, fileType, fileByteSize, lastModifiedTime, contentHash, resource);
+        this.contentEncoding = contentEncoding;
+        this.encodedByteSize = encodedByteSize;
+        this.encodedResource = encodedResource;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public long getFileByteSize() {
+        return fileByteSize;
+    }
+
+    public void setFileByteSize(long fileByteSize) {
+        this.fileByteSize = fileByteSize;
+    }
+
+    public Instant getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    public void setLastModifiedTime(Instant lastModifiedTime) {
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public long getEncodedByteSize() {
+        return encodedByteSize;
+    }
+
+    public void setEncodedByteSize(long encodedByteSize) {
+        this.encodedByteSize = encodedByteSize;
+    }
+
+    public Resource getEncodedResource() {
+        return encodedResource;
+    }
+
+    public void setEncodedResource(Resource encodedResource) {
+        this.encodedResource = encodedResource;
+    }
+}
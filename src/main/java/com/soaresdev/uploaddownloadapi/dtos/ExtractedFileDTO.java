@@ -0,0 +1,88 @@
+package com.soaresdev.uploaddownloadapi.dtos;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+public class ExtractedFileDTO implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private String fileName;
+    private Status status;
+    private String message;
+    private String fileDownloadUri;
+    private String fileType;
+    private String fileSize;
+
+    public ExtractedFileDTO() {
+    }
+
+    public ExtractedFileDTO(UploadedFileDTO uploadedFile) {
+        this.fileName = uploadedFile.getFileName();
+        this.status = Status.UPLOADED;
+        this.fileDownloadUri = uploadedFile.getFileDownloadUri();
+        this.fileType = uploadedFile.getFileType();
+        this.fileSize = uploadedFile.getFileSize();
+    }
+
+    public ExtractedFileDTO(String fileName, Status status, String message) {
+        this.fileName = fileName;
+        this.status = status;
+        this.message = message;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getFileDownloadUri() {
+        return fileDownloadUri;
+    }
+
+    public void setFileDownloadUri(String fileDownloadUri) {
+        this.fileDownloadUri = fileDownloadUri;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public String getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(String fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    //REJECTED entries were refused as they are (name, size, duplicate), FAILED ones could not be stored
+    public enum Status {
+        UPLOADED,
+        REJECTED,
+        FAILED
+    }
+}
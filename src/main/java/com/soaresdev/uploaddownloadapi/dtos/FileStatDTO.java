@@ -0,0 +1,67 @@
+package com.soaresdev.uploaddownloadapi.dtos;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+
+public class FileStatDTO implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private String fileName;
+    private String fileType;
+    private long fileByteSize;
+    private Instant lastModifiedTime;
+    private String contentHash;
+
+    public FileStatDTO() {
+    }
+
+    public FileStatDTO(String fileName, String fileType, long fileByteSize, Instant lastModifiedTime, String contentHash) {
+        this.fileName = fileName;
+        this.fileType = fileType;
+        this.fileByteSize = fileByteSize;
+        this.lastModifiedTime = lastModifiedTime;
+        this.contentHash = contentHash;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public long getFileByteSize() {
+        return fileByteSize;
+    }
+
+    public void setFileByteSize(long fileByteSize) {
+        this.fileByteSize = fileByteSize;
+    }
+
+    public Instant getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    public void setLastModifiedTime(Instant lastModifiedTime) {
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+}
@@ -0,0 +1,88 @@
+package com.soaresdev.uploaddownloadapi.dtos;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+
+public class ShardMigrationDTO implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private String state;
+    private long linkedFiles;
+    private long migratedFiles;
+    private long skippedFiles;
+    private Instant startTime;
+    private Instant endTime;
+    private String message;
+
+    public ShardMigrationDTO() {
+    }
+
+    public ShardMigrationDTO(String state, long linkedFiles, long migratedFiles, long skippedFiles, Instant startTime,
+                             Instant endTime, String message) {
+        this.state = state;
+        this.linkedFiles = linkedFiles;
+        this.migratedFiles = migratedFiles;
+        this.skippedFiles = skippedFiles;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.message = message;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public long getLinkedFiles() {
+        return linkedFiles;
+    }
+
+    public void setLinkedFiles(long linkedFiles) {
+        this.linkedFiles = linkedFiles;
+    }
+
+    public long getMigratedFiles() {
+        return migratedFiles;
+    }
+
+    public void setMigratedFiles(long migratedFiles) {
+        this.migratedFiles = migratedFiles;
+    }
+
+    public long getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    public void setSkippedFiles(long skippedFiles) {
+        this.skippedFiles = skippedFiles;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Instant startTime) {
+        this.startTime = startTime;
+    }
+
+    public Instant getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(Instant endTime) {
+        this.endTime = endTime;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,139 @@
+package com.soaresdev.uploaddownloadapi.dtos;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+
+public class StorageMigrationDTO implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private String state;
+    private String source;
+    private String target;
+    private long copiedFiles;
+    private long skippedFiles;
+    private long failedFiles;
+    private long copiedBytes;
+    private long bytesPerSecond;
+    private String checkpoint;
+    private Instant startTime;
+    private Instant endTime;
+    private String message;
+
+    public StorageMigrationDTO() {
+    }
+
+    public StorageMigrationDTO(String state, String source, String target, long copiedFiles, long skippedFiles,
+                               long failedFiles, long copiedBytes, long bytesPerSecond, String checkpoint,
+                               Instant startTime, Instant endTime, String message) {
+        this.state = state;
+        this.source = source;
+        this.target = target;
+        this.copiedFiles = copiedFiles;
+        this.skippedFiles = skippedFiles;
+        this.failedFiles = failedFiles;
+        this.copiedBytes = copiedBytes;
+        this.bytesPerSecond = bytesPerSecond;
+        this.checkpoint = checkpoint;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.message = message;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public long getCopiedFiles() {
+        return copiedFiles;
+    }
+
+    public void setCopiedFiles(long copiedFiles) {
+        this.copiedFiles = copiedFiles;
+    }
+
+    public long getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    public void setSkippedFiles(long skippedFiles) {
+        this.skippedFiles = skippedFiles;
+    }
+
+    public long getFailedFiles() {
+        return failedFiles;
+    }
+
+    public void setFailedFiles(long failedFiles) {
+        this.failedFiles = failedFiles;
+    }
+
+    public long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    public void setCopiedBytes(long copiedBytes) {
+        this.copiedBytes = copiedBytes;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(String checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Instant startTime) {
+        this.startTime = startTime;
+    }
+
+    public Instant getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(Instant endTime) {
+        this.endTime = endTime;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
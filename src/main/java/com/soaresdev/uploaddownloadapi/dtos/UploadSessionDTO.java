@@ -0,0 +1,79 @@
+package com.soaresdev.uploaddownloadapi.dtos;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+import java.util.UUID;
+
+public class UploadSessionDTO implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private UUID sessionId;
+    private String fileName;
+    private long fileByteSize;
+    private long partSize;
+    private int partCount;
+    private List<Integer> receivedParts;
+
+    public UploadSessionDTO() {
+    }
+
+    public UploadSessionDTO(UUID sessionId, String fileName, long fileByteSize, long partSize, int partCount,
+                            List<Integer> receivedParts) {
+        this.sessionId = sessionId;
+        this.fileName = fileName;
+        this.fileByteSize = fileByteSize;
+        this.partSize = partSize;
+        this.partCount = partCount;
+        this.receivedParts = receivedParts;
+    }
+
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(UUID sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getFileByteSize() {
+        return fileByteSize;
+    }
+
+    public void setFileByteSize(long fileByteSize) {
+        this.fileByteSize = fileByteSize;
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(long partSize) {
+        this.partSize = partSize;
+    }
+
+    public int getPartCount() {
+        return partCount;
+    }
+
+    public void setPartCount(int partCount) {
+        this.partCount = partCount;
+    }
+
+    public List<Integer> getReceivedParts() {
+        return receivedParts;
+    }
+
+    public void setReceivedParts(List<Integer> receivedParts) {
+        this.receivedParts = receivedParts;
+    }
+}
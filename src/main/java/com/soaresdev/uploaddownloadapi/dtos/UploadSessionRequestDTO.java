@@ -0,0 +1,46 @@
+package com.soaresdev.uploaddownloadapi.dtos;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+public class UploadSessionRequestDTO implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private String fileName;
+    private Long fileByteSize;
+    private Long partSize;
+
+    public UploadSessionRequestDTO() {
+    }
+
+    public UploadSessionRequestDTO(String fileName, Long fileByteSize, Long partSize) {
+        this.fileName = fileName;
+        this.fileByteSize = fileByteSize;
+        this.partSize = partSize;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public Long getFileByteSize() {
+        return fileByteSize;
+    }
+
+    public void setFileByteSize(Long fileByteSize) {
+        this.fileByteSize = fileByteSize;
+    }
+
+    public Long getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(Long partSize) {
+        this.partSize = partSize;
+    }
+}
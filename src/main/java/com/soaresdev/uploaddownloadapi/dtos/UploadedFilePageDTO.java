@@ -0,0 +1,37 @@
+package com.soaresdev.uploaddownloadapi.dtos;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+
+public class UploadedFilePageDTO implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private List<UploadedFileDTO> files;
+    private String nextCursor;
+
+    public UploadedFilePageDTO() {
+    }
+
+    public UploadedFilePageDTO(List<UploadedFileDTO> files, String nextCursor) {
+        this.files = files;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<UploadedFileDTO> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<UploadedFileDTO> files) {
+        this.files = files;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,70 @@
+package com.soaresdev.uploaddownloadapi.entities;
+
+import jakarta.persistence.*;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.UUID;
+
+@Entity
+@Table(name = "tb_file_chunk")
+@IdClass(FileChunkId.class)
+public class FileChunkEntity implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private UUID fileId;
+    @Id
+    private int sequence;
+
+    @Lob
+    @Column(columnDefinition = "BLOB", nullable = false)
+    private byte[] data;
+
+    public FileChunkEntity() {
+    }
+
+    public FileChunkEntity(UUID fileId, int sequence, byte[] data) {
+        this.fileId = fileId;
+        this.sequence = sequence;
+        this.data = data;
+    }
+
+    public UUID getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(UUID fileId) {
+        this.fileId = fileId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileChunkEntity that = (FileChunkEntity) o;
+        return sequence == that.sequence && Objects.equals(fileId, that.fileId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileId, sequence);
+    }
+}
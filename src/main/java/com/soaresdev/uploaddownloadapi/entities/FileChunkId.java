@@ -0,0 +1,51 @@
+package com.soaresdev.uploaddownloadapi.entities;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.UUID;
+
+public class FileChunkId implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private UUID fileId;
+    private int sequence;
+
+    public FileChunkId() {
+    }
+
+    public FileChunkId(UUID fileId, int sequence) {
+        this.fileId = fileId;
+        this.sequence = sequence;
+    }
+
+    public UUID getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(UUID fileId) {
+        this.fileId = fileId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileChunkId that = (FileChunkId) o;
+        return sequence == that.sequence && Objects.equals(fileId, that.fileId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileId, sequence);
+    }
+}
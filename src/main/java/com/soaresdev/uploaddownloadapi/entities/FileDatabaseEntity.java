@@ -3,11 +3,12 @@ package com.soaresdev.uploaddownloadapi.entities;
 import jakarta.persistence.*;
 import java.io.Serial;
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.Objects;
 import java.util.UUID;
 
 @Entity
-@Table(name = "tb_file")
+@Table(name = "tb_file", indexes = @Index(columnList = "contentHash"))
 public class FileDatabaseEntity implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
@@ -21,27 +22,38 @@ public class FileDatabaseEntity implements Serializable {
     private String fileType;
     @Column(nullable = false)
     private long fileByteSize;
-
-    @Lob
-    @Column(columnDefinition = "BLOB")
-    private byte[] binaryData;
+    @Column(nullable = false)
+    private int chunkSize;
+    private Instant lastModifiedTime;
+    @Column(length = 64)
+    private String contentHash;
+    private UUID dataId;
+    @Column(length = 16)
+    private String contentEncoding;
+    //size of the chunks when the content is stored encoded, null when they hold it as it is
+    private Long encodedByteSize;
+    //where the content is stored in the file system tier, null when its chunks are in the database
+    @Column(length = 64)
+    private String tierLocation;
+    //when it was last downloaded, as saved by the tier mover; null when never since it was stored
+    private Instant lastAccessTime;
 
     public FileDatabaseEntity() {
     }
 
-    public FileDatabaseEntity(UUID id, String fileName, String fileType, long fileByteSize, byte[] binaryData) {
+    public FileDatabaseEntity(UUID id, String fileName, String fileType, long fileByteSize, int chunkSize) {
         this.id = id;
         this.fileName = fileName;
         this.fileType = fileType;
         this.fileByteSize = fileByteSize;
-        this.binaryData = binaryData;
+        this.chunkSize = chunkSize;
     }
 
-    public FileDatabaseEntity(String fileName, String fileType, long fileByteSize, byte[] binaryData) {
+    public FileDatabaseEntity(String fileName, String fileType, long fileByteSize, int chunkSize) {
         this.fileName = fileName;
         this.fileType = fileType;
         this.fileByteSize = fileByteSize;
-        this.binaryData = binaryData;
+        this.chunkSize = chunkSize;
     }
 
     public UUID getId() {
@@ -76,12 +88,68 @@ public class FileDatabaseEntity implements Serializable {
         this.fileByteSize = fileSize;
     }
 
-    public byte[] getBinaryData() {
-        return binaryData;
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public Instant getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    public void setLastModifiedTime(Instant lastModifiedTime) {
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public UUID getDataId() {
+        return dataId;
+    }
+
+    public void setDataId(UUID dataId) {
+        this.dataId = dataId;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public Long getEncodedByteSize() {
+        return encodedByteSize;
+    }
+
+    public void setEncodedByteSize(Long encodedByteSize) {
+        this.encodedByteSize = encodedByteSize;
+    }
+
+    public String getTierLocation() {
+        return tierLocation;
+    }
+
+    public void setTierLocation(String tierLocation) {
+        this.tierLocation = tierLocation;
+    }
+
+    public Instant getLastAccessTime() {
+        return lastAccessTime;
     }
 
-    public void setBinaryData(byte[] binaryData) {
-        this.binaryData = binaryData;
+    public void setLastAccessTime(Instant lastAccessTime) {
+        this.lastAccessTime = lastAccessTime;
     }
 
     @Override
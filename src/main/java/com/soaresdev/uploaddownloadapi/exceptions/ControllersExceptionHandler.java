@@ -1,14 +1,22 @@
 package com.soaresdev.uploaddownloadapi.exceptions;
 
+import com.soaresdev.uploaddownloadapi.services.FileTransferMetrics;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import java.time.Instant;
 
 @RestControllerAdvice
 public class ControllersExceptionHandler {
+    private final FileTransferMetrics fileTransferMetrics;
+
+    public ControllersExceptionHandler(FileTransferMetrics fileTransferMetrics) {
+        this.fileTransferMetrics = fileTransferMetrics;
+    }
+
     @ExceptionHandler(FileInternalErrorException.class)
     public ResponseEntity<StandardError> fileInternalError(FileInternalErrorException e, HttpServletRequest request) {
         return ResponseEntity.internalServerError().body(getStandardError(HttpStatus.INTERNAL_SERVER_ERROR, e, request));
@@ -24,12 +32,24 @@ public class ControllersExceptionHandler {
         return ResponseEntity.badRequest().body(getStandardError(HttpStatus.BAD_REQUEST, e, request));
     }
 
+    //thrown by the servlet multipart parser, when it is enabled instead of the streaming one
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<StandardError> maxUploadSizeExceeded(MaxUploadSizeExceededException e, HttpServletRequest request) {
+        return fileUpload(new FileUploadException("Maximum upload size exceeded"), request);
+    }
+
     @ExceptionHandler(FileDownloadException.class)
     public ResponseEntity<StandardError> fileDownload(FileDownloadException e, HttpServletRequest request) {
         return ResponseEntity.badRequest().body(getStandardError(HttpStatus.BAD_REQUEST, e, request));
     }
 
+    @ExceptionHandler(FileMigrationException.class)
+    public ResponseEntity<StandardError> fileMigration(FileMigrationException e, HttpServletRequest request) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(getStandardError(HttpStatus.CONFLICT, e, request));
+    }
+
     private StandardError getStandardError(HttpStatus hs, Exception e, HttpServletRequest request) {
+        fileTransferMetrics.recordError(e, hs, request);
         StandardError standardError = new StandardError();
         standardError.setTimestamp(Instant.now());
         standardError.setStatus(hs.value());
@@ -0,0 +1,12 @@
+package com.soaresdev.uploaddownloadapi.exceptions;
+
+import java.io.Serial;
+
+public class FileMigrationException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public FileMigrationException(String message) {
+        super(message);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.soaresdev.uploaddownloadapi.projections;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public interface FileDatabaseMetadata {
+    UUID getId();
+
+    String getFileName();
+
+    String getFileType();
+
+    long getFileByteSize();
+
+    int getChunkSize();
+
+    Instant getLastModifiedTime();
+
+    String getContentHash();
+
+    UUID getDataId();
+
+    String getContentEncoding();
+
+    long getEncodedByteSize();
+
+    String getTierLocation();
+}
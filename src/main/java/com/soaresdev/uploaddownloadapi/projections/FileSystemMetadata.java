@@ -0,0 +1,110 @@
+package com.soaresdev.uploaddownloadapi.projections;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+public class FileSystemMetadata implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private String fileName;
+    private long fileByteSize;
+    private String fileType;
+    private Instant lastModifiedTime;
+    private String checksum;
+    private String contentEncoding;
+    private long encodedByteSize;
+
+    public FileSystemMetadata() {
+    }
+
+    public FileSystemMetadata(String fileName, long fileByteSize, String fileType, Instant lastModifiedTime, String checksum) {
+        this.fileName = fileName;
+        this.fileByteSize = fileByteSize;
+        this.fileType = fileType;
+        this.lastModifiedTime = lastModifiedTime;
+        this.checksum = checksum;
+        this.encodedByteSize = fileByteSize;
+    }
+
+    //fileByteSize and checksum describe the decoded content, encodedByteSize the file as it is stored
+    public FileSystemMetadata(String fileName, long fileByteSize, String fileType, Instant lastModifiedTime, String checksum,
+                              String contentEncoding, long encodedByteSize) {
+        this(fileName, fileByteSize, fileType, lastModifiedTime, checksum);
+        this.contentEncoding = contentEncoding;
+        this.encodedByteSize = encodedByteSize;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getFileByteSize() {
+        return fileByteSize;
+    }
+
+    public void setFileByteSize(long fileByteSize) {
+        this.fileByteSize = fileByteSize;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public Instant getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    public void setLastModifiedTime(Instant lastModifiedTime) {
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public long getEncodedByteSize() {
+        return encodedByteSize;
+    }
+
+    public void setEncodedByteSize(long encodedByteSize) {
+        this.encodedByteSize = encodedByteSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileSystemMetadata that = (FileSystemMetadata) o;
+        return fileByteSize == that.fileByteSize && Objects.equals(fileName, that.fileName) &&
+                Objects.equals(lastModifiedTime, that.lastModifiedTime) && Objects.equals(checksum, that.checksum) &&
+                encodedByteSize == that.encodedByteSize && Objects.equals(contentEncoding, that.contentEncoding);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileName, fileByteSize, lastModifiedTime, checksum, contentEncoding, encodedByteSize);
+    }
+}
@@ -0,0 +1,21 @@
+package com.soaresdev.uploaddownloadapi.repositories;
+
+import com.soaresdev.uploaddownloadapi.entities.FileChunkEntity;
+import com.soaresdev.uploaddownloadapi.entities.FileChunkId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface FileChunkRepository extends JpaRepository<FileChunkEntity, FileChunkId> {
+    @Query("select c.data from FileChunkEntity c where c.fileId = :fileId and c.sequence = :sequence")
+    Optional<byte[]> findDataByFileIdAndSequence(@Param("fileId") UUID fileId, @Param("sequence") int sequence);
+
+    @Modifying
+    @Query("delete from FileChunkEntity c where c.fileId = :fileId")
+    int deleteAllByFileId(@Param("fileId") UUID fileId);
+}
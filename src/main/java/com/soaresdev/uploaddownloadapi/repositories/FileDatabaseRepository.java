@@ -1,8 +1,18 @@
 package com.soaresdev.uploaddownloadapi.repositories;
 
 import com.soaresdev.uploaddownloadapi.entities.FileDatabaseEntity;
+import com.soaresdev.uploaddownloadapi.projections.FileDatabaseMetadata;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -10,5 +20,77 @@ import java.util.UUID;
 public interface FileDatabaseRepository extends JpaRepository<FileDatabaseEntity, UUID> {
     Optional<FileDatabaseEntity> findByFileName(String fileName);
 
+    @Query("select f.id as id, f.fileName as fileName, f.fileType as fileType, " +
+            "f.fileByteSize as fileByteSize, f.chunkSize as chunkSize, f.lastModifiedTime as lastModifiedTime, " +
+            "f.contentHash as contentHash, coalesce(f.dataId, f.id) as dataId, f.contentEncoding as contentEncoding, " +
+            "coalesce(f.encodedByteSize, f.fileByteSize) as encodedByteSize, f.tierLocation as tierLocation " +
+            "from FileDatabaseEntity f where f.fileName = :fileName")
+    Optional<FileDatabaseMetadata> findMetadataByFileName(@Param("fileName") String fileName);
+
+    @Query("select f.id as id, f.fileName as fileName, f.fileType as fileType, " +
+            "f.fileByteSize as fileByteSize, f.chunkSize as chunkSize, f.lastModifiedTime as lastModifiedTime, " +
+            "f.contentHash as contentHash, coalesce(f.dataId, f.id) as dataId, f.contentEncoding as contentEncoding, " +
+            "coalesce(f.encodedByteSize, f.fileByteSize) as encodedByteSize, f.tierLocation as tierLocation " +
+            "from FileDatabaseEntity f where f.fileName > :cursor order by f.fileName")
+    List<FileDatabaseMetadata> findMetadataAfter(@Param("cursor") String cursor, Limit limit);
+
+    @Query("select f.id as id, f.fileName as fileName, f.fileType as fileType, " +
+            "f.fileByteSize as fileByteSize, f.chunkSize as chunkSize, f.lastModifiedTime as lastModifiedTime, " +
+            "f.contentHash as contentHash, coalesce(f.dataId, f.id) as dataId, f.contentEncoding as contentEncoding, " +
+            "coalesce(f.encodedByteSize, f.fileByteSize) as encodedByteSize, f.tierLocation as tierLocation " +
+            "from FileDatabaseEntity f where f.contentHash = :contentHash and f.fileByteSize = :fileByteSize and f.id <> :excludedId " +
+            "and f.tierLocation is null")
+    List<FileDatabaseMetadata> findMetadataByContent(@Param("contentHash") String contentHash,
+                                                     @Param("fileByteSize") long fileByteSize,
+                                                     @Param("excludedId") UUID excludedId, Limit limit);
+
+    @Query("select f.id as id, f.fileName as fileName, f.fileType as fileType, " +
+            "f.fileByteSize as fileByteSize, f.chunkSize as chunkSize, f.lastModifiedTime as lastModifiedTime, " +
+            "f.contentHash as contentHash, coalesce(f.dataId, f.id) as dataId, f.contentEncoding as contentEncoding, " +
+            "coalesce(f.encodedByteSize, f.fileByteSize) as encodedByteSize, f.tierLocation as tierLocation " +
+            "from FileDatabaseEntity f where f.fileName in :fileNames")
+    List<FileDatabaseMetadata> findMetadataByFileNameIn(@Param("fileNames") Collection<String> fileNames);
+
+    //the pattern must escape % and _ with a backslash
+    @Query("select f.id as id, f.fileName as fileName, f.fileType as fileType, " +
+            "f.fileByteSize as fileByteSize, f.chunkSize as chunkSize, f.lastModifiedTime as lastModifiedTime, " +
+            "f.contentHash as contentHash, coalesce(f.dataId, f.id) as dataId, f.contentEncoding as contentEncoding, " +
+            "coalesce(f.encodedByteSize, f.fileByteSize) as encodedByteSize, f.tierLocation as tierLocation " +
+            "from FileDatabaseEntity f where f.fileName like :pattern escape '\\' and f.fileName > :cursor order by f.fileName")
+    List<FileDatabaseMetadata> findMetadataByFileNameLikeAfter(@Param("pattern") String pattern, @Param("cursor") String cursor,
+                                                               Limit limit);
+
     boolean existsByFileName(String fileName);
-}
\ No newline at end of file
+
+    //whether any file still holds the chunks stored under the id, as their owner or as a duplicate of it
+    boolean existsByIdOrDataId(UUID id, UUID dataId);
+
+    //every file holding the chunks stored under the id, locked until the transaction ends. Deleting them and
+    //pointing a new file to them both take these locks first, so they never happen at once.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from FileDatabaseEntity f where f.id = :dataId or f.dataId = :dataId")
+    List<FileDatabaseEntity> lockAllHoldingData(@Param("dataId") UUID dataId);
+
+    //files whose chunks no other file shares, larger than the threshold or neither downloaded nor modified since
+    //coldBefore. Files without any of both times are never cold.
+    @Query("select f.id from FileDatabaseEntity f where f.tierLocation is null and f.dataId is null " +
+            "and (f.fileByteSize > :threshold or coalesce(f.lastAccessTime, f.lastModifiedTime, :coldBefore) < :coldBefore) " +
+            "and not exists (select d.id from FileDatabaseEntity d where d.dataId = f.id)")
+    List<UUID> findIdsToTierOut(@Param("threshold") long threshold, @Param("coldBefore") Instant coldBefore, Limit limit);
+
+    @Query("select f.id from FileDatabaseEntity f where f.tierLocation is not null and f.fileByteSize <= :threshold " +
+            "and coalesce(f.lastAccessTime, f.lastModifiedTime, :coldBefore) >= :coldBefore")
+    List<UUID> findIdsToTierIn(@Param("threshold") long threshold, @Param("coldBefore") Instant coldBefore, Limit limit);
+
+    //files of the tier whose chunks are still in the database, left by a move whose grace period never ended
+    @Query("select f.id from FileDatabaseEntity f where f.tierLocation is not null " +
+            "and exists (select c.sequence from FileChunkEntity c where c.fileId = f.id)")
+    List<UUID> findTieredIdsWithChunks(Limit limit);
+
+    @Modifying
+    @Query("update FileDatabaseEntity f set f.lastAccessTime = :lastAccessTime where f.fileName = :fileName")
+    int updateLastAccessTime(@Param("fileName") String fileName, @Param("lastAccessTime") Instant lastAccessTime);
+
+    @Query("select f.fileName from FileDatabaseEntity f where f.fileName in :fileNames")
+    List<String> findFileNamesIn(@Param("fileNames") Collection<String> fileNames);
+}
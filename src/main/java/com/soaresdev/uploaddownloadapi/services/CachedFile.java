@@ -0,0 +1,117 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import org.springframework.core.io.AbstractResource;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+//the whole content of a small file held by the FileDownloadCache, every download reads its own view of the buffer.
+//Files stored compressed are held as they are stored, so they take less memory and are decoded per download.
+class CachedFile {
+    private final String fileName;
+    private final String fileType;
+    private final long fileByteSize;
+    private final Instant lastModifiedTime;
+    private final String contentHash;
+    private final String contentEncoding;
+    private final ByteBuffer content;
+
+    CachedFile(String fileName, String fileType, long fileByteSize, Instant lastModifiedTime, String contentHash,
+               String contentEncoding, ByteBuffer content) {
+        this.fileName = fileName;
+        this.fileType = fileType;
+        this.fileByteSize = fileByteSize;
+        this.lastModifiedTime = lastModifiedTime;
+        this.contentHash = contentHash;
+        this.contentEncoding = contentEncoding;
+        this.content = content;
+    }
+
+    String getContentHash() {
+        return contentHash;
+    }
+
+    int getContentByteSize() {
+        return content.capacity();
+    }
+
+    InputStream newInputStream() {
+        return new ByteBufferInputStream(content.asReadOnlyBuffer());
+    }
+
+    DownloadedFileDTO toDownloadedFile() {
+        return FileCompressor.toDownloadedFile(fileName, fileType, fileByteSize, lastModifiedTime, contentHash,
+                contentEncoding, content.capacity(), new CachedFileResource());
+    }
+
+    private class CachedFileResource extends AbstractResource {
+        @Override
+        public InputStream getInputStream() {
+            return newInputStream();
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return content.capacity();
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModifiedTime == null ? 0 : lastModifiedTime.toEpochMilli();
+        }
+
+        @Override
+        public String getFilename() {
+            return fileName;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Cached file [" + fileName + "]";
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(len == 0)
+                return 0;
+            if(!buffer.hasRemaining())
+                return -1;
+
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        //ranges are answered by skipping to their start, which only moves the position of the view
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
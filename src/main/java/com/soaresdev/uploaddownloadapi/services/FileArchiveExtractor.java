@@ -0,0 +1,211 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.configs.FileArchiveConfig;
+import com.soaresdev.uploaddownloadapi.configs.FileMultipartConfig;
+import com.soaresdev.uploaddownloadapi.dtos.ExtractedFileDTO;
+import com.soaresdev.uploaddownloadapi.dtos.UploadedFileDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.FileInternalErrorException;
+import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import com.soaresdev.uploaddownloadapi.utils.MultipartUtils;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//entries are read one after the other from the archive stream. Small ones are buffered and stored by a pool of
+//threads while the next ones are read, with the bytes held at once bounded by a semaphore. Larger ones are
+//streamed straight to storage by the reading thread, so memory never depends on the size of the archive.
+//Every entry is stored on its own: a rejected or failed one is reported and the others are kept.
+@Component
+public class FileArchiveExtractor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    //every buffered entry counts at least this much, so archives of many empty files are bounded as well
+    private static final int ENTRY_OVERHEAD = 1024;
+
+    private final FileMultipartConfig fileMultipartConfig;
+    private final int maxBufferedEntrySize;
+    private final Semaphore bufferedBytes;
+    private final ExecutorService extractionExecutor;
+
+    public FileArchiveExtractor(FileArchiveConfig fileArchiveConfig, FileMultipartConfig fileMultipartConfig) {
+        this.fileMultipartConfig = fileMultipartConfig;
+        int maxBufferedSize = (int) Math.min(Math.max(fileArchiveConfig.getMaxBufferedSize().toBytes(), 2 * ENTRY_OVERHEAD),
+                Integer.MAX_VALUE - 1);
+        maxBufferedEntrySize = (int) Math.max(0, Math.min(fileArchiveConfig.getMaxBufferedEntrySize().toBytes(),
+                maxBufferedSize - ENTRY_OVERHEAD - 1));
+        bufferedBytes = new Semaphore(maxBufferedSize);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        extractionExecutor = Executors.newFixedThreadPool(Math.max(1, fileArchiveConfig.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "file-archive-extract-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @FunctionalInterface
+    public interface FileUploader {
+        UploadedFileDTO uploadFile(String fileName, InputStream inputStream);
+    }
+
+    //results follow the order of the entries in the archive, directories are left out
+    public List<ExtractedFileDTO> extract(InputStream archive, FileUploader fileUploader) {
+        //download URIs are built from the current request, which the storing threads have to see as well
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        List<CompletableFuture<ExtractedFileDTO>> results = new ArrayList<>();
+        Set<String> fileNames = new HashSet<>();
+
+        try(ArchiveInputStream<? extends ArchiveEntry> entries = openArchive(archive)) {
+            ArchiveEntry entry;
+            while((entry = entries.getNextEntry()) != null) {
+                if(entry.isDirectory())
+                    continue;
+
+                ExtractedFileDTO rejectedFile = verifyEntry(entries, entry, fileNames);
+                results.add(rejectedFile != null ? CompletableFuture.completedFuture(rejectedFile) :
+                        extractEntry(entries, entry.getName(), fileUploader, requestAttributes));
+            }
+        }catch(IOException e) {
+            throw new FileUploadException("Invalid archive");
+        }finally {
+            //nothing may still be stored once the request is answered
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+        }
+
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    @PreDestroy
+    public void close() {
+        extractionExecutor.shutdownNow();
+    }
+
+    private ExtractedFileDTO verifyEntry(ArchiveInputStream<? extends ArchiveEntry> entries, ArchiveEntry entry,
+                                         Set<String> fileNames) {
+        String fileName = entry.getName();
+        if(!entries.canReadEntryData(entry) || entry instanceof TarArchiveEntry tarEntry && !tarEntry.isFile())
+            return new ExtractedFileDTO(fileName, ExtractedFileDTO.Status.REJECTED, "Unsupported archive entry: " + fileName);
+        if(!FileUtils.isValidFileName(fileName))
+            return new ExtractedFileDTO(fileName, ExtractedFileDTO.Status.REJECTED, "Invalid file name: " + fileName);
+        if(!fileNames.add(fileName))
+            return new ExtractedFileDTO(fileName, ExtractedFileDTO.Status.REJECTED, "Duplicate file name: " + fileName);
+        if(entry.getSize() > fileMultipartConfig.getMaxFileSize().toBytes())
+            return new ExtractedFileDTO(fileName, ExtractedFileDTO.Status.REJECTED, "Maximum upload size exceeded: " + fileName);
+        return null;
+    }
+
+    //the size of an entry is not always known up front (zip entries with a data descriptor), so up to the
+    //buffered limit is read first and only then is it decided whether the rest is streamed
+    private CompletableFuture<ExtractedFileDTO> extractEntry(InputStream entryStream, String fileName,
+                                                             FileUploader fileUploader, RequestAttributes requestAttributes) throws IOException {
+        int reservedBytes = maxBufferedEntrySize + 1 + ENTRY_OVERHEAD;
+        try {
+            bufferedBytes.acquire(reservedBytes);
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileInternalErrorException("Fatal error. Could not upload file: " + fileName);
+        }
+
+        byte[] data;
+        try {
+            data = entryStream.readNBytes(maxBufferedEntrySize + 1);
+        }catch(IOException | RuntimeException e) {
+            bufferedBytes.release(reservedBytes);
+            throw e;
+        }
+
+        if(data.length > maxBufferedEntrySize) {
+            bufferedBytes.release(reservedBytes);
+            InputStream inputStream = new SequenceInputStream(new ByteArrayInputStream(data), new EntryInputStream(entryStream));
+            return CompletableFuture.completedFuture(uploadFile(fileName, inputStream, fileUploader));
+        }
+
+        int heldBytes = data.length + ENTRY_OVERHEAD;
+        bufferedBytes.release(reservedBytes - heldBytes);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                RequestContextHolder.setRequestAttributes(requestAttributes);
+                try {
+                    return uploadFile(fileName, new ByteArrayInputStream(data), fileUploader);
+                }finally {
+                    RequestContextHolder.resetRequestAttributes();
+                    bufferedBytes.release(heldBytes);
+                }
+            }, extractionExecutor);
+        }catch(RuntimeException e) {
+            bufferedBytes.release(heldBytes);
+            throw new FileInternalErrorException("Fatal error. Could not upload file: " + fileName);
+        }
+    }
+
+    private ExtractedFileDTO uploadFile(String fileName, InputStream inputStream, FileUploader fileUploader) {
+        try {
+            return new ExtractedFileDTO(fileUploader.uploadFile(fileName,
+                    MultipartUtils.limitFileSize(inputStream, fileName, fileMultipartConfig)));
+        }catch(FileUploadException e) {
+            return new ExtractedFileDTO(fileName, ExtractedFileDTO.Status.REJECTED, e.getMessage());
+        }catch(RuntimeException e) {
+            return new ExtractedFileDTO(fileName, ExtractedFileDTO.Status.FAILED, e.getMessage());
+        }
+    }
+
+    //gzipped tar archives are unwrapped first, the format is then recognized from the first bytes
+    private static ArchiveInputStream<? extends ArchiveEntry> openArchive(InputStream archive) throws IOException {
+        InputStream inputStream = new BufferedInputStream(archive, BUFFER_SIZE);
+        try {
+            if(CompressorStreamFactory.GZIP.equals(CompressorStreamFactory.detect(inputStream)))
+                inputStream = new BufferedInputStream(new GzipCompressorInputStream(inputStream, true), BUFFER_SIZE);
+        }catch(CompressorException e) {
+            //not compressed
+        }
+
+        try {
+            String format = ArchiveStreamFactory.detect(inputStream);
+            if(ArchiveStreamFactory.ZIP.equals(format))
+                return new ZipArchiveInputStream(inputStream, StandardCharsets.UTF_8.name(), true, true);
+            if(ArchiveStreamFactory.TAR.equals(format))
+                return new TarArchiveInputStream(inputStream);
+        }catch(ArchiveException e) {
+            //not an archive at all
+        }
+        throw new FileUploadException("Unsupported archive format, a ZIP or TAR archive is required");
+    }
+
+    //storing an entry closes its stream, which must not close the archive the next entries are read from
+    private static class EntryInputStream extends FilterInputStream {
+        EntryInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
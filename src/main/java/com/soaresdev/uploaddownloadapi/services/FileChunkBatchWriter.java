@@ -0,0 +1,41 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.entities.FileChunkEntity;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.util.unit.DataSize;
+import java.util.ArrayList;
+import java.util.List;
+
+//persisted chunks are sent as JDBC batches, bounded by count and by the bytes held until they are flushed
+class FileChunkBatchWriter {
+    private static final long MAX_PENDING_BYTES = DataSize.ofMegabytes(16).toBytes();
+
+    private final EntityManager entityManager;
+    private final int batchSize;
+    private final List<FileChunkEntity> pendingChunks = new ArrayList<>();
+    private long pendingBytes;
+
+    FileChunkBatchWriter(EntityManager entityManager, int batchSize) {
+        this.entityManager = entityManager;
+        this.batchSize = batchSize;
+        entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+    }
+
+    void persist(FileChunkEntity chunk) {
+        entityManager.persist(chunk);
+        pendingChunks.add(chunk);
+        pendingBytes += chunk.getData().length;
+
+        if(pendingChunks.size() >= batchSize || pendingBytes >= MAX_PENDING_BYTES)
+            flush();
+    }
+
+    //flushed chunks are detached right away, so their data can be collected
+    void flush() {
+        entityManager.flush();
+        pendingChunks.forEach(entityManager::detach);
+        pendingChunks.clear();
+        pendingBytes = 0;
+    }
+}
@@ -0,0 +1,78 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.repositories.FileChunkRepository;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.UUID;
+
+class FileChunkInputStream extends InputStream {
+    private final FileChunkRepository fileChunkRepository;
+    private final UUID fileId;
+    private final int chunkSize;
+    private final long fileByteSize;
+    private long offset;
+    private int loadedSequence = -1;
+    private byte[] chunk;
+
+    FileChunkInputStream(FileChunkRepository fileChunkRepository, UUID fileId, int chunkSize, long fileByteSize) {
+        this.fileChunkRepository = fileChunkRepository;
+        this.fileId = fileId;
+        this.chunkSize = chunkSize;
+        this.fileByteSize = fileByteSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(offset >= fileByteSize)
+            return -1;
+
+        int position = loadChunk();
+        offset++;
+        return chunk[position] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if(len == 0)
+            return 0;
+        if(offset >= fileByteSize)
+            return -1;
+
+        int position = loadChunk();
+        int read = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, read);
+        offset += read;
+        return read;
+    }
+
+    //skipping only moves the offset, so chunks before the target are never fetched
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, fileByteSize - offset));
+        offset += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        if(chunk == null || loadedSequence != offset / chunkSize)
+            return 0;
+        return chunk.length - (int) (offset % chunkSize);
+    }
+
+    private int loadChunk() throws IOException {
+        int sequence = Math.toIntExact(offset / chunkSize);
+        if(sequence != loadedSequence) {
+            chunk = fileChunkRepository.findDataByFileIdAndSequence(fileId, sequence).
+                    orElseThrow(() -> new IOException("Missing chunk " + sequence + " of file " + fileId));
+            loadedSequence = sequence;
+        }
+
+        int position = (int) (offset % chunkSize);
+        if(position >= chunk.length)
+            throw new IOException("Truncated chunk " + sequence + " of file " + fileId);
+        return position;
+    }
+}
@@ -0,0 +1,46 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.projections.FileDatabaseMetadata;
+import com.soaresdev.uploaddownloadapi.repositories.FileChunkRepository;
+import org.springframework.core.io.AbstractResource;
+import java.io.InputStream;
+
+class FileChunkResource extends AbstractResource {
+    private final FileChunkRepository fileChunkRepository;
+    private final FileDatabaseMetadata metadata;
+
+    FileChunkResource(FileChunkRepository fileChunkRepository, FileDatabaseMetadata metadata) {
+        this.fileChunkRepository = fileChunkRepository;
+        this.metadata = metadata;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new FileChunkInputStream(fileChunkRepository, metadata.getDataId(), metadata.getChunkSize(), metadata.getEncodedByteSize());
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return metadata.getEncodedByteSize();
+    }
+
+    @Override
+    public long lastModified() {
+        return metadata.getLastModifiedTime() == null ? 0 : metadata.getLastModifiedTime().toEpochMilli();
+    }
+
+    @Override
+    public String getFilename() {
+        return metadata.getFileName();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Database file [" + metadata.getFileName() + "]";
+    }
+}
@@ -0,0 +1,139 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.configs.FileCompressionConfig;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//compressible files are stored gzipped while they are streamed in. Downloads send the stored bytes to clients
+//accepting gzip and decode them on the fly for the others, so a file is never compressed twice.
+@Component
+class FileCompressor {
+    static final String GZIP = "gzip";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String ENCODING_ATTRIBUTE = "content-encoding";
+
+    private final boolean enabled;
+    private final List<MediaType> compressibleTypes;
+
+    FileCompressor(FileCompressionConfig fileCompressionConfig) {
+        enabled = fileCompressionConfig.isEnabled();
+        compressibleTypes = fileCompressionConfig.getMimeTypes().stream().map(MediaType::parseMediaType).toList();
+    }
+
+    //the encoding new content of this type is stored with, null when it is stored as is. The type is the one detected
+    //from the first bytes, a file named like text but holding an archive or an image is not compressed again.
+    String getEncoding(String fileType) {
+        return enabled && isCompressible(fileType) ? GZIP : null;
+    }
+
+    OutputStream encode(OutputStream outputStream, String contentEncoding) throws IOException {
+        return contentEncoding == null ? outputStream : new GZIPOutputStream(outputStream, BUFFER_SIZE);
+    }
+
+    static InputStream decode(InputStream inputStream, String contentEncoding) throws IOException {
+        return contentEncoding == null ? inputStream : new GZIPInputStream(inputStream, BUFFER_SIZE);
+    }
+
+    //the encoding a file was stored with is kept in an extended attribute of the file itself, which moves and hard
+    //links carry along. Files without it are served exactly as they are, whatever their first bytes look like.
+    void recordEncoding(Path path, String contentEncoding) throws IOException {
+        if(contentEncoding != null)
+            Files.getFileAttributeView(path, UserDefinedFileAttributeView.class).
+                    write(ENCODING_ATTRIBUTE, StandardCharsets.US_ASCII.encode(contentEncoding));
+    }
+
+    String readEncoding(Path path) throws IOException {
+        UserDefinedFileAttributeView attributeView = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+        if(attributeView == null || !attributeView.list().contains(ENCODING_ATTRIBUTE))
+            return null;
+
+        ByteBuffer contentEncoding = ByteBuffer.allocate(attributeView.size(ENCODING_ATTRIBUTE));
+        attributeView.read(ENCODING_ATTRIBUTE, contentEncoding);
+        return GZIP.equals(StandardCharsets.US_ASCII.decode(contentEncoding.flip()).toString()) ? GZIP : null;
+    }
+
+    //nothing is compressed in an upload directory that cannot record it
+    boolean canRecordEncoding(Path location) throws IOException {
+        return !enabled || Files.getFileStore(location).supportsFileAttributeView(UserDefinedFileAttributeView.class);
+    }
+
+    static DownloadedFileDTO toDownloadedFile(String fileName, String fileType, long fileByteSize, Instant lastModifiedTime,
+                                              String contentHash, String contentEncoding, long encodedByteSize,
+                                              Resource storedResource) {
+        if(contentEncoding == null)
+            return new DownloadedFileDTO(fileName, fileType, fileByteSize, lastModifiedTime, contentHash, storedResource);
+
+        return new DownloadedFileDTO(fileName, fileType, fileByteSize, lastModifiedTime, contentHash,
+                new DecodedResource(storedResource, contentEncoding, fileByteSize),
+                contentEncoding, encodedByteSize, storedResource);
+    }
+
+    private boolean isCompressible(String fileType) {
+        MediaType mediaType;
+        try {
+            mediaType = MediaType.parseMediaType(fileType);
+        }catch(InvalidMediaTypeException e) {
+            return false;
+        }
+        return compressibleTypes.stream().anyMatch(type -> type.includes(mediaType));
+    }
+
+    private static class DecodedResource extends AbstractResource {
+        private final Resource encodedResource;
+        private final String contentEncoding;
+        private final long fileByteSize;
+
+        DecodedResource(Resource encodedResource, String contentEncoding, long fileByteSize) {
+            this.encodedResource = encodedResource;
+            this.contentEncoding = contentEncoding;
+            this.fileByteSize = fileByteSize;
+        }
+
+        //ranges of the decoded content are reached by skipping, which decompresses everything before them
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return decode(encodedResource.getInputStream(), contentEncoding);
+        }
+
+        @Override
+        public boolean exists() {
+            return encodedResource.exists();
+        }
+
+        @Override
+        public long contentLength() {
+            return fileByteSize;
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return encodedResource.lastModified();
+        }
+
+        @Override
+        public String getFilename() {
+            return encodedResource.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return "Decoded " + encodedResource.getDescription();
+        }
+    }
+}
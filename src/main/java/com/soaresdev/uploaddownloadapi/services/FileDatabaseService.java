@@ -1,75 +1,595 @@
 package com.soaresdev.uploaddownloadapi.services;
 
+import com.soaresdev.uploaddownloadapi.configs.FileDatabaseConfig;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.dtos.FileStatDTO;
 import com.soaresdev.uploaddownloadapi.dtos.UploadedFileDTO;
+import com.soaresdev.uploaddownloadapi.entities.FileChunkEntity;
 import com.soaresdev.uploaddownloadapi.entities.FileDatabaseEntity;
 import com.soaresdev.uploaddownloadapi.exceptions.FileDownloadException;
+import com.soaresdev.uploaddownloadapi.exceptions.FileInternalErrorException;
 import com.soaresdev.uploaddownloadapi.exceptions.FileNotFoundException;
 import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import com.soaresdev.uploaddownloadapi.projections.FileDatabaseMetadata;
+import com.soaresdev.uploaddownloadapi.repositories.FileChunkRepository;
 import com.soaresdev.uploaddownloadapi.repositories.FileDatabaseRepository;
+import com.soaresdev.uploaddownloadapi.utils.ContentTypeUtils;
 import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
 import jakarta.transaction.Transactional;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Service
-public class FileDatabaseService {
+public class FileDatabaseService implements FileStorageEngine {
+    private static final String CACHE_REGION = "in-database";
+
     private final FileDatabaseRepository fileDatabaseRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final EntityManager entityManager;
+    private final int chunkSize;
+    private final boolean deduplicationEnabled;
+    private final int batchSize;
+    private final FileDownloadCache fileDownloadCache;
+    private final FileCompressor fileCompressor;
+    private final FileTransferMetrics fileTransferMetrics;
+    private final FileTierStore fileTierStore;
+    private final TransactionTemplate newTransaction;
+    //last downloads, kept here and saved by the tier mover, so serving a file never writes to the database
+    private final Map<String, Instant> accessTimes = new ConcurrentHashMap<>();
+    //deletions of the copies committed moves left behind, run by the mover once their grace period is over
+    private final Queue<Runnable> movedCopyDeletions = new ConcurrentLinkedQueue<>();
 
-    public FileDatabaseService(FileDatabaseRepository fileDatabaseRepository) {
+    public FileDatabaseService(FileDatabaseRepository fileDatabaseRepository, FileChunkRepository fileChunkRepository,
+                               EntityManager entityManager, FileDatabaseConfig fileDatabaseConfig,
+                               FileDownloadCache fileDownloadCache, FileCompressor fileCompressor,
+                               FileTransferMetrics fileTransferMetrics, FileTierStore fileTierStore,
+                               PlatformTransactionManager transactionManager) {
         this.fileDatabaseRepository = fileDatabaseRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.entityManager = entityManager;
+        this.chunkSize = Math.toIntExact(fileDatabaseConfig.getChunkSize().toBytes());
+        this.deduplicationEnabled = fileDatabaseConfig.isDeduplicationEnabled();
+        this.batchSize = Math.max(1, fileDatabaseConfig.getBatchSize());
+        this.fileDownloadCache = fileDownloadCache;
+        this.fileCompressor = fileCompressor;
+        this.fileTransferMetrics = fileTransferMetrics;
+        this.fileTierStore = fileTierStore;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
-    @Transactional
-    public UploadedFileDTO uploadFile(MultipartFile file) {
-        String fileName = StringUtils.cleanPath(file.getOriginalFilename());
-
-        if(fileName == null || !FileUtils.isValidFileName(fileName))
-            throw new FileUploadException("Invalid file name: " + fileName);
+    @Override
+    public String getName() {
+        return FileTransferMetrics.IN_DATABASE;
+    }
 
+    @Override
+    @Transactional
+    public FileStatDTO put(String fileName, InputStream inputStream) {
         if(fileDatabaseRepository.existsByFileName(fileName))
             throw new FileUploadException("File already exists: " + fileName);
 
+        return storeFile(inputStream, fileName, new FileChunkBatchWriter(entityManager, batchSize));
+    }
+
+    //rows only change through storeFile, delete and moveToTier, which invalidate the entry once they commit, so a
+    //hot file skips the database
+    @Override
+    public Optional<DownloadedFileDTO> get(String fileName) {
+        Optional<CachedFile> cachedFile = fileDownloadCache.get(CACHE_REGION, fileName, null);
+        if(cachedFile.isPresent()) {
+            recordAccess(fileName);
+            return Optional.of(cachedFile.get().toDownloadedFile());
+        }
+
+        long cacheVersion = fileDownloadCache.getVersion(CACHE_REGION, fileName);
+        Optional<DownloadedFileDTO> downloadedFile = fileDatabaseRepository.findMetadataByFileName(fileName).
+                map(file -> fileDownloadCache.cache(CACHE_REGION, toDownloadedFile(file), cacheVersion));
+        downloadedFile.ifPresent(file -> recordAccess(fileName));
+        return downloadedFile;
+    }
+
+    @Override
+    public Optional<FileStatDTO> stat(String fileName) {
+        return fileDatabaseRepository.findMetadataByFileName(fileName).map(FileDatabaseService::toFileStat);
+    }
+
+    @Override
+    public List<FileStatDTO> list(String prefix, String cursor, int limit) {
+        String after = cursor == null ? "" : cursor;
+        List<FileDatabaseMetadata> files = prefix == null ?
+                fileDatabaseRepository.findMetadataAfter(after, Limit.of(limit)) :
+                fileDatabaseRepository.findMetadataByFileNameLikeAfter(toLikePattern(prefix), after, Limit.of(limit));
+        return files.stream().map(FileDatabaseService::toFileStat).toList();
+    }
+
+    //deduplicated files share the chunks of the first one stored, they are only deleted with the last file holding
+    //them. The files holding them stay locked until the chunks are gone, so an upload cannot start sharing them
+    //meanwhile; one that locked them first is committed before they are counted again. A move of the file locks
+    //them too, so the file is read again once they are locked to find where its content is now.
+    @Override
+    @Transactional
+    public boolean delete(String fileName) throws IOException {
+        Optional<FileDatabaseEntity> file = fileDatabaseRepository.findByFileName(fileName);
+        if(file.isEmpty())
+            return false;
+
+        UUID dataId = file.get().getDataId() == null ? file.get().getId() : file.get().getDataId();
+        if(fileDatabaseRepository.lockAllHoldingData(dataId).stream().noneMatch(holder -> holder.getId().equals(file.get().getId())))
+            return false;
+        entityManager.refresh(file.get());
+        if(file.get().getTierLocation() != null) {
+            fileDatabaseRepository.delete(file.get());
+            fileTierStore.delete(file.get().getTierLocation());
+        }else {
+            fileDatabaseRepository.delete(file.get());
+            fileDatabaseRepository.flush();
+            if(!fileDatabaseRepository.existsByIdOrDataId(dataId, dataId))
+                fileChunkRepository.deleteAllByFileId(dataId);
+        }
+        invalidateAfterCommit(fileName);
+        return true;
+    }
+
+    //moves the stored content, encoded or not, to the tier the size and last use of the file belong to. False when it
+    //already is there, when the file is gone or when other files share its chunks. The copy the move leaves is kept
+    //for downloads that read the metadata before, deleteMovedCopies deletes it once the mover waited for them.
+    @Transactional
+    public boolean moveToTier(UUID fileId) {
+        //locked like for a delete, so no upload starts sharing the chunks of a file moving out
+        List<FileDatabaseEntity> holders = fileDatabaseRepository.lockAllHoldingData(fileId);
+        FileDatabaseEntity file = holders.stream().filter(holder -> holder.getId().equals(fileId)).findFirst().orElse(null);
+        if(file == null || file.getDataId() != null || holders.size() > 1)
+            return false;
+        Instant lastUsedTime = file.getLastAccessTime() == null ? file.getLastModifiedTime() : file.getLastAccessTime();
+        if(fileTierStore.belongsToTier(file.getFileByteSize(), lastUsedTime) == (file.getTierLocation() != null))
+            return false;
+
+        long storedByteSize = file.getEncodedByteSize() == null ? file.getFileByteSize() : file.getEncodedByteSize();
         try {
-            FileDatabaseEntity toUploadFile = new FileDatabaseEntity(fileName,
-                    file.getContentType(),
-                    file.getSize(),
-                    file.getBytes());
-
-            fileDatabaseRepository.save(toUploadFile);
-            return new UploadedFileDTO(fileName,
-                    FileUtils.getFileDownloadUri(fileName),
-                    file.getContentType(),
-                    FileUtils.humanReadableByteCountSI(file.getSize()));
+            if(file.getTierLocation() == null) {
+                String tierLocation = fileTierStore.newLocation(fileId);
+                //left by an earlier move of the file whose copy was never deleted, no row points to it
+                fileTierStore.deleteNow(tierLocation);
+                try(InputStream inputStream = new FileChunkInputStream(fileChunkRepository, fileId, file.getChunkSize(), storedByteSize);
+                    OutputStream outputStream = fileTierStore.create(tierLocation)) {
+                    inputStream.transferTo(outputStream);
+                }
+                file.setTierLocation(tierLocation);
+                deleteAfterGracePeriod(() -> newTransaction.executeWithoutResult(status ->
+                        fileChunkRepository.deleteAllByFileId(fileId)));
+            }else {
+                String tierLocation = file.getTierLocation();
+                //left by an earlier move of the file whose chunks were never deleted
+                fileChunkRepository.deleteAllByFileId(fileId);
+                FileChunkBatchWriter chunkWriter = new FileChunkBatchWriter(entityManager, batchSize);
+                try(InputStream inputStream = Files.newInputStream(fileTierStore.resolve(tierLocation))) {
+                    writeChunks(fileId, inputStream, chunkWriter);
+                }
+                chunkWriter.flush();
+                file.setTierLocation(null);
+                file.setChunkSize(chunkSize);
+                deleteAfterGracePeriod(() -> {
+                    try {
+                        fileTierStore.deleteNow(tierLocation);
+                    }catch(IOException ignored) {
+                    }
+                });
+            }
         }catch(IOException e) {
-            throw new FileUploadException("Fatal error. Could not upload file: " + fileName);
+            throw new FileInternalErrorException("Fatal error. Could not move file: " + file.getFileName());
         }
+        invalidateAfterCommit(file.getFileName());
+        return true;
     }
 
+    public boolean hasMovedCopies() {
+        return !movedCopyDeletions.isEmpty();
+    }
+
+    //the chunks of files moved to the tier and the tier files of the ones moved back, for the moves committed so far
+    public void deleteMovedCopies() {
+        Runnable deletion;
+        while((deletion = movedCopyDeletions.poll()) != null)
+            deletion.run();
+    }
+
+    //chunks of files in the tier left by moves whose copies were never deleted, a batch at a time. Only called
+    //while no move is waiting for its grace period.
+    public int deleteStaleChunks(int limit) {
+        List<UUID> fileIds = fileDatabaseRepository.findTieredIdsWithChunks(Limit.of(limit));
+        for(UUID fileId : fileIds)
+            newTransaction.executeWithoutResult(status -> fileChunkRepository.deleteAllByFileId(fileId));
+        return fileIds.size();
+    }
+
+    //one update per file downloaded since the last call, the times recorded meanwhile are saved by the next one
+    @Transactional
+    public void saveAccessTimes() {
+        Map<String, Instant> savedAccessTimes = new HashMap<>(accessTimes);
+        savedAccessTimes.forEach(fileDatabaseRepository::updateLastAccessTime);
+        savedAccessTimes.forEach(accessTimes::remove);
+    }
+
+    //the inherited uploads call put on this instance, not through the proxy, so the transaction is started here
+    @Override
+    @Transactional
+    public UploadedFileDTO uploadFile(MultipartFile file) {
+        return FileStorageEngine.super.uploadFile(file);
+    }
+
+    //the request body is the file itself, its type is detected from its content and name like for any other upload
+    @Override
+    @Transactional
+    public UploadedFileDTO uploadFile(String fileName, InputStream inputStream) {
+        return FileStorageEngine.super.uploadFile(fileName, inputStream);
+    }
+
+    @Override
     @Transactional
     public List<UploadedFileDTO> uploadFiles(List<MultipartFile> files) {
-        return files.stream().map(this::uploadFile).toList();
+        List<String> fileNames = new ArrayList<>(files.size());
+        Set<String> distinctFileNames = new HashSet<>();
+        for(MultipartFile file : files) {
+            String fileName = StringUtils.cleanPath(file.getOriginalFilename());
+            FileStorageEngine.verifyFileName(fileName);
+            if(!distinctFileNames.add(fileName))
+                throw new FileUploadException("Duplicate file name: " + fileName);
+            fileNames.add(fileName);
+        }
+
+        //one query for the whole batch instead of one per file
+        Set<String> existingFileNames = new HashSet<>(fileDatabaseRepository.findFileNamesIn(fileNames));
+        for(String fileName : fileNames) {
+            if(existingFileNames.contains(fileName))
+                throw new FileUploadException("File already exists: " + fileName);
+        }
+
+        //the writer is shared, so chunks of small files are inserted together in the same JDBC batches
+        FileChunkBatchWriter chunkWriter = new FileChunkBatchWriter(entityManager, batchSize);
+        String fileDownloadUriPrefix = FileUtils.getFileDownloadUriPrefix(getFilesPath());
+        List<UploadedFileDTO> uploadedFiles = new ArrayList<>(files.size());
+        for(int i = 0; i < files.size(); i++)
+            uploadedFiles.add(storeFile(files.get(i), fileNames.get(i), fileDownloadUriPrefix, chunkWriter));
+        return uploadedFiles;
     }
 
+    //parts streamed from the request body are only known one at a time, so they are stored as they arrive and the
+    //unique file name column rejects a name already taken when the rows are flushed, within the first batch of
+    //chunks of that file. Nothing is looked up for a batch that succeeds, the transaction makes it all or nothing.
+    @Override
     @Transactional
-    public FileDatabaseEntity downloadFile(String fileName) {
-        if(!FileUtils.isValidFileName(fileName))
-            throw new FileDownloadException("Invalid file name: " + fileName);
+    public List<UploadedFileDTO> uploadFiles(Iterator<MultipartFile> files) {
+        List<String> fileNames = new ArrayList<>();
+        FileChunkBatchWriter chunkWriter = new FileChunkBatchWriter(entityManager, batchSize);
+        String fileDownloadUriPrefix = FileUtils.getFileDownloadUriPrefix(getFilesPath());
+        List<UploadedFileDTO> uploadedFiles = new ArrayList<>();
 
-        FileDatabaseEntity downloadedFile = fileDatabaseRepository.findByFileName(fileName).
-                orElseThrow(() -> new FileNotFoundException("File not found: " + fileName));
+        try {
+            while(files.hasNext()) {
+                MultipartFile file = files.next();
+                String fileName = StringUtils.cleanPath(file.getOriginalFilename());
+                FileStorageEngine.verifyFileName(fileName);
+                if(fileNames.contains(fileName))
+                    throw new FileUploadException("Duplicate file name: " + fileName);
+                fileNames.add(fileName);
 
-        return downloadedFile;
+                uploadedFiles.add(storeFile(file, fileName, fileDownloadUriPrefix, chunkWriter));
+            }
+            chunkWriter.flush();
+        }catch(PersistenceException e) {
+            if(!isConstraintViolation(e))
+                throw e;
+            List<String> existingFileNames = findExistingFileNames(fileNames);
+            throw new FileUploadException(existingFileNames.isEmpty() ? "File already exists" :
+                    "File already exists: " + existingFileNames.get(0));
+        }
+        return uploadedFiles;
     }
 
-    public List<UploadedFileDTO> listAllFiles() {
-        return fileDatabaseRepository.findAll().stream().map(file ->
-                new UploadedFileDTO(file.getFileName(),
-                        FileUtils.getFileDownloadUri(file.getFileName()),
-                        file.getFileType(),
-                        FileUtils.humanReadableByteCountSI(file.getFileByteSize()))).
+    @Override
+    @Transactional
+    public void deleteFile(String fileName) {
+        FileStorageEngine.super.deleteFile(fileName);
+    }
+
+    //the metadata of every file is read with a single query before the archive is sent, so missing ones are
+    //still answered with 404. Hot files are served from the cache, the others one chunk at a time.
+    @Override
+    public List<DownloadedFileDTO> downloadFiles(List<String> fileNames, String prefix) {
+        FileStorageEngine.verifyArchiveRequest(fileNames, prefix);
+
+        List<FileDatabaseMetadata> downloadedFiles;
+        long[] cacheVersions = fileDownloadCache.getVersions();
+        if(prefix == null) {
+            List<String> toDownloadFileNames = fileNames.stream().distinct().toList();
+            for(String fileName : toDownloadFileNames) {
+                if(!FileUtils.isValidFileName(fileName))
+                    throw new FileDownloadException("Invalid file name: " + fileName);
+            }
+
+            Map<String, FileDatabaseMetadata> foundFiles = new HashMap<>();
+            fileDatabaseRepository.findMetadataByFileNameIn(toDownloadFileNames).
+                    forEach(file -> foundFiles.put(file.getFileName(), file));
+            downloadedFiles = new ArrayList<>(toDownloadFileNames.size());
+            for(String fileName : toDownloadFileNames) {
+                FileDatabaseMetadata file = foundFiles.get(fileName);
+                if(file == null)
+                    throw new FileNotFoundException("File not found: " + fileName);
+                downloadedFiles.add(file);
+            }
+        }else {
+            downloadedFiles = fileDatabaseRepository.findMetadataByFileNameLikeAfter(toLikePattern(prefix), "",
+                    Limit.unlimited());
+            if(downloadedFiles.isEmpty())
+                throw new FileNotFoundException("No files found with prefix: " + prefix);
+        }
+
+        downloadedFiles.forEach(file -> recordAccess(file.getFileName()));
+        return downloadedFiles.stream().map(file ->
+                fileDownloadCache.get(CACHE_REGION, file.getFileName(), file.getContentHash()).
+                        map(CachedFile::toDownloadedFile).
+                        orElseGet(() -> fileDownloadCache.cache(CACHE_REGION, toDownloadedFile(file),
+                                fileDownloadCache.getVersion(cacheVersions, CACHE_REGION, file.getFileName())))).
                 toList();
     }
-}
\ No newline at end of file
+
+    private DownloadedFileDTO toDownloadedFile(FileDatabaseMetadata file) {
+        return FileCompressor.toDownloadedFile(file.getFileName(),
+                file.getFileType(),
+                file.getFileByteSize(),
+                file.getLastModifiedTime(),
+                file.getContentHash(),
+                file.getContentEncoding(),
+                file.getEncodedByteSize(),
+                file.getTierLocation() == null ? new FileChunkResource(fileChunkRepository, file) :
+                        new FileSystemResource(fileTierStore.resolve(file.getTierLocation())));
+    }
+
+    private UploadedFileDTO storeFile(MultipartFile file, String fileName, String fileDownloadUriPrefix,
+                                      FileChunkBatchWriter chunkWriter) {
+        try {
+            return FileStorageEngine.toUploadedFile(storeFile(file.getInputStream(), fileName, chunkWriter),
+                    FileUtils.toFileDownloadUri(fileDownloadUriPrefix, fileName));
+        }catch(IOException e) {
+            throw new FileUploadException("Fatal error. Could not upload file: " + fileName);
+        }
+    }
+
+    //the type the client sent is not trusted, it is detected from the first bytes before any chunk is written
+    private FileStatDTO storeFile(InputStream source, String fileName, FileChunkBatchWriter chunkWriter) {
+        MessageDigest digest = FileUtils.newChecksumDigest();
+        try(PushbackInputStream peekableSource = ContentTypeUtils.toPeekableInputStream(source);
+            InputStream inputStream = new DigestInputStream(peekableSource, digest)) {
+            String fileType = ContentTypeUtils.peekContentType(fileName, peekableSource);
+            FileDatabaseEntity toUploadFile = new FileDatabaseEntity(fileName, fileType, 0, chunkSize);
+            entityManager.persist(toUploadFile);
+            invalidateAfterCommit(fileName);
+
+            toUploadFile.setLastModifiedTime(Instant.now());
+            String contentEncoding = fileCompressor.getEncoding(fileType);
+            //whatever the size the client announced, the file only goes to the tier once more than the threshold was read
+            InputStream content = inputStream;
+            if(fileTierStore.isEnabled()) {
+                byte[] head = inputStream.readNBytes(fileTierStore.getThreshold() + 1);
+                content = new SequenceInputStream(new ByteArrayInputStream(head), inputStream);
+                if(fileTierStore.belongsToTier(head.length))
+                    toUploadFile.setTierLocation(fileTierStore.newLocation(toUploadFile.getId()));
+            }
+
+            if(toUploadFile.getTierLocation() != null) {
+                try(OutputStream outputStream = fileCompressor.encode(fileTierStore.create(toUploadFile.getTierLocation()), contentEncoding)) {
+                    toUploadFile.setFileByteSize(content.transferTo(outputStream));
+                }
+                if(contentEncoding != null) {
+                    toUploadFile.setContentEncoding(contentEncoding);
+                    toUploadFile.setEncodedByteSize(Files.size(fileTierStore.resolve(toUploadFile.getTierLocation())));
+                }
+            }else if(contentEncoding == null) {
+                toUploadFile.setFileByteSize(writeChunks(toUploadFile.getId(), content, chunkWriter));
+            }else {
+                FileChunkOutputStream chunkOutputStream = new FileChunkOutputStream(toUploadFile.getId(), chunkWriter);
+                try(OutputStream outputStream = fileCompressor.encode(chunkOutputStream, contentEncoding)) {
+                    toUploadFile.setFileByteSize(content.transferTo(outputStream));
+                }
+                toUploadFile.setContentEncoding(contentEncoding);
+                toUploadFile.setEncodedByteSize(chunkOutputStream.getWrittenBytes());
+            }
+            toUploadFile.setContentHash(FileUtils.toChecksum(digest));
+            //files of the tier are never shared, their chunks could not be
+            if(deduplicationEnabled && toUploadFile.getTierLocation() == null)
+                deduplicate(toUploadFile, chunkWriter);
+            fileTransferMetrics.recordFile(FileTransferMetrics.IN_DATABASE, toUploadFile.getFileByteSize());
+
+            return new FileStatDTO(fileName,
+                    fileType,
+                    toUploadFile.getFileByteSize(),
+                    toUploadFile.getLastModifiedTime(),
+                    toUploadFile.getContentHash());
+        }catch(IOException e) {
+            throw new FileUploadException("Fatal error. Could not upload file: " + fileName);
+        }
+    }
+
+    //the content hash is only known once the whole stream was read, so the chunks just written are
+    //dropped when another file already holds the same content and this one points to its chunks instead.
+    //The files holding them are locked first, when the last one was deleted or moved to the tier meanwhile this file
+    //keeps its own.
+    private void deduplicate(FileDatabaseEntity toUploadFile, FileChunkBatchWriter chunkWriter) {
+        chunkWriter.flush();
+        List<FileDatabaseMetadata> sameContentFiles = fileDatabaseRepository.findMetadataByContent(toUploadFile.getContentHash(),
+                toUploadFile.getFileByteSize(), toUploadFile.getId(), Limit.of(1));
+        List<FileDatabaseEntity> holders = sameContentFiles.isEmpty() ? List.of() :
+                fileDatabaseRepository.lockAllHoldingData(sameContentFiles.get(0).getDataId());
+
+        if(!holders.isEmpty() && holders.stream().allMatch(holder -> holder.getTierLocation() == null)) {
+            fileChunkRepository.deleteAllByFileId(toUploadFile.getId());
+            toUploadFile.setDataId(sameContentFiles.get(0).getDataId());
+            toUploadFile.setChunkSize(sameContentFiles.get(0).getChunkSize());
+            toUploadFile.setContentEncoding(sameContentFiles.get(0).getContentEncoding());
+            toUploadFile.setEncodedByteSize(sameContentFiles.get(0).getContentEncoding() == null ? null :
+                    sameContentFiles.get(0).getEncodedByteSize());
+        }
+    }
+
+    private long writeChunks(UUID fileId, InputStream inputStream, FileChunkBatchWriter chunkWriter) throws IOException {
+        long writtenBytes = 0;
+        int sequence = 0;
+        byte[] data;
+
+        while((data = inputStream.readNBytes(chunkSize)).length > 0) {
+            chunkWriter.persist(new FileChunkEntity(fileId, sequence++, data));
+            writtenBytes += data.length;
+        }
+        return writtenBytes;
+    }
+
+    //encoded content has no size known in advance, it is cut into chunks as the encoder writes it
+    private class FileChunkOutputStream extends OutputStream {
+        private final UUID fileId;
+        private final FileChunkBatchWriter chunkWriter;
+        private byte[] chunk;
+        private int chunkPosition;
+        private int sequence;
+        private long writtenBytes;
+
+        FileChunkOutputStream(UUID fileId, FileChunkBatchWriter chunkWriter) {
+            this.fileId = fileId;
+            this.chunkWriter = chunkWriter;
+        }
+
+        long getWrittenBytes() {
+            return writtenBytes;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while(len > 0) {
+                if(chunk == null)
+                    chunk = new byte[chunkSize];
+                int count = Math.min(len, chunk.length - chunkPosition);
+                System.arraycopy(b, off, chunk, chunkPosition, count);
+                chunkPosition += count;
+                off += count;
+                len -= count;
+                if(chunkPosition == chunk.length)
+                    persistChunk();
+            }
+        }
+
+        @Override
+        public void close() {
+            if(chunk != null && chunkPosition > 0)
+                persistChunk();
+        }
+
+        //every chunk gets an array of its own, it stays referenced by the entity until the batch is flushed
+        private void persistChunk() {
+            byte[] data = chunkPosition == chunk.length ? chunk : Arrays.copyOf(chunk, chunkPosition);
+            chunkWriter.persist(new FileChunkEntity(fileId, sequence++, data));
+            writtenBytes += data.length;
+            chunk = null;
+            chunkPosition = 0;
+        }
+    }
+
+    private static FileStatDTO toFileStat(FileDatabaseMetadata file) {
+        return new FileStatDTO(file.getFileName(),
+                file.getFileType(),
+                file.getFileByteSize(),
+                file.getLastModifiedTime(),
+                file.getContentHash());
+    }
+
+    //downloads keep reading the committed row until the transaction commits and could cache it again meanwhile,
+    //so the entry is only dropped once the change is visible to them
+    private void invalidateAfterCommit(String fileName) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            fileDownloadCache.invalidate(CACHE_REGION, fileName);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                fileDownloadCache.invalidate(CACHE_REGION, fileName);
+            }
+        });
+    }
+
+    private void recordAccess(String fileName) {
+        if(fileTierStore.isEnabled())
+            accessTimes.put(fileName, Instant.now());
+    }
+
+    //the copy stays the only one when the move rolls back
+    private void deleteAfterGracePeriod(Runnable deletion) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            movedCopyDeletions.add(deletion);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                movedCopyDeletions.add(deletion);
+            }
+        });
+    }
+
+    //the session that failed to flush cannot be used anymore, so the names are looked up in a transaction of their own
+    private List<String> findExistingFileNames(List<String> fileNames) {
+        List<String> existingFileNames = newTransaction.execute(status -> fileDatabaseRepository.findFileNamesIn(fileNames));
+        return existingFileNames == null ? List.of() : existingFileNames;
+    }
+
+    private static boolean isConstraintViolation(Throwable e) {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(cause instanceof ConstraintViolationException)
+                return true;
+        }
+        return false;
+    }
+
+    //names are matched literally, % and _ are escaped with a backslash
+    private static String toLikePattern(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+}
@@ -0,0 +1,382 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.soaresdev.uploaddownloadapi.configs.FileCacheConfig;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadCacheStatsDTO;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//keeps the content of small, frequently downloaded files in memory so they are served without reading storage.
+//Files are never replaced in place, so an entry only goes stale when a file is uploaded again under the same
+//name, which invalidates it, or when the file system is changed by others, which the content hash check catches.
+//Content read for a download is only kept while no invalidation of its name came in since the download looked
+//the file up, so a download that read the metadata just before a change never caches the old content again.
+@Component
+public class FileDownloadCache implements MeterBinder {
+    private static final int VERSION_STRIPES = 1024;
+
+    private final CacheStore store;
+    private final FileCacheConfig.EvictionPolicy policy;
+    private final long maxSize;
+    private final long maxFileSize;
+    private final boolean offHeap;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    //bumped by every invalidation, names sharing a stripe only cost each other an entry not kept
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    public FileDownloadCache(FileCacheConfig fileCacheConfig) {
+        policy = fileCacheConfig.getPolicy();
+        maxSize = fileCacheConfig.getMaxSize().toBytes();
+        maxFileSize = fileCacheConfig.isEnabled() ?
+                Math.min(Math.min(fileCacheConfig.getMaxFileSize().toBytes(), maxSize), Integer.MAX_VALUE) : -1;
+        offHeap = fileCacheConfig.isOffHeap();
+
+        if(maxFileSize < 0)
+            store = null;
+        else if(policy == FileCacheConfig.EvictionPolicy.LRU)
+            store = new LruStore(maxSize);
+        else
+            store = new TinyLfuStore(maxSize);
+    }
+
+    private boolean isCacheable(long fileByteSize) {
+        return fileByteSize <= maxFileSize;
+    }
+
+    //an expected content hash of null accepts whatever is cached
+    Optional<CachedFile> get(String region, String fileName, String expectedContentHash) {
+        if(store == null)
+            return Optional.empty();
+
+        CacheKey key = new CacheKey(region, fileName);
+        CachedFile cachedFile = store.get(key);
+        if(cachedFile != null && expectedContentHash != null && !Objects.equals(expectedContentHash, cachedFile.getContentHash())) {
+            store.invalidate(key);
+            cachedFile = null;
+        }
+
+        (cachedFile == null ? missCount : hitCount).increment();
+        return Optional.ofNullable(cachedFile);
+    }
+
+    //taken before the metadata of the file is read and given back to cache with what was read
+    long getVersion(String region, String fileName) {
+        return versions.get(getStripe(new CacheKey(region, fileName)));
+    }
+
+    //the versions of every name at once, for downloads that only learn the names from the metadata they read
+    long[] getVersions() {
+        long[] snapshot = new long[VERSION_STRIPES];
+        for(int i = 0; i < VERSION_STRIPES; i++)
+            snapshot[i] = versions.get(i);
+        return snapshot;
+    }
+
+    long getVersion(long[] snapshot, String region, String fileName) {
+        return snapshot[getStripe(new CacheKey(region, fileName))];
+    }
+
+    DownloadedFileDTO cache(String region, DownloadedFileDTO file) {
+        return cache(region, file, getVersion(region, file.getFileName()));
+    }
+
+    //the content is read into the cache the first time the body is written, so responses without one (304, HEAD)
+    //never read it. The download is served from what was read, even when the policy decides not to keep it.
+    DownloadedFileDTO cache(String region, DownloadedFileDTO file, long version) {
+        if(store == null || !isCacheable(file.getEncodedByteSize()))
+            return file;
+
+        return FileCompressor.toDownloadedFile(file.getFileName(),
+                file.getFileType(),
+                file.getFileByteSize(),
+                file.getLastModifiedTime(),
+                file.getContentHash(),
+                file.getContentEncoding(),
+                file.getEncodedByteSize(),
+                new LoadingResource(new CacheKey(region, file.getFileName()), file, version));
+    }
+
+    void invalidate(String region, String fileName) {
+        if(store != null) {
+            CacheKey key = new CacheKey(region, fileName);
+            versions.incrementAndGet(getStripe(key));
+            store.invalidate(key);
+        }
+    }
+
+    public void clear() {
+        if(store != null)
+            store.clear();
+    }
+
+    public DownloadCacheStatsDTO getStats() {
+        return new DownloadCacheStatsDTO(store == null ? "disabled" : policy.name(),
+                store == null ? 0 : store.entryCount(),
+                store == null ? 0 : store.byteSize(),
+                store == null ? 0 : maxSize,
+                offHeap,
+                hitCount.sum(),
+                missCount.sum(),
+                store == null ? 0 : store.evictionCount());
+    }
+
+    //the same figures as getStats, read by the registry whenever it is scraped
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("file.cache.requests", hitCount, LongAdder::sum).
+                description("Downloads looked up in the cache").
+                tag("result", "hit").
+                register(meterRegistry);
+        FunctionCounter.builder("file.cache.requests", missCount, LongAdder::sum).
+                description("Downloads looked up in the cache").
+                tag("result", "miss").
+                register(meterRegistry);
+        FunctionCounter.builder("file.cache.evictions", this, cache -> cache.store == null ? 0 : cache.store.evictionCount()).
+                description("Files evicted to make room for others").
+                register(meterRegistry);
+        Gauge.builder("file.cache.size", this, cache -> cache.store == null ? 0 : cache.store.byteSize()).
+                description("Bytes held by the cache").
+                baseUnit(BaseUnits.BYTES).
+                register(meterRegistry);
+        Gauge.builder("file.cache.entries", this, cache -> cache.store == null ? 0 : cache.store.entryCount()).
+                description("Files held by the cache").
+                register(meterRegistry);
+    }
+
+    //empty when the stream does not hold exactly byteSize bytes, the file changed since it was looked up
+    private Optional<ByteBuffer> readContent(InputStream inputStream, long byteSize) throws IOException {
+        int size = (int) byteSize;
+        //off heap the collector only tracks the small buffer object, the content counts against direct memory
+        ByteBuffer content = offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        byte[] buffer = offHeap ? new byte[Math.min(size, 64 * 1024)] : content.array();
+        int read = 0;
+        while(read < size) {
+            int count = offHeap ? inputStream.read(buffer, 0, Math.min(buffer.length, size - read)) :
+                    inputStream.read(buffer, read, size - read);
+            if(count < 0)
+                return Optional.empty();
+            if(offHeap)
+                content.put(buffer, 0, count);
+            read += count;
+        }
+        if(inputStream.read() != -1)
+            return Optional.empty();
+        return Optional.of(content.clear());
+    }
+
+    private static int getStripe(CacheKey key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+    }
+
+    private record CacheKey(String region, String fileName) {
+    }
+
+    //loads the stored bytes, which are the encoded ones for files stored compressed
+    private class LoadingResource extends AbstractResource {
+        private final CacheKey key;
+        private final DownloadedFileDTO file;
+        private final long version;
+        private final Resource storedResource;
+        private volatile CachedFile cachedFile;
+
+        LoadingResource(CacheKey key, DownloadedFileDTO file, long version) {
+            this.key = key;
+            this.file = file;
+            this.version = version;
+            this.storedResource = file.getEncodedResource() == null ? file.getResource() : file.getEncodedResource();
+        }
+
+        //ranges open the stream once per region, only the first one reads the storage
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if(cachedFile == null) {
+                Optional<ByteBuffer> content;
+                try(InputStream inputStream = storedResource.getInputStream()) {
+                    content = readContent(inputStream, file.getEncodedByteSize());
+                }
+                if(content.isEmpty())
+                    return storedResource.getInputStream();
+
+                cachedFile = new CachedFile(file.getFileName(), file.getFileType(), file.getFileByteSize(),
+                        file.getLastModifiedTime(), file.getContentHash(), file.getContentEncoding(), content.get());
+                //checked once the entry is in, an invalidation coming in meanwhile removes it itself
+                store.put(key, cachedFile);
+                if(versions.get(getStripe(key)) != version)
+                    store.invalidate(key);
+            }
+            return cachedFile.newInputStream();
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return file.getEncodedByteSize();
+        }
+
+        @Override
+        public long lastModified() {
+            return file.getLastModifiedTime() == null ? 0 : file.getLastModifiedTime().toEpochMilli();
+        }
+
+        @Override
+        public String getFilename() {
+            return file.getFileName();
+        }
+
+        @Override
+        public String getDescription() {
+            return "Cached " + storedResource.getDescription();
+        }
+    }
+
+    private interface CacheStore {
+        CachedFile get(CacheKey key);
+
+        void put(CacheKey key, CachedFile cachedFile);
+
+        void invalidate(CacheKey key);
+
+        void clear();
+
+        long entryCount();
+
+        long byteSize();
+
+        long evictionCount();
+    }
+
+    //W-TinyLFU only admits a new file when it is likely to be requested more than the one it would evict,
+    //so a scan over many files downloaded once does not flush the hot ones
+    private static class TinyLfuStore implements CacheStore {
+        private final Cache<CacheKey, CachedFile> cache;
+        private final LongAdder evictionCount = new LongAdder();
+
+        TinyLfuStore(long maxSize) {
+            cache = Caffeine.newBuilder().
+                    maximumWeight(maxSize).
+                    weigher((CacheKey key, CachedFile cachedFile) -> cachedFile.getContentByteSize()).
+                    removalListener((CacheKey key, CachedFile cachedFile, RemovalCause cause) -> {
+                        if(cause.wasEvicted())
+                            evictionCount.increment();
+                    }).
+                    executor(Runnable::run).
+                    build();
+        }
+
+        @Override
+        public CachedFile get(CacheKey key) {
+            return cache.getIfPresent(key);
+        }
+
+        @Override
+        public void put(CacheKey key, CachedFile cachedFile) {
+            cache.put(key, cachedFile);
+        }
+
+        @Override
+        public void invalidate(CacheKey key) {
+            cache.invalidate(key);
+        }
+
+        @Override
+        public void clear() {
+            cache.invalidateAll();
+        }
+
+        @Override
+        public long entryCount() {
+            return cache.estimatedSize();
+        }
+
+        @Override
+        public long byteSize() {
+            return cache.policy().eviction().orElseThrow().weightedSize().orElse(0);
+        }
+
+        @Override
+        public long evictionCount() {
+            return evictionCount.sum();
+        }
+    }
+
+    private static class LruStore implements CacheStore {
+        private final long maxSize;
+        private final LinkedHashMap<CacheKey, CachedFile> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long byteSize;
+        private long evictionCount;
+
+        LruStore(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public synchronized CachedFile get(CacheKey key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public synchronized void put(CacheKey key, CachedFile cachedFile) {
+            CachedFile previous = entries.put(key, cachedFile);
+            byteSize += cachedFile.getContentByteSize() - (previous == null ? 0 : previous.getContentByteSize());
+
+            Iterator<Map.Entry<CacheKey, CachedFile>> leastRecentlyUsed = entries.entrySet().iterator();
+            while(byteSize > maxSize && leastRecentlyUsed.hasNext()) {
+                byteSize -= leastRecentlyUsed.next().getValue().getContentByteSize();
+                leastRecentlyUsed.remove();
+                evictionCount++;
+            }
+        }
+
+        @Override
+        public synchronized void invalidate(CacheKey key) {
+            CachedFile previous = entries.remove(key);
+            if(previous != null)
+                byteSize -= previous.getContentByteSize();
+        }
+
+        @Override
+        public synchronized void clear() {
+            entries.clear();
+            byteSize = 0;
+        }
+
+        @Override
+        public synchronized long entryCount() {
+            return entries.size();
+        }
+
+        @Override
+        public synchronized long byteSize() {
+            return byteSize;
+        }
+
+        @Override
+        public synchronized long evictionCount() {
+            return evictionCount;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.configs.FileShardingConfig;
+import com.soaresdev.uploaddownloadapi.dtos.ShardMigrationDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.FileMigrationException;
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+//moves the files a flat upload directory still holds at its root into their shards while they keep being served.
+//Every file is first hard linked into its shard, which lookups prefer from then on, and its root name is only
+//removed after a grace period, so downloads that located it at the root before the link still find it open.
+@Service
+public class FileShardMigrator {
+    public enum State {
+        IDLE, RUNNING, COMPLETED, FAILED
+    }
+
+    private final FileSystemService fileSystemService;
+    private final FileShardingConfig fileShardingConfig;
+    private final ExecutorService migrationExecutor;
+    private final AtomicLong linkedFiles = new AtomicLong();
+    private final AtomicLong migratedFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private volatile State state = State.IDLE;
+    private volatile Instant startTime;
+    private volatile Instant endTime;
+    private volatile String message;
+
+    public FileShardMigrator(FileSystemService fileSystemService, FileShardingConfig fileShardingConfig) {
+        this.fileSystemService = fileSystemService;
+        this.fileShardingConfig = fileShardingConfig;
+        migrationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-shard-migration");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized ShardMigrationDTO startMigration() {
+        if(!fileShardingConfig.isEnabled())
+            throw new FileMigrationException("Sharding is not enabled");
+        if(state == State.RUNNING)
+            throw new FileMigrationException("A migration is already running");
+
+        linkedFiles.set(0);
+        migratedFiles.set(0);
+        skippedFiles.set(0);
+        state = State.RUNNING;
+        startTime = Instant.now();
+        endTime = null;
+        message = null;
+        migrationExecutor.execute(this::migrate);
+        return getStatus();
+    }
+
+    public ShardMigrationDTO getStatus() {
+        return new ShardMigrationDTO(state.name(), linkedFiles.get(), migratedFiles.get(), skippedFiles.get(),
+                startTime, endTime, message);
+    }
+
+    @PreDestroy
+    public void close() {
+        migrationExecutor.shutdownNow();
+    }
+
+    private void migrate() {
+        try {
+            for(FileSystemVolume volume : fileSystemService.getVolumes())
+                linkRootFiles(volume);
+            Thread.sleep(fileShardingConfig.getMigrationGracePeriod().toMillis());
+            for(FileSystemVolume volume : fileSystemService.getVolumes())
+                unlinkRootFiles(volume);
+            finish(State.COMPLETED, null);
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(State.FAILED, "Migration interrupted");
+        }catch(IOException | RuntimeException e) {
+            finish(State.FAILED, "Migration failed: " + e.getMessage());
+        }
+    }
+
+    private void finish(State finalState, String finalMessage) {
+        message = finalMessage;
+        endTime = Instant.now();
+        state = finalState;
+    }
+
+    //a file uploaded again since is already in its shard and is left as it is, its root copy is no longer served
+    private void linkRootFiles(FileSystemVolume volume) throws IOException {
+        FileSystemIndex index = volume.getIndex();
+        try(DirectoryStream<Path> rootFiles = newRootFileStream(volume)) {
+            for(Path legacyLocation : rootFiles) {
+                String fileName = legacyLocation.getFileName().toString();
+                Path location = index.createLocation(fileName);
+                try {
+                    Files.createLink(location, legacyLocation);
+                }catch(FileAlreadyExistsException e) {
+                    if(!Files.isSameFile(location, legacyLocation))
+                        skippedFiles.incrementAndGet();
+                    continue;
+                }catch(UnsupportedOperationException e) {
+                    //without hard links the file is moved at once, a download that already located it may fail
+                    Files.move(legacyLocation, location, StandardCopyOption.ATOMIC_MOVE);
+                    index.relocate(fileName);
+                    migratedFiles.incrementAndGet();
+                    continue;
+                }
+                index.relocate(fileName);
+                linkedFiles.incrementAndGet();
+            }
+        }
+    }
+
+    private void unlinkRootFiles(FileSystemVolume volume) throws IOException {
+        FileSystemIndex index = volume.getIndex();
+        try(DirectoryStream<Path> rootFiles = newRootFileStream(volume)) {
+            for(Path legacyLocation : rootFiles) {
+                String fileName = legacyLocation.getFileName().toString();
+                Path location = index.getLayout().resolve(fileName);
+                if(!Files.exists(location) || !Files.isSameFile(location, legacyLocation))
+                    continue;
+
+                Files.delete(legacyLocation);
+                index.relocate(fileName);
+                migratedFiles.incrementAndGet();
+            }
+        }
+    }
+
+    private static DirectoryStream<Path> newRootFileStream(FileSystemVolume volume) throws IOException {
+        return Files.newDirectoryStream(volume.getLocation(), path ->
+                FileUtils.isValidFileName(path.getFileName().toString()) &&
+                Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS));
+    }
+}
@@ -0,0 +1,199 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.dtos.FileStatDTO;
+import com.soaresdev.uploaddownloadapi.dtos.UploadedFileDTO;
+import com.soaresdev.uploaddownloadapi.dtos.UploadedFilePageDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.FileDownloadException;
+import com.soaresdev.uploaddownloadapi.exceptions.FileInternalErrorException;
+import com.soaresdev.uploaddownloadapi.exceptions.FileNotFoundException;
+import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+//a backend files are stored in and addressed by name only. An engine implements the streaming primitives, put, get,
+//stat, list and delete, for names already validated; what the API offers on top of them (validation, download URIs,
+//batches, archives and pages) is built here once. Engines override it where they can do the same with less I/O.
+public interface FileStorageEngine {
+    int MAX_PAGE_SIZE = 1000;
+
+    //the segment of the API path, also the backend tag of the metrics
+    String getName();
+
+    //the stream is read once and stored under a name that must not be taken yet
+    FileStatDTO put(String fileName, InputStream inputStream) throws IOException;
+
+    //the content is only read when the resource is, empty when there is no such file
+    Optional<DownloadedFileDTO> get(String fileName) throws IOException;
+
+    Optional<FileStatDTO> stat(String fileName) throws IOException;
+
+    //files in name order, only the ones after the cursor and starting with the prefix when they are not null
+    List<FileStatDTO> list(String prefix, String cursor, int limit) throws IOException;
+
+    //false when there was no such file
+    boolean delete(String fileName) throws IOException;
+
+    //large files are better written by the container straight from the storage
+    default boolean isSendfileCandidate(DownloadedFileDTO downloadedFile) {
+        return false;
+    }
+
+    default UploadedFileDTO uploadFile(MultipartFile file) {
+        String fileName = StringUtils.cleanPath(file.getOriginalFilename());
+        try {
+            return uploadFile(fileName, file.getInputStream());
+        }catch(IOException e) {
+            throw new FileInternalErrorException("Fatal error. Could not upload file: " + fileName);
+        }
+    }
+
+    default UploadedFileDTO uploadFile(String fileName, InputStream inputStream) {
+        verifyFileName(fileName);
+        try {
+            return toUploadedFile(put(fileName, inputStream), FileUtils.getFileDownloadUri(getFilesPath(), fileName));
+        }catch(IOException e) {
+            throw new FileInternalErrorException("Fatal error. Could not upload file: " + fileName);
+        }
+    }
+
+    //files are stored one after the other, a failure part way deletes the ones already stored
+    default List<UploadedFileDTO> uploadFiles(List<MultipartFile> files) {
+        Set<String> fileNames = new HashSet<>();
+        for(MultipartFile file : files) {
+            String fileName = StringUtils.cleanPath(file.getOriginalFilename());
+            verifyFileName(fileName);
+            if(!fileNames.add(fileName))
+                throw new FileUploadException("Duplicate file name: " + fileName);
+        }
+        return uploadFiles(files.iterator());
+    }
+
+    default List<UploadedFileDTO> uploadFiles(Iterator<MultipartFile> files) {
+        Set<String> fileNames = new HashSet<>();
+        List<UploadedFileDTO> uploadedFiles = new ArrayList<>();
+        try {
+            while(files.hasNext()) {
+                MultipartFile file = files.next();
+                String fileName = StringUtils.cleanPath(file.getOriginalFilename());
+                verifyFileName(fileName);
+                if(!fileNames.add(fileName))
+                    throw new FileUploadException("Duplicate file name: " + fileName);
+                uploadedFiles.add(uploadFile(file));
+            }
+            return uploadedFiles;
+        }catch(RuntimeException e) {
+            for(UploadedFileDTO uploadedFile : uploadedFiles) {
+                try {
+                    delete(uploadedFile.getFileName());
+                }catch(IOException ignored) {
+                }
+            }
+            throw e;
+        }
+    }
+
+    default DownloadedFileDTO downloadFile(String fileName) {
+        if(!FileUtils.isValidFileName(fileName))
+            throw new FileDownloadException("Invalid file name: " + fileName);
+
+        try {
+            return get(fileName).orElseThrow(() -> new FileNotFoundException("File not found: " + fileName));
+        }catch(IOException e) {
+            throw new FileDownloadException("Fatal error. Could not download file: " + fileName);
+        }
+    }
+
+    //every file is looked up before the archive is sent, so missing ones are still answered with 404
+    default List<DownloadedFileDTO> downloadFiles(List<String> fileNames, String prefix) {
+        verifyArchiveRequest(fileNames, prefix);
+
+        List<String> toDownloadFileNames;
+        try {
+            toDownloadFileNames = prefix == null ? fileNames.stream().distinct().toList() :
+                    list(prefix, null, Integer.MAX_VALUE).stream().map(FileStatDTO::getFileName).toList();
+        }catch(IOException e) {
+            throw new FileDownloadException("Fatal error. Could not download files");
+        }
+        if(toDownloadFileNames.isEmpty())
+            throw new FileNotFoundException("No files found with prefix: " + prefix);
+
+        return toDownloadFileNames.stream().map(this::downloadFile).toList();
+    }
+
+    default List<UploadedFileDTO> listAllFiles() {
+        try {
+            String fileDownloadUriPrefix = FileUtils.getFileDownloadUriPrefix(getFilesPath());
+            return list(null, null, Integer.MAX_VALUE).stream().
+                    map(file -> toUploadedFile(file, FileUtils.toFileDownloadUri(fileDownloadUriPrefix, file.getFileName()))).
+                    toList();
+        }catch(IOException | RuntimeException e) {
+            throw new FileInternalErrorException("Fatal error. Could not list all files");
+        }
+    }
+
+    default UploadedFilePageDTO listFiles(String cursor, int size) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+
+        //one extra file is listed only to know whether there is a next page
+        List<FileStatDTO> files;
+        try {
+            files = list(null, cursor, pageSize + 1);
+        }catch(IOException e) {
+            throw new FileInternalErrorException("Fatal error. Could not list all files");
+        }
+
+        String nextCursor = null;
+        if(files.size() > pageSize) {
+            files = files.subList(0, pageSize);
+            nextCursor = files.get(pageSize - 1).getFileName();
+        }
+
+        String fileDownloadUriPrefix = FileUtils.getFileDownloadUriPrefix(getFilesPath());
+        return new UploadedFilePageDTO(files.stream().
+                map(file -> toUploadedFile(file, FileUtils.toFileDownloadUri(fileDownloadUriPrefix, file.getFileName()))).
+                toList(), nextCursor);
+    }
+
+    default void deleteFile(String fileName) {
+        if(!FileUtils.isValidFileName(fileName))
+            throw new FileDownloadException("Invalid file name: " + fileName);
+
+        try {
+            if(!delete(fileName))
+                throw new FileNotFoundException("File not found: " + fileName);
+        }catch(IOException e) {
+            throw new FileInternalErrorException("Fatal error. Could not delete file: " + fileName);
+        }
+    }
+
+    default String getFilesPath() {
+        return "/api/v1/" + getName() + "/files";
+    }
+
+    static UploadedFileDTO toUploadedFile(FileStatDTO file, String fileDownloadUri) {
+        return new UploadedFileDTO(file.getFileName(),
+                fileDownloadUri,
+                file.getFileType(),
+                FileUtils.humanReadableByteCountSI(file.getFileByteSize()));
+    }
+
+    static void verifyFileName(String fileName) {
+        if(fileName == null || !FileUtils.isValidFileName(fileName))
+            throw new FileUploadException("Invalid file name: " + fileName);
+    }
+
+    static void verifyArchiveRequest(List<String> fileNames, String prefix) {
+        if((fileNames == null || fileNames.isEmpty()) == (prefix == null))
+            throw new FileDownloadException("Either file names or a prefix is required");
+    }
+}
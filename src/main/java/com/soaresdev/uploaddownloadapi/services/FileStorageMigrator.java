@@ -0,0 +1,255 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.configs.FileMigrationConfig;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.dtos.FileStatDTO;
+import com.soaresdev.uploaddownloadapi.dtos.StorageMigrationDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.FileMigrationException;
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+//copies every file of a storage backend to another one while both keep being served. Files are listed in name
+//order a batch at a time and each batch is copied by a bounded number of threads, every file streamed from the
+//source straight into the target. The name of the last batch copied entirely is kept as a checkpoint, so a stopped
+//migration goes on from there; files already in the target with the same content are not copied again.
+@Service
+public class FileStorageMigrator {
+    public enum State {
+        IDLE, RUNNING, COMPLETED, FAILED
+    }
+
+    private final Map<String, FileStorageEngine> fileStorageEngines;
+    private final int batchSize;
+    private final Path checkpointLocation;
+    private final ExecutorService migrationExecutor;
+    private final ExecutorService copyExecutor;
+    private final AtomicLong copiedFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private volatile State state = State.IDLE;
+    private volatile FileStorageEngine source;
+    private volatile FileStorageEngine target;
+    private volatile String checkpoint;
+    private volatile Instant startTime;
+    private volatile Instant endTime;
+    private volatile String message;
+
+    public FileStorageMigrator(List<FileStorageEngine> fileStorageEngines, FileMigrationConfig fileMigrationConfig) {
+        this.fileStorageEngines = fileStorageEngines.stream().
+                collect(Collectors.toMap(FileStorageEngine::getName, Function.identity()));
+        this.batchSize = Math.max(1, fileMigrationConfig.getBatchSize());
+        this.checkpointLocation = Paths.get(fileMigrationConfig.getCheckpointDirectory()).toAbsolutePath().normalize();
+        migrationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-storage-migration");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        AtomicInteger threadCount = new AtomicInteger();
+        copyExecutor = Executors.newFixedThreadPool(Math.max(1, fileMigrationConfig.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "file-storage-migration-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized StorageMigrationDTO startMigration(String sourceName, String targetName) {
+        FileStorageEngine sourceEngine = getEngine(sourceName);
+        FileStorageEngine targetEngine = getEngine(targetName);
+        if(sourceEngine == targetEngine)
+            throw new FileMigrationException("Source and target are the same backend: " + sourceName);
+        if(state == State.RUNNING)
+            throw new FileMigrationException("A migration is already running");
+
+        String savedCheckpoint;
+        try {
+            savedCheckpoint = readCheckpoint(sourceEngine, targetEngine);
+        }catch(IOException e) {
+            throw new FileMigrationException("Could not read the migration checkpoint");
+        }
+
+        copiedFiles.set(0);
+        skippedFiles.set(0);
+        failedFiles.set(0);
+        copiedBytes.set(0);
+        source = sourceEngine;
+        target = targetEngine;
+        checkpoint = savedCheckpoint;
+        state = State.RUNNING;
+        startTime = Instant.now();
+        endTime = null;
+        message = null;
+        migrationExecutor.execute(this::migrate);
+        return getStatus();
+    }
+
+    public StorageMigrationDTO getStatus() {
+        Instant start = startTime;
+        Instant end = endTime == null ? Instant.now() : endTime;
+        long elapsedMillis = start == null ? 0 : Duration.between(start, end).toMillis();
+        long bytesPerSecond = elapsedMillis == 0 ? 0 : copiedBytes.get() * 1000 / elapsedMillis;
+        return new StorageMigrationDTO(state.name(),
+                source == null ? null : source.getName(),
+                target == null ? null : target.getName(),
+                copiedFiles.get(),
+                skippedFiles.get(),
+                failedFiles.get(),
+                copiedBytes.get(),
+                bytesPerSecond,
+                checkpoint,
+                start,
+                endTime,
+                message);
+    }
+
+    @PreDestroy
+    public void close() {
+        migrationExecutor.shutdownNow();
+        copyExecutor.shutdownNow();
+    }
+
+    //once a batch has a file that could not be copied the checkpoint stays before it, so the next migration retries it
+    private void migrate() {
+        try {
+            String cursor = checkpoint;
+            boolean checkpointHeld = false;
+            List<FileStatDTO> files;
+            do {
+                files = source.list(null, cursor, batchSize);
+                if(files.isEmpty())
+                    break;
+
+                List<Callable<Boolean>> copies = new ArrayList<>(files.size());
+                for(FileStatDTO file : files)
+                    copies.add(() -> copyFile(file));
+                boolean batchCopied = true;
+                for(Future<Boolean> copy : copyExecutor.invokeAll(copies))
+                    batchCopied &= copy.get();
+
+                cursor = files.get(files.size() - 1).getFileName();
+                checkpointHeld |= !batchCopied;
+                if(!checkpointHeld)
+                    writeCheckpoint(cursor);
+            }while(files.size() == batchSize);
+
+            if(!checkpointHeld)
+                deleteCheckpoint();
+            finish(State.COMPLETED, failedFiles.get() == 0 ? null : "Files not copied: " + failedFiles.get() + ", " + message);
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(State.FAILED, "Migration interrupted");
+        }catch(Exception e) {
+            finish(State.FAILED, "Migration failed: " + e.getMessage());
+        }
+    }
+
+    private void finish(State finalState, String finalMessage) {
+        message = finalMessage;
+        endTime = Instant.now();
+        state = finalState;
+    }
+
+    //the checksum of what was read is checked against the one the source listed and the one the target stored,
+    //a copy that does not match both is deleted again
+    private boolean copyFile(FileStatDTO file) {
+        String fileName = file.getFileName();
+        try {
+            Optional<FileStatDTO> copiedFile = target.stat(fileName);
+            if(copiedFile.isPresent()) {
+                if(file.getContentHash() == null || !file.getContentHash().equals(copiedFile.get().getContentHash()))
+                    return fail(fileName, "a different file already exists in the target");
+                skippedFiles.incrementAndGet();
+                return true;
+            }
+
+            //a file deleted from the source since it was listed has nothing left to copy
+            Optional<DownloadedFileDTO> sourceFile = source.get(fileName);
+            if(sourceFile.isEmpty()) {
+                skippedFiles.incrementAndGet();
+                return true;
+            }
+
+            MessageDigest digest = FileUtils.newChecksumDigest();
+            FileStatDTO storedFile;
+            try(InputStream inputStream = new DigestInputStream(sourceFile.get().getResource().getInputStream(), digest)) {
+                storedFile = target.put(fileName, inputStream);
+            }
+            String checksum = FileUtils.toChecksum(digest);
+            if(!checksum.equals(storedFile.getContentHash()) ||
+                    (file.getContentHash() != null && !checksum.equals(file.getContentHash()))) {
+                target.delete(fileName);
+                return fail(fileName, "checksum mismatch");
+            }
+
+            copiedFiles.incrementAndGet();
+            copiedBytes.addAndGet(storedFile.getFileByteSize());
+            return true;
+        }catch(IOException | RuntimeException e) {
+            return fail(fileName, e.getMessage());
+        }
+    }
+
+    private boolean fail(String fileName, String reason) {
+        failedFiles.incrementAndGet();
+        message = "last failure: " + fileName + ": " + reason;
+        return false;
+    }
+
+    private FileStorageEngine getEngine(String name) {
+        FileStorageEngine engine = fileStorageEngines.get(name);
+        if(engine == null)
+            throw new FileMigrationException("Unknown storage backend: " + name);
+        return engine;
+    }
+
+    //one checkpoint for each way, a migration back does not resume the one that went forth
+    private Path getCheckpointFile(FileStorageEngine sourceEngine, FileStorageEngine targetEngine) {
+        return checkpointLocation.resolve(sourceEngine.getName() + "-to-" + targetEngine.getName());
+    }
+
+    private String readCheckpoint(FileStorageEngine sourceEngine, FileStorageEngine targetEngine) throws IOException {
+        Path checkpointFile = getCheckpointFile(sourceEngine, targetEngine);
+        if(!Files.exists(checkpointFile))
+            return null;
+        return Files.readString(checkpointFile, StandardCharsets.UTF_8);
+    }
+
+    //written aside and moved over the previous one, a crash never leaves a checkpoint half written
+    private void writeCheckpoint(String cursor) throws IOException {
+        Files.createDirectories(checkpointLocation);
+        Path checkpointFile = getCheckpointFile(source, target);
+        Path temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.writeString(temporaryFile, cursor, StandardCharsets.UTF_8);
+        Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpoint = cursor;
+    }
+
+    private void deleteCheckpoint() throws IOException {
+        Files.deleteIfExists(getCheckpointFile(source, target));
+    }
+}
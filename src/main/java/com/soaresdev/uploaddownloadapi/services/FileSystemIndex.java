@@ -0,0 +1,526 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.projections.FileSystemMetadata;
+import com.soaresdev.uploaddownloadapi.utils.ContentTypeUtils;
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+class FileSystemIndex implements Closeable {
+    //file and directory timestamps are only as precise as the kernel clock tick, so a change made right after
+    //one was observed may leave its modified time untouched. While inside this window, check it again.
+    private static final Duration RACY_WINDOW = Duration.ofMillis(100);
+    //directories past the limit of watches are polled for their modified time instead
+    private static final Duration UNWATCHED_POLL_INTERVAL = Duration.ofSeconds(1);
+
+    private final Path root;
+    private final FileSystemLayout layout;
+    private final Path snapshot;
+    private final FileCompressor fileCompressor;
+    private final ConcurrentNavigableMap<String, FileSystemMetadata> entries = new ConcurrentSkipListMap<>();
+    //entries indexed while their file was still inside the racy window may be written again without
+    //their size or modified time changing, so the watcher checks them again until they settle
+    private final Set<String> racyEntries = ConcurrentHashMap.newKeySet();
+    //own uploads are indexed before their file is moved in, a rescan in between must not drop them
+    private final Set<String> publishingFileNames = ConcurrentHashMap.newKeySet();
+    //held while an entry is stored or dropped, together with the check of the file it describes, so a rescan
+    //never brings back an entry of a file deleted meanwhile nor drops the one of a file being published
+    private final Object indexLock = new Object();
+    //each directory is watched on its own and the watcher applies the changes it reports, reads never touch the
+    //disk but to look for a name the index does not know yet. Flat, the root is the only one. Sharded, the root
+    //only holds the shards and the files of the flat layout that were not migrated yet.
+    private final Map<Path, IndexedDirectory> directories = new ConcurrentHashMap<>();
+    private final IndexedDirectory rootDirectory;
+    private final WatchService watchService;
+    private final Thread watcher;
+    //set by the watcher once the root is gone, the index no longer follows it and every read fails
+    private volatile boolean rootDeleted;
+
+    FileSystemIndex(FileSystemLayout layout, Path snapshot, FileCompressor fileCompressor) throws IOException {
+        this.root = layout.getRoot();
+        this.layout = layout;
+        this.snapshot = snapshot;
+        this.fileCompressor = fileCompressor;
+
+        loadSnapshot();
+        watchService = root.getFileSystem().newWatchService();
+        rootDirectory = track(root, 0);
+        if(!rootDirectory.watched)
+            throw new IOException("Could not watch " + root);
+        rescan(rootDirectory);
+        //snapshot entries whose file is gone were never found by the scan
+        entries.keySet().removeIf(fileName -> getDirectory(fileName).filter(directory ->
+                directory.fileNames.contains(fileName)).isEmpty() && !rootDirectory.fileNames.contains(fileName));
+
+        watcher = new Thread(this::watch, "file-system-index-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    //a name the watcher did not report yet may still have been written by others, only then is it looked for on disk
+    boolean contains(String fileName) throws IOException {
+        verifyRoot();
+        if(!entries.containsKey(fileName))
+            refresh(fileName);
+        return entries.containsKey(fileName);
+    }
+
+    //what the index already knows, without looking at the directory
+    boolean isIndexed(String fileName) {
+        return entries.containsKey(fileName);
+    }
+
+    Optional<FileSystemMetadata> get(String fileName) throws IOException {
+        return contains(fileName) ? Optional.ofNullable(entries.get(fileName)) : Optional.empty();
+    }
+
+    //files in name order, the prefix and the cursor, the name listed last, are both optional.
+    //Files written or deleted by others are listed once the watcher reported them.
+    Collection<FileSystemMetadata> list(String prefix, String cursor) throws IOException {
+        verifyRoot();
+        NavigableMap<String, FileSystemMetadata> files = prefix == null ? entries :
+                entries.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        return (cursor == null ? files : files.tailMap(cursor, false)).values();
+    }
+
+    FileSystemLayout getLayout() {
+        return layout;
+    }
+
+    //files of the flat layout that were not migrated yet are still served from the root
+    Path locate(String fileName) {
+        return layout.isSharded() && rootDirectory.fileNames.contains(fileName) ?
+                root.resolve(fileName) : layout.resolve(fileName);
+    }
+
+    //new files always go to their shard, its directories are created and indexed before the file is moved in
+    Path createLocation(String fileName) throws IOException {
+        Path location = layout.resolve(fileName);
+        if(!layout.isSharded())
+            return location;
+
+        Files.createDirectories(location.getParent());
+        Path directory = root;
+        Path shardDirectory = root.relativize(location.getParent());
+        for(int level = 1; level <= shardDirectory.getNameCount(); level++) {
+            directory = directory.resolve(shardDirectory.getName(level - 1));
+            track(directory, level);
+        }
+        return location;
+    }
+
+    void put(FileSystemMetadata metadata) {
+        synchronized(indexLock) {
+            publishingFileNames.add(metadata.getFileName());
+            entries.put(metadata.getFileName(), metadata);
+            getDirectory(metadata.getFileName()).ifPresent(directory -> directory.fileNames.add(metadata.getFileName()));
+        }
+    }
+
+    void remove(FileSystemMetadata metadata) {
+        synchronized(indexLock) {
+            publishingFileNames.remove(metadata.getFileName());
+            if(entries.remove(metadata.getFileName(), metadata))
+                forget(metadata.getFileName());
+        }
+    }
+
+    //the entry is dropped and the file deleted at once, returns where the file was
+    Path delete(String fileName) throws IOException {
+        synchronized(indexLock) {
+            Path location = locate(fileName);
+            entries.remove(fileName);
+            forget(fileName);
+            Files.deleteIfExists(location);
+            return location;
+        }
+    }
+
+    void markPublished(String fileName, Path directory) throws IOException {
+        publishingFileNames.remove(fileName);
+        markModified(directory);
+    }
+
+    //own writes are already in the index, a directory polled instead of watched is not rescanned for them
+    void markModified(Path directory) throws IOException {
+        IndexedDirectory indexedDirectory = directories.get(directory);
+        if(indexedDirectory != null)
+            indexedDirectory.knownModifiedTime = Files.getLastModifiedTime(directory);
+    }
+
+    //a file of the flat layout now also is, or only is, in its shard
+    void relocate(String fileName) throws IOException {
+        refresh(fileName);
+        markModified(root);
+        markModified(layout.resolve(fileName).getParent());
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.interrupt();
+        watchService.close();
+        saveSnapshot();
+    }
+
+    private void verifyRoot() throws NoSuchFileException {
+        if(rootDeleted)
+            throw new NoSuchFileException(root.toString());
+    }
+
+    private void refreshIfStale(IndexedDirectory directory) throws IOException {
+        FileTime modifiedTime;
+        try {
+            modifiedTime = Files.getLastModifiedTime(directory.path);
+        }catch(NoSuchFileException e) {
+            if(directory == rootDirectory)
+                throw e;
+            untrack(directory);
+            return;
+        }
+
+        if(directory.racy || !modifiedTime.equals(directory.knownModifiedTime))
+            rescan(directory);
+    }
+
+    private void rescan(IndexedDirectory directory) throws IOException {
+        List<Path> shardDirectories = new ArrayList<>();
+        synchronized(directory) {
+            FileTime modifiedTime = Files.getLastModifiedTime(directory.path);
+
+            List<Path> paths;
+            try(Stream<Path> files = Files.list(directory.path)) {
+                paths = files.toList();
+            }
+
+            List<Path> files = new ArrayList<>(paths.size());
+            for(Path path : paths) {
+                String name = path.getFileName().toString();
+                if(directory.level < layout.getDepth() && layout.isShardDirectoryName(name))
+                    shardDirectories.add(path);
+                else if(belongsTo(directory, name))
+                    files.add(path);
+            }
+
+            Set<String> indexed = new HashSet<>();
+            for(Path file : files) {
+                if(index(file))
+                    indexed.add(file.getFileName().toString());
+            }
+            directory.fileNames.addAll(indexed);
+            //names no longer found here may have been deleted, or moved to their shard
+            for(String fileName : directory.fileNames) {
+                if(indexed.contains(fileName))
+                    continue;
+                synchronized(indexLock) {
+                    if(publishingFileNames.contains(fileName))
+                        continue;
+                    directory.fileNames.remove(fileName);
+                }
+                refresh(fileName);
+            }
+
+            directory.knownModifiedTime = modifiedTime;
+            directory.racy = Duration.between(modifiedTime.toInstant(), Instant.now()).compareTo(RACY_WINDOW) < 0;
+        }
+
+        //shards already tracked are followed by the watcher, or rescanned on their own after an overflow
+        for(Path path : shardDirectories) {
+            if(!directories.containsKey(path))
+                rescan(track(path, directory.level + 1));
+        }
+    }
+
+    //a file belongs to its shard, or to the root when the flat layout left it there and it was not migrated yet
+    private boolean belongsTo(IndexedDirectory directory, String fileName) {
+        if(!FileUtils.isValidFileName(fileName))
+            return false;
+        Path location = layout.resolve(fileName);
+        if(location.getParent().equals(directory.path))
+            return true;
+        return directory == rootDirectory && !Files.exists(location);
+    }
+
+    private Optional<IndexedDirectory> getDirectory(String fileName) {
+        return Optional.ofNullable(directories.get(layout.resolve(fileName).getParent()));
+    }
+
+    private IndexedDirectory track(Path path, int level) {
+        IndexedDirectory directory = new IndexedDirectory(path, level);
+        IndexedDirectory known = directories.putIfAbsent(path, directory);
+        if(known != null)
+            return known;
+
+        try {
+            path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            directory.watched = true;
+        }catch(IOException e) {
+            //past the limit of watches, files created or deleted in the shard are still found through its
+            //modified time, only files rewritten in place by others go unnoticed
+        }
+        return directory;
+    }
+
+    private void untrack(IndexedDirectory directory) {
+        if(directories.remove(directory.path, directory)) {
+            directories.values().stream().
+                    filter(child -> child.path.getParent().equals(directory.path)).
+                    forEach(this::untrack);
+            directory.fileNames.forEach(this::refresh);
+        }
+    }
+
+    private boolean index(Path path) {
+        String fileName = path.getFileName().toString();
+        if(!FileUtils.isValidFileName(fileName))
+            return false;
+
+        racyEntries.remove(fileName);
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if(!attributes.isRegularFile())
+                return false;
+
+            Instant lastModifiedTime = attributes.lastModifiedTime().toInstant();
+            if(Duration.between(lastModifiedTime, Instant.now()).compareTo(RACY_WINDOW) < 0)
+                racyEntries.add(fileName);
+
+            FileSystemMetadata known = entries.get(fileName);
+            if(known != null && known.getEncodedByteSize() == attributes.size() &&
+                    lastModifiedTime.equals(known.getLastModifiedTime()))
+                return true;
+
+            //an encoded file that no longer decodes is left out of the index
+            String contentEncoding = fileCompressor.readEncoding(path);
+            long fileByteSize = attributes.size();
+            String checksum;
+            if(contentEncoding == null) {
+                checksum = FileUtils.checksumOf(path);
+            }else {
+                //size and checksum are the ones of the decoded content, as they were when the file was uploaded
+                MessageDigest digest = FileUtils.newChecksumDigest();
+                try(InputStream inputStream = new DigestInputStream(
+                        FileCompressor.decode(Files.newInputStream(path), contentEncoding), digest)) {
+                    fileByteSize = inputStream.transferTo(OutputStream.nullOutputStream());
+                    checksum = FileUtils.toChecksum(digest);
+                }
+            }
+
+            //files written by others are detected as uploads are, from the decoded first bytes and the name
+            String fileType;
+            try(InputStream inputStream = contentEncoding == null ? Files.newInputStream(path) :
+                    FileCompressor.decode(Files.newInputStream(path), contentEncoding)) {
+                fileType = ContentTypeUtils.detectContentType(fileName, inputStream);
+            }
+
+            FileSystemMetadata metadata = new FileSystemMetadata(fileName,
+                    fileByteSize,
+                    fileType,
+                    lastModifiedTime,
+                    checksum,
+                    contentEncoding,
+                    attributes.size());
+
+            //the watcher and a reader may index the same file at once, so an entry is only kept while the file
+            //still matches it and a slow hash of an older version never replaces a newer one
+            synchronized(indexLock) {
+                //an upload indexes its file itself
+                if(publishingFileNames.contains(fileName))
+                    return true;
+                BasicFileAttributes currentAttributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if(currentAttributes.size() != attributes.size() ||
+                        !currentAttributes.lastModifiedTime().equals(attributes.lastModifiedTime())) {
+                    racyEntries.add(fileName);
+                    return true;
+                }
+                entries.put(fileName, metadata);
+            }
+            return true;
+        }catch(IOException e) {
+            return false;
+        }
+    }
+
+    //changes are applied as they are reported, everything is only rescanned when the watch service lost some.
+    //In between, entries still inside the racy window and the directories that could not be watched are checked.
+    private void watch() {
+        try {
+            long nextRacyCheck = System.nanoTime();
+            long nextUnwatchedCheck = System.nanoTime();
+            while(!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(RACY_WINDOW.toMillis(), TimeUnit.MILLISECONDS);
+                if(key != null && !apply(key))
+                    return;
+
+                long now = System.nanoTime();
+                if(now - nextRacyCheck >= 0) {
+                    racyEntries.forEach(this::refresh);
+                    nextRacyCheck = now + RACY_WINDOW.toNanos();
+                }
+                if(now - nextUnwatchedCheck >= 0) {
+                    //the key of a deleted root is only invalidated once nothing holds the directory open anymore
+                    if(!Files.isDirectory(root)) {
+                        rootDeleted = true;
+                        return;
+                    }
+                    refreshUnwatched();
+                    nextUnwatchedCheck = now + UNWATCHED_POLL_INTERVAL.toNanos();
+                }
+            }
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }catch(ClosedWatchServiceException ignored) {
+        }
+    }
+
+    //returns false once the root is gone
+    private boolean apply(WatchKey key) {
+        IndexedDirectory directory = directories.get((Path) key.watchable());
+
+        boolean overflow = false;
+        Set<String> changed = new HashSet<>();
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == OVERFLOW)
+                overflow = true;
+            else
+                changed.add(event.context().toString());
+        }
+
+        if(overflow)
+            rescanQuietly();
+        else if(directory != null)
+            changed.forEach(name -> refresh(directory, name));
+
+        if(key.reset() || directory == null)
+            return true;
+        if(directory == rootDirectory) {
+            rootDeleted = true;
+            return false;
+        }
+        //a deleted shard only invalidates its own key, it may have been created again since
+        untrack(directory);
+        refreshShardDirectory(directory.path, directory.level);
+        return true;
+    }
+
+    private void refreshUnwatched() {
+        for(IndexedDirectory directory : directories.values()) {
+            if(directory.watched)
+                continue;
+            try {
+                refreshIfStale(directory);
+            }catch(IOException ignored) {
+            }
+        }
+    }
+
+    private void refresh(IndexedDirectory directory, String name) {
+        if(directory.level < layout.getDepth() && layout.isShardDirectoryName(name))
+            refreshShardDirectory(directory.path.resolve(name), directory.level + 1);
+        else
+            refresh(name);
+    }
+
+    //shards created by others are tracked and scanned, the ones deleted are dropped with their files
+    private void refreshShardDirectory(Path path, int level) {
+        IndexedDirectory shardDirectory = directories.get(path);
+        try {
+            if(shardDirectory == null && Files.isDirectory(path))
+                rescan(track(path, level));
+            else if(shardDirectory != null && !Files.isDirectory(path))
+                untrack(shardDirectory);
+        }catch(IOException ignored) {
+        }
+    }
+
+    //a name is looked up in its shard, then in the root where the flat layout may have left it
+    private void refresh(String fileName) {
+        if(!FileUtils.isValidFileName(fileName))
+            return;
+
+        if(index(layout.resolve(fileName))) {
+            getDirectory(fileName).ifPresent(directory -> directory.fileNames.add(fileName));
+            if(layout.isSharded())
+                rootDirectory.fileNames.remove(fileName);
+        }else if(layout.isSharded() && index(root.resolve(fileName))) {
+            rootDirectory.fileNames.add(fileName);
+        }else {
+            synchronized(indexLock) {
+                //published since it was looked for
+                if(publishingFileNames.contains(fileName) || Files.exists(layout.resolve(fileName)) ||
+                        (layout.isSharded() && Files.exists(root.resolve(fileName))))
+                    return;
+                entries.remove(fileName);
+                forget(fileName);
+            }
+        }
+    }
+
+    private void forget(String fileName) {
+        getDirectory(fileName).ifPresent(directory -> directory.fileNames.remove(fileName));
+        rootDirectory.fileNames.remove(fileName);
+    }
+
+    private void rescanQuietly() {
+        for(IndexedDirectory directory : directories.values()) {
+            try {
+                rescan(directory);
+            }catch(IOException ignored) {
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadSnapshot() {
+        if(snapshot == null || !Files.isRegularFile(snapshot))
+            return;
+
+        //entries read from the snapshot are only reused when size and modified time still match on disk
+        try(ObjectInputStream inputStream = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            entries.putAll((Map<String, FileSystemMetadata>) inputStream.readObject());
+        }catch(IOException | ClassNotFoundException | ClassCastException e) {
+            entries.clear();
+        }
+    }
+
+    private void saveSnapshot() throws IOException {
+        if(snapshot == null)
+            return;
+
+        Path temporarySnapshot = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try(ObjectOutputStream outputStream = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temporarySnapshot)))) {
+            outputStream.writeObject(new HashMap<>(entries));
+        }
+        Files.move(temporarySnapshot, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class IndexedDirectory {
+        private final Path path;
+        private final int level;
+        //the files indexed from this directory, so the ones deleted by others are found when it changes
+        private final Set<String> fileNames = ConcurrentHashMap.newKeySet();
+        private volatile boolean watched;
+        //only followed for the directories that are polled instead of watched
+        private volatile FileTime knownModifiedTime;
+        private volatile boolean racy;
+
+        IndexedDirectory(Path path, int level) {
+            this.path = path;
+            this.level = level;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import java.nio.file.Path;
+
+//where a file is stored under the upload directory. Flat, every file is in the directory itself. Sharded, in
+//depth levels of subdirectories named after the hash of the file name, so no directory holds more than a few
+//files even with millions of them and creating or looking one up never scans a huge directory.
+class FileSystemLayout {
+    private final Path root;
+    private final int depth;
+    private final int width;
+
+    FileSystemLayout(Path root, int depth, int width) {
+        if(depth < 0 || width < 1 || depth * width > FileUtils.MAX_SHARD_DIGITS)
+            throw new IllegalArgumentException("Shard depth times width must be between 0 and " + FileUtils.MAX_SHARD_DIGITS);
+        this.root = root;
+        this.depth = depth;
+        this.width = width;
+    }
+
+    static FileSystemLayout flat(Path root) {
+        return new FileSystemLayout(root, 0, 1);
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    boolean isSharded() {
+        return depth > 0;
+    }
+
+    Path resolve(String fileName) {
+        if(depth == 0)
+            return root.resolve(fileName);
+        return root.resolve(FileUtils.getShardDirectory(fileName, depth, width)).resolve(fileName);
+    }
+
+    //file names always have an extension, so they never look like a shard directory
+    boolean isShardDirectoryName(String name) {
+        return FileUtils.isShardDirectoryName(name, width);
+    }
+}
@@ -1,109 +1,606 @@
 package com.soaresdev.uploaddownloadapi.services;
 
+import com.soaresdev.uploaddownloadapi.configs.FileShardingConfig;
 import com.soaresdev.uploaddownloadapi.configs.FileSystemConfig;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.dtos.FileStatDTO;
 import com.soaresdev.uploaddownloadapi.dtos.UploadedFileDTO;
-import com.soaresdev.uploaddownloadapi.exceptions.FileDownloadException;
 import com.soaresdev.uploaddownloadapi.exceptions.FileInternalErrorException;
-import com.soaresdev.uploaddownloadapi.exceptions.FileNotFoundException;
 import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import com.soaresdev.uploaddownloadapi.projections.FileSystemMetadata;
+import com.soaresdev.uploaddownloadapi.utils.ContentTypeUtils;
 import com.soaresdev.uploaddownloadapi.utils.FileUtils;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 @Service
-public class FileSystemService {
-    private final Path fileUploadLocation;
+public class FileSystemService implements FileStorageEngine {
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemService.class);
+    private static final String BLOB_DIRECTORY = ".blobs";
+    //files being written are kept out of the watched directories, the index only hears of each one once it is moved in
+    private static final String STAGING_DIRECTORY = ".staging";
+    private static final String BATCH_DIRECTORY_PREFIX = "batch-";
+    //left in the root by earlier versions
+    private static final String LEGACY_BATCH_DIRECTORY_PREFIX = ".batch-";
+    private static final String CACHE_REGION = "in-system";
+    //a streamed part is handed to its writer through a pipe this large, a batch holds one for each writer at most
+    private static final int PIPE_BUFFER_SIZE = 1024 * 1024;
 
-    public FileSystemService(FileSystemConfig fileSystemConfig) {
-        fileUploadLocation = Paths.get(fileSystemConfig.getUploadDirectory()).
-                toAbsolutePath().normalize();
+    private final List<FileSystemVolume> volumes;
+    private final FileVolumePlacement volumePlacement;
+    //names are unique across volumes, a name is only published on one of them at a time
+    private final Set<String> publishingFileNames = ConcurrentHashMap.newKeySet();
+    private final long sendfileMinSize;
+    private final ExecutorService batchUploadExecutor;
+    private final FileDownloadCache fileDownloadCache;
+    private final FileCompressor fileCompressor;
+    private final FileTransferMetrics fileTransferMetrics;
 
-        try {
-            Files.createDirectories(fileUploadLocation);
-        }catch(Exception e) {
-            throw new FileInternalErrorException("Fatal error while creating file upload directory");
-        }
+    public FileSystemService(FileSystemConfig fileSystemConfig, FileShardingConfig fileShardingConfig,
+                             FileDownloadCache fileDownloadCache, FileCompressor fileCompressor,
+                             FileTransferMetrics fileTransferMetrics) {
+        this.fileDownloadCache = fileDownloadCache;
+        this.fileCompressor = fileCompressor;
+        this.fileTransferMetrics = fileTransferMetrics;
+        sendfileMinSize = fileSystemConfig.isSendfileEnabled() ?
+                Math.max(1, fileSystemConfig.getSendfileMinSize().toBytes()) : Long.MAX_VALUE;
+        //without volumes the upload directory is the only one, upload sessions are always staged on the first
+        List<String> volumeDirectories = fileSystemConfig.getVolumes() == null || fileSystemConfig.getVolumes().isEmpty() ?
+                List.of(fileSystemConfig.getUploadDirectory()) : fileSystemConfig.getVolumes();
+        List<FileSystemVolume> fileSystemVolumes = new ArrayList<>(volumeDirectories.size());
+        for(int i = 0; i < volumeDirectories.size(); i++)
+            fileSystemVolumes.add(openVolume(Paths.get(volumeDirectories.get(i)).toAbsolutePath().normalize(),
+                    getIndexSnapshot(fileSystemConfig, i), fileSystemConfig, fileShardingConfig));
+        volumes = List.copyOf(fileSystemVolumes);
+        volumePlacement = new FileVolumePlacement(volumes, fileSystemConfig.getPlacementPolicy(),
+                fileSystemConfig.getVolumeMinFreeSpace().toBytes());
+
+        AtomicInteger threadCount = new AtomicInteger();
+        batchUploadExecutor = Executors.newFixedThreadPool(Math.max(1, fileSystemConfig.getBatchUploadThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "file-batch-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String getName() {
+        return FileTransferMetrics.IN_SYSTEM;
+    }
+
+    @Override
+    public FileStatDTO put(String fileName, InputStream inputStream) throws IOException {
+        return put(fileName, inputStream, -1);
+    }
+
+    @Override
+    public Optional<DownloadedFileDTO> get(String fileName) throws IOException {
+        Optional<FileSystemVolume> volume = findVolume(fileName);
+        Optional<FileSystemMetadata> metadata = volume.isEmpty() ? Optional.empty() : volume.get().getIndex().get(fileName);
+        if(metadata.isEmpty())
+            return Optional.empty();
+
+        //the index is kept in memory, so a hot file is answered without any read from the disk
+        Optional<CachedFile> cachedFile = fileDownloadCache.get(CACHE_REGION, fileName, metadata.get().getChecksum());
+        if(cachedFile.isPresent())
+            return Optional.of(cachedFile.get().toDownloadedFile());
+
+        DownloadedFileDTO file = FileCompressor.toDownloadedFile(fileName,
+                metadata.get().getFileType(),
+                metadata.get().getFileByteSize(),
+                metadata.get().getLastModifiedTime(),
+                metadata.get().getChecksum(),
+                metadata.get().getContentEncoding(),
+                metadata.get().getEncodedByteSize(),
+                new FileSystemResource(volume.get().getIndex().locate(fileName)));
+
+        //files handed to sendfile already go from the page cache to the socket without a copy, holding them
+        //in memory as well would only add one
+        return Optional.of(isSendfileCandidate(file) ? file : fileDownloadCache.cache(CACHE_REGION, file));
+    }
+
+    @Override
+    public Optional<FileStatDTO> stat(String fileName) throws IOException {
+        Optional<FileSystemVolume> volume = findVolume(fileName);
+        if(volume.isEmpty())
+            return Optional.empty();
+        return volume.get().getIndex().get(fileName).map(FileSystemService::toFileStat);
+    }
+
+    @Override
+    public List<FileStatDTO> list(String prefix, String cursor, int limit) throws IOException {
+        return listFiles(prefix, cursor, limit).stream().map(FileSystemService::toFileStat).toList();
     }
 
+    //with deduplication only the name is removed, a blob left without any is pruned on the next start
+    @Override
+    public boolean delete(String fileName) throws IOException {
+        Optional<FileSystemVolume> volume = findVolume(fileName);
+        Optional<FileSystemMetadata> metadata = volume.isEmpty() ? Optional.empty() : volume.get().getIndex().get(fileName);
+        if(metadata.isEmpty())
+            return false;
+
+        removeFile(volume.get(), metadata.get());
+        return true;
+    }
+
+    //the size of a multipart file is known before it is read, so its volume is chosen knowing it
+    @Override
     public UploadedFileDTO uploadFile(MultipartFile file) {
         String fileName = StringUtils.cleanPath(file.getOriginalFilename());
-        verifyFileName(fileName);
+        FileStorageEngine.verifyFileName(fileName);
 
         try {
-            Path targetLocation = fileUploadLocation.resolve(fileName);
-            verifyIfFileExists(targetLocation);
-
-            String downloadUri = FileUtils.getFileDownloadUri(fileName);
-
-            file.transferTo(targetLocation);
-            return new UploadedFileDTO(fileName, downloadUri, file.getContentType(), FileUtils.humanReadableByteCountSI(file.getSize()));
+            return FileStorageEngine.toUploadedFile(put(fileName, file.getInputStream(), file.getSize()),
+                    FileUtils.getFileDownloadUri(getFilesPath(), fileName));
         }catch(IOException e) {
             throw new FileInternalErrorException("Fatal error. Could not upload file: " + fileName);
         }
     }
 
+    @Override
     public List<UploadedFileDTO> uploadFiles(List<MultipartFile> files) {
-        //this "for" is used as a @Transactional for upload files in system
+        //every name is verified before anything is written, so most failures cost no I/O at all
+        List<String> fileNames = new ArrayList<>(files.size());
+        Set<String> distinctFileNames = new HashSet<>();
         for(MultipartFile file : files) {
             String fileName = StringUtils.cleanPath(file.getOriginalFilename());
-            verifyFileName(fileName);
+            FileStorageEngine.verifyFileName(fileName);
+            verifyIfFileExists(fileName);
+            if(!distinctFileNames.add(fileName))
+                throw new FileUploadException("Duplicate file name: " + fileName);
+            fileNames.add(fileName);
+        }
 
-            Path targetLocation = fileUploadLocation.resolve(fileName);
-            verifyIfFileExists(targetLocation);
+        String stagingDirectory = BATCH_DIRECTORY_PREFIX + UUID.randomUUID();
+        try {
+            return toUploadedFiles(publishFiles(fileNames, stageFiles(files, fileNames, stagingDirectory)));
+        }finally {
+            deleteStagingDirectory(stagingDirectory);
         }
-        return files.stream().map(this::uploadFile).toList();
     }
 
-    public Resource downloadFile(String fileName) {
-        if(!FileUtils.isValidFileName(fileName))
-            throw new FileDownloadException("Invalid file name: " + fileName);
+    //parts streamed from the request body arrive one after the other. Each one is piped to a writer of the batch
+    //executor while it is read, so a part is hashed, encoded and written while the next ones are received, and
+    //the files are published together once the last one was staged
+    @Override
+    public List<UploadedFileDTO> uploadFiles(Iterator<MultipartFile> files) {
+        List<String> fileNames = new ArrayList<>();
+        List<Future<StagedFile>> stagedFiles = new ArrayList<>();
 
+        String stagingDirectory = BATCH_DIRECTORY_PREFIX + UUID.randomUUID();
         try {
-            Path filePath = fileUploadLocation.resolve(fileName).normalize();
-            Resource downloadedFile = new UrlResource(filePath.toUri());
+            while(files.hasNext()) {
+                MultipartFile file = files.next();
+                String fileName = StringUtils.cleanPath(file.getOriginalFilename());
+                FileStorageEngine.verifyFileName(fileName);
+                verifyIfFileExists(fileName);
+                if(fileNames.contains(fileName))
+                    throw new FileUploadException("Duplicate file name: " + fileName);
+                fileNames.add(fileName);
 
-            if(!downloadedFile.exists())
-                throw new FileNotFoundException("File not found: " + fileName);
-            return downloadedFile;
-        }catch(MalformedURLException e) {
-            throw new FileDownloadException("Fatal error. Could not download file: " + fileName);
+                //the size declared for the part, read before the part is, is the one the volume accounts for
+                long fileByteSize = file.getSize();
+                try {
+                    PipedInputStream pipedInputStream = new PipedInputStream(PIPE_BUFFER_SIZE);
+                    try(PipedOutputStream pipedOutputStream = new PipedOutputStream(pipedInputStream)) {
+                        stagedFiles.add(batchUploadExecutor.submit(() ->
+                                stageFile(pipedInputStream, fileByteSize, fileName, stagingDirectory)));
+                        file.getInputStream().transferTo(pipedOutputStream);
+                    }
+                }catch(IOException e) {
+                    //a writer that failed closed its end of the pipe, its own failure is the one reported
+                    getStagedFiles(stagedFiles, fileNames);
+                    throw new FileInternalErrorException("Fatal error. Could not upload file: " + fileName);
+                }
+            }
+
+            return toUploadedFiles(publishFiles(fileNames, getStagedFiles(stagedFiles, fileNames)));
+        }finally {
+            stagedFiles.forEach(stagedFile -> stagedFile.cancel(true));
+            deleteStagingDirectory(stagingDirectory);
         }
     }
 
-    public List<UploadedFileDTO> listAllFiles() {
+    Path getFileUploadLocation() {
+        return volumes.get(0).getLocation();
+    }
+
+    long getFileUploadFreeSpace() {
+        return volumes.get(0).getFreeSpace();
+    }
+
+    List<FileSystemVolume> getVolumes() {
+        return volumes;
+    }
+
+    @Override
+    public boolean isSendfileCandidate(DownloadedFileDTO downloadedFile) {
+        return downloadedFile.getEncodedByteSize() >= sendfileMinSize;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        batchUploadExecutor.shutdownNow();
+        for(FileSystemVolume volume : volumes)
+            volume.close();
+    }
+
+    //the in-memory indexes tell which volume holds a name, only names none of them knows are looked up on all of them
+    private Optional<FileSystemVolume> findVolume(String fileName) throws IOException {
+        for(FileSystemVolume volume : volumes) {
+            if(volume.getIndex().isIndexed(fileName) && volume.getIndex().contains(fileName))
+                return Optional.of(volume);
+        }
+        for(FileSystemVolume volume : volumes) {
+            if(volume.getIndex().contains(fileName))
+                return Optional.of(volume);
+        }
+        return Optional.empty();
+    }
+
+    //every volume is listed in name order, so they are merged the same way, none adds more than the limit
+    private Collection<FileSystemMetadata> listFiles(String prefix, String cursor, int limit) throws IOException {
+        if(volumes.size() == 1)
+            return volumes.get(0).getIndex().list(prefix, cursor).stream().limit(limit).toList();
+
+        Map<String, FileSystemMetadata> files = new TreeMap<>();
+        for(FileSystemVolume volume : volumes) {
+            volume.getIndex().list(prefix, cursor).stream().limit(limit).
+                    forEach(file -> files.putIfAbsent(file.getFileName(), file));
+        }
+        return files.values().stream().limit(limit).toList();
+    }
+
+    private FileStatDTO put(String fileName, InputStream inputStream, long fileByteSize) throws IOException {
+        verifyIfFileExists(fileName);
+        FileSystemMetadata metadata = storeFile(inputStream, fileName, fileByteSize);
+        fileTransferMetrics.recordFile(FileTransferMetrics.IN_SYSTEM, metadata.getFileByteSize());
+        return toFileStat(metadata);
+    }
+
+    private FileSystemMetadata storeFile(InputStream inputStream, String fileName, long fileByteSize) throws IOException {
+        FileSystemVolume volume = volumePlacement.place(fileName, fileByteSize);
+        Path temporaryLocation = volume.getStagingLocation().resolve(UUID.randomUUID() + ".upload");
+
         try {
-            List<Path> pathFilesList = Files.list(fileUploadLocation).toList();
-
-            List<UploadedFileDTO> fileList = new ArrayList<>();
-            for(Path pathFile : pathFilesList) {
-                fileList.add(new UploadedFileDTO(pathFile.getFileName().toString(),
-                        FileUtils.getFileDownloadUri(pathFile.getFileName().toString()),
-                        Files.probeContentType(pathFile),
-                        FileUtils.humanReadableByteCountSI(Files.size(pathFile))));
+            StoredContent content;
+            try {
+                content = writeFile(inputStream, temporaryLocation, fileName, volume.isCompressionEnabled());
+            }finally {
+                volume.endWrite(fileByteSize);
+            }
+            return publishFile(temporaryLocation, fileName, content);
+        }finally {
+            Files.deleteIfExists(temporaryLocation);
+        }
+    }
+
+    //all files of a batch are written in parallel to a staging directory, nothing is visible until every one succeeded.
+    //Each file is placed once its writer starts, so the files written at the same time spread across the volumes.
+    private List<StagedFile> stageFiles(List<MultipartFile> files, List<String> fileNames, String stagingDirectory) {
+        List<Future<StagedFile>> stagedFiles = new ArrayList<>(files.size());
+        try {
+            for(int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                String fileName = fileNames.get(i);
+                stagedFiles.add(batchUploadExecutor.submit(() ->
+                        stageFile(file.getInputStream(), file.getSize(), fileName, stagingDirectory)));
+            }
+            return getStagedFiles(stagedFiles, fileNames);
+        }finally {
+            stagedFiles.forEach(stagedFile -> stagedFile.cancel(true));
+        }
+    }
+
+    private List<StagedFile> getStagedFiles(List<Future<StagedFile>> stagedFiles, List<String> fileNames) {
+        try {
+            List<StagedFile> results = new ArrayList<>(stagedFiles.size());
+            for(int i = 0; i < stagedFiles.size(); i++) {
+                try {
+                    results.add(stagedFiles.get(i).get());
+                }catch(ExecutionException e) {
+                    throw new FileInternalErrorException("Fatal error. Could not upload file: " + fileNames.get(i));
+                }
+            }
+            return results;
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileInternalErrorException("Fatal error. Could not upload files");
+        }
+    }
+
+    //the stream is closed whatever happens, so a part piped into it does not wait for a writer that gave up
+    private StagedFile stageFile(InputStream inputStream, long fileByteSize, String fileName,
+                                 String stagingDirectory) throws IOException {
+        try(inputStream) {
+            FileSystemVolume volume = volumePlacement.place(fileName, fileByteSize);
+            try {
+                Path stagedLocation = volume.getStagingLocation().resolve(stagingDirectory).resolve(fileName);
+                //the staging location itself is never created again, a volume that is gone fails the batch
+                try {
+                    Files.createDirectory(stagedLocation.getParent());
+                }catch(FileAlreadyExistsException ignored) {
+                }
+                return new StagedFile(stagedLocation, writeFile(inputStream, stagedLocation, fileName,
+                        volume.isCompressionEnabled()));
+            }finally {
+                volume.endWrite(fileByteSize);
+            }
+        }
+    }
+
+    //each rename is atomic, a failure part way removes the files already published so the batch is all or nothing
+    private List<FileSystemMetadata> publishFiles(List<String> fileNames, List<StagedFile> stagedFiles) {
+        List<FileSystemMetadata> publishedFiles = new ArrayList<>(fileNames.size());
+        for(int i = 0; i < fileNames.size(); i++) {
+            try {
+                publishedFiles.add(publishFile(stagedFiles.get(i).location(), fileNames.get(i), stagedFiles.get(i).content()));
+            }catch(IOException | RuntimeException e) {
+                publishedFiles.forEach(this::unpublishFile);
+                if(e instanceof FileUploadException fileUploadException)
+                    throw fileUploadException;
+                throw new FileInternalErrorException("Fatal error. Could not upload file: " + fileNames.get(i));
+            }
+        }
+        return publishedFiles;
+    }
+
+    private List<UploadedFileDTO> toUploadedFiles(List<FileSystemMetadata> publishedFiles) {
+        String fileDownloadUriPrefix = FileUtils.getFileDownloadUriPrefix(getFilesPath());
+        List<UploadedFileDTO> uploadedFiles = new ArrayList<>(publishedFiles.size());
+        for(FileSystemMetadata publishedFile : publishedFiles) {
+            fileTransferMetrics.recordFile(FileTransferMetrics.IN_SYSTEM, publishedFile.getFileByteSize());
+            uploadedFiles.add(FileStorageEngine.toUploadedFile(toFileStat(publishedFile),
+                    FileUtils.toFileDownloadUri(fileDownloadUriPrefix, publishedFile.getFileName())));
+        }
+        return uploadedFiles;
+    }
+
+    private void unpublishFile(FileSystemMetadata metadata) {
+        try {
+            Optional<FileSystemVolume> volume = findVolume(metadata.getFileName());
+            if(volume.isPresent())
+                removeFile(volume.get(), metadata);
+        }catch(IOException ignored) {
+        }
+    }
+
+    private void removeFile(FileSystemVolume volume, FileSystemMetadata metadata) throws IOException {
+        FileSystemIndex index = volume.getIndex();
+        Path location = index.delete(metadata.getFileName());
+        fileDownloadCache.invalidate(CACHE_REGION, metadata.getFileName());
+        index.markModified(location.getParent());
+    }
+
+    //compressible files are encoded while they are written, the checksum and size are the ones of what was sent.
+    //The type is detected from the first bytes before anything is written, they are read only once.
+    private StoredContent writeFile(InputStream source, Path location, String fileName,
+                                    boolean compressionEnabled) throws IOException {
+        MessageDigest digest = FileUtils.newChecksumDigest();
+        String fileType;
+        String contentEncoding;
+        long fileByteSize;
+        try(PushbackInputStream peekableSource = ContentTypeUtils.toPeekableInputStream(source);
+            InputStream inputStream = new DigestInputStream(peekableSource, digest)) {
+            fileType = ContentTypeUtils.peekContentType(fileName, peekableSource);
+            contentEncoding = compressionEnabled ? fileCompressor.getEncoding(fileType) : null;
+            if(contentEncoding == null) {
+                fileByteSize = Files.copy(inputStream, location);
+            }else {
+                try(OutputStream outputStream = fileCompressor.encode(
+                        Files.newOutputStream(location, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), contentEncoding)) {
+                    fileByteSize = inputStream.transferTo(outputStream);
+                }
+                fileCompressor.recordEncoding(location, contentEncoding);
+            }
+        }
+        return new StoredContent(FileUtils.toChecksum(digest), fileByteSize, fileType, contentEncoding);
+    }
+
+    private FileSystemVolume openVolume(Path location, Path indexSnapshot, FileSystemConfig fileSystemConfig,
+                                        FileShardingConfig fileShardingConfig) {
+        Path blobLocation = fileSystemConfig.isDeduplicationEnabled() ? location.resolve(BLOB_DIRECTORY) : null;
+        Path stagingLocation = location.resolve(STAGING_DIRECTORY);
+        try {
+            Files.createDirectories(location);
+            deleteStagingDirectories(location, stagingLocation);
+            if(blobLocation != null) {
+                Files.createDirectories(blobLocation);
+                pruneUnreferencedBlobs(blobLocation);
             }
-            return fileList;
         }catch(Exception e) {
-            throw new FileInternalErrorException("Fatal error. Could not list all files");
+            throw new FileInternalErrorException("Fatal error while creating file upload directory");
+        }
+        //the encoding of a compressed file is recorded in an extended attribute, a volume without them still starts
+        boolean compressionEnabled;
+        try {
+            compressionEnabled = fileCompressor.canRecordEncoding(location);
+        }catch(IOException e) {
+            throw new FileInternalErrorException("Fatal error while creating file upload directory");
+        }
+        if(!compressionEnabled)
+            logger.warn("File compression is disabled on {}, its file system does not support extended attributes", location);
+
+        FileSystemLayout layout = fileShardingConfig.isEnabled() ?
+                new FileSystemLayout(location, fileShardingConfig.getDepth(), fileShardingConfig.getWidth()) :
+                FileSystemLayout.flat(location);
+        try {
+            return new FileSystemVolume(location, blobLocation, stagingLocation, new FileSystemIndex(layout, indexSnapshot, fileCompressor),
+                    compressionEnabled);
+        }catch(Exception e) {
+            throw new FileInternalErrorException("Fatal error while indexing file upload directory");
+        }
+    }
+
+    //each volume keeps its own snapshot, the first one at the configured path and the others next to it
+    private static Path getIndexSnapshot(FileSystemConfig fileSystemConfig, int volume) {
+        if(!StringUtils.hasText(fileSystemConfig.getIndexSnapshot()))
+            return null;
+        return Paths.get(fileSystemConfig.getIndexSnapshot() + (volume == 0 ? "" : "." + volume)).toAbsolutePath().normalize();
+    }
+
+    private FileSystemVolume getVolume(Path location) {
+        for(FileSystemVolume volume : volumes) {
+            if(volume.contains(location))
+                return volume;
+        }
+        throw new IllegalArgumentException("Not on any volume: " + location);
+    }
+
+    private void deleteStagingDirectory(String stagingDirectory) {
+        for(FileSystemVolume volume : volumes)
+            FileSystemUtils.deleteRecursively(volume.getStagingLocation().resolve(stagingDirectory).toFile());
+    }
+
+    //uploads and batches interrupted by a shutdown leave their files behind
+    private static void deleteStagingDirectories(Path location, Path stagingLocation) throws IOException {
+        FileSystemUtils.deleteRecursively(stagingLocation);
+        Files.createDirectory(stagingLocation);
+        try(DirectoryStream<Path> stagingDirectories = Files.newDirectoryStream(location, LEGACY_BATCH_DIRECTORY_PREFIX + "*")) {
+            for(Path stagingDirectory : stagingDirectories)
+                FileSystemUtils.deleteRecursively(stagingDirectory);
         }
     }
 
-    private static void verifyFileName(String fileName) {
-        if(fileName == null || !FileUtils.isValidFileName(fileName))
-            throw new FileUploadException("Invalid file name: " + fileName);
+    //the content must already be complete in a file of the upload directory file system, it is moved, never copied
+    FileSystemMetadata publishFile(Path temporaryLocation, String fileName, String checksum) throws IOException {
+        return publishFile(temporaryLocation, fileName, new StoredContent(checksum, Files.size(temporaryLocation),
+                ContentTypeUtils.detectContentType(fileName, temporaryLocation), null));
     }
 
-    private static void verifyIfFileExists(Path targetLocation) {
-        if(Files.exists(targetLocation))
-            throw new FileUploadException("File already exists: " + targetLocation.getFileName());
+    //the file is published on the volume it was written to, once no other volume holds or publishes the same name
+    private FileSystemMetadata publishFile(Path temporaryLocation, String fileName, StoredContent content) throws IOException {
+        if(!publishingFileNames.add(fileName))
+            throw new FileUploadException("File already exists: " + fileName);
+        try {
+            FileSystemVolume volume = getVolume(temporaryLocation);
+            if(volumes.size() > 1 && findVolume(fileName).filter(other -> other != volume).isPresent())
+                throw new FileUploadException("File already exists: " + fileName);
+            return publishFile(volume, temporaryLocation, fileName, content);
+        }finally {
+            publishingFileNames.remove(fileName);
+        }
+    }
+
+    private FileSystemMetadata publishFile(FileSystemVolume volume, Path temporaryLocation, String fileName,
+                                           StoredContent content) throws IOException {
+        FileSystemIndex fileSystemIndex = volume.getIndex();
+        Path targetLocation = fileSystemIndex.createLocation(fileName);
+
+        //indexed before it becomes visible, so the watcher finds it up to date instead of hashing it again
+        FileSystemMetadata metadata = new FileSystemMetadata(fileName,
+                content.fileByteSize(),
+                content.fileType(),
+                Files.getLastModifiedTime(temporaryLocation).toInstant(),
+                content.checksum(),
+                content.contentEncoding(),
+                Files.size(temporaryLocation));
+        fileSystemIndex.put(metadata);
+        fileDownloadCache.invalidate(CACHE_REGION, fileName);
+
+        try {
+            if(volume.getBlobLocation() == null)
+                Files.move(temporaryLocation, targetLocation);
+            else
+                Files.createLink(targetLocation, storeBlob(volume.getBlobLocation(), temporaryLocation, content));
+        }catch(FileAlreadyExistsException e) {
+            fileSystemIndex.remove(metadata);
+            throw new FileUploadException("File already exists: " + fileName);
+        }catch(IOException e) {
+            fileSystemIndex.remove(metadata);
+            throw e;
+        }
+        fileSystemIndex.markPublished(fileName, targetLocation.getParent());
+        return metadata;
+    }
+
+    //content is stored once under its checksum and every file name is a hard link to it,
+    //so the link count of a blob is its reference count and identical uploads share the same inode
+    private static Path storeBlob(Path blobLocation, Path temporaryLocation, StoredContent content) throws IOException {
+        //the same content stored encoded and as it is are different blobs
+        String blobName = content.contentEncoding() == null ? content.checksum() :
+                content.checksum() + "." + content.contentEncoding();
+        Path blob = blobLocation.resolve(content.checksum().substring(0, 2)).resolve(blobName);
+        Files.createDirectories(blob.getParent());
+
+        try {
+            Files.move(temporaryLocation, blob);
+        }catch(FileAlreadyExistsException e) {
+            //same content already stored, the temporary copy is discarded
+        }
+        return blob;
+    }
+
+    //blobs left with a single link lost all their names while the application was down
+    private static void pruneUnreferencedBlobs(Path blobLocation) throws IOException {
+        try(Stream<Path> blobs = Files.walk(blobLocation)) {
+            for(Path blob : (Iterable<Path>) blobs.filter(Files::isRegularFile)::iterator) {
+                if((Integer) Files.getAttribute(blob, "unix:nlink") == 1)
+                    Files.deleteIfExists(blob);
+            }
+        }catch(UnsupportedOperationException e) {
+            //link counts are not available on this file system, blobs are kept
+        }
+    }
+
+    private record StoredContent(String checksum, long fileByteSize, String fileType, String contentEncoding) {
+    }
+
+    private record StagedFile(Path location, StoredContent content) {
+    }
+
+    private static FileStatDTO toFileStat(FileSystemMetadata metadata) {
+        return new FileStatDTO(metadata.getFileName(),
+                metadata.getFileType(),
+                metadata.getFileByteSize(),
+                metadata.getLastModifiedTime(),
+                metadata.getChecksum());
+    }
+
+    void verifyIfFileExists(String fileName) {
+        try {
+            if(findVolume(fileName).isPresent())
+                throw new FileUploadException("File already exists: " + fileName);
+        }catch(IOException e) {
+            throw new FileInternalErrorException("Fatal error. Could not upload file: " + fileName);
+        }
     }
-}
\ No newline at end of file
+}
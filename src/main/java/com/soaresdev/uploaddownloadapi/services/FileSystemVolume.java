@@ -0,0 +1,88 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//one of the directories files are stored in, usually a disk of its own. A file lives on a single volume with its
+//own index and blobs there, and is always written on the volume it is published on so it is moved in with a rename.
+class FileSystemVolume implements Closeable {
+    private final Path location;
+    private final Path blobLocation;
+    private final Path stagingLocation;
+    private final FileSystemIndex index;
+    private final boolean compressionEnabled;
+    private final FileStore fileStore;
+    private final AtomicInteger inFlightWrites = new AtomicInteger();
+    private final AtomicLong inFlightBytes = new AtomicLong();
+
+    FileSystemVolume(Path location, Path blobLocation, Path stagingLocation, FileSystemIndex index,
+                     boolean compressionEnabled) throws IOException {
+        this.location = location;
+        this.blobLocation = blobLocation;
+        this.stagingLocation = stagingLocation;
+        this.index = index;
+        this.compressionEnabled = compressionEnabled;
+        this.fileStore = Files.getFileStore(location);
+    }
+
+    Path getLocation() {
+        return location;
+    }
+
+    Path getBlobLocation() {
+        return blobLocation;
+    }
+
+    //on the same file system as the volume, outside of what its index watches
+    Path getStagingLocation() {
+        return stagingLocation;
+    }
+
+    FileSystemIndex getIndex() {
+        return index;
+    }
+
+    //false on a file system that cannot record the encoding of a file, new files are then kept as they are
+    boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    boolean contains(Path path) {
+        return path.startsWith(location);
+    }
+
+    //files still being written are not taken from the usable space yet, their expected size is.
+    //A volume that cannot be queried is taken as full, it is not written to until it answers again.
+    long getFreeSpace() {
+        try {
+            return fileStore.getUsableSpace() - inFlightBytes.get();
+        }catch(IOException e) {
+            return 0;
+        }
+    }
+
+    int getInFlightWrites() {
+        return inFlightWrites.get();
+    }
+
+    //the byte size is negative when it is not known before the file was read
+    void startWrite(long fileByteSize) {
+        inFlightWrites.incrementAndGet();
+        inFlightBytes.addAndGet(Math.max(fileByteSize, 0));
+    }
+
+    void endWrite(long fileByteSize) {
+        inFlightWrites.decrementAndGet();
+        inFlightBytes.addAndGet(-Math.max(fileByteSize, 0));
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+}
@@ -0,0 +1,106 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.configs.FileTieringConfig;
+import com.soaresdev.uploaddownloadapi.exceptions.FileInternalErrorException;
+import com.soaresdev.uploaddownloadapi.repositories.FileDatabaseRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//relocates database files stored in the wrong tier for their size or last use: the ones uploaded before tiering was
+//enabled or the threshold changed, small ones nobody downloaded for cold-after and those downloaded again since.
+//Every file is moved in a transaction of its own, a run only moves up to a batch each way and the next one goes on
+//with the rest. The copies the moves leave are deleted after the grace period, downloads that read the metadata
+//before a move keep reading them meanwhile.
+@Service
+public class FileTierMover {
+    private final FileDatabaseService fileDatabaseService;
+    private final FileDatabaseRepository fileDatabaseRepository;
+    private final FileTierStore fileTierStore;
+    private final int batchSize;
+    private final Duration gracePeriod;
+    private final ScheduledExecutorService moverExecutor;
+
+    public FileTierMover(FileDatabaseService fileDatabaseService, FileDatabaseRepository fileDatabaseRepository,
+                         FileTierStore fileTierStore, FileTieringConfig fileTieringConfig) {
+        this.fileDatabaseService = fileDatabaseService;
+        this.fileDatabaseRepository = fileDatabaseRepository;
+        this.fileTierStore = fileTierStore;
+        this.batchSize = Math.max(1, fileTieringConfig.getMoverBatchSize());
+        this.gracePeriod = fileTieringConfig.getGracePeriod();
+        moverExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-tier-mover");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = fileTieringConfig.getMoverInterval().toMillis();
+        if(fileTieringConfig.isEnabled() && interval > 0)
+            moverExecutor.scheduleWithFixedDelay(this::moveFilesQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    //the number of files moved by this run. Runs never overlap, so none starts while copies wait to be deleted.
+    public synchronized int moveFiles() {
+        if(!fileTierStore.isEnabled())
+            return 0;
+
+        fileDatabaseService.saveAccessTimes();
+        if(!deleteMovedCopies())
+            return 0;
+        fileDatabaseService.deleteStaleChunks(batchSize);
+        Instant coldBefore = fileTierStore.getColdBefore();
+        try {
+            return moveFiles(fileDatabaseRepository.findIdsToTierOut(fileTierStore.getThreshold(), coldBefore, Limit.of(batchSize))) +
+                    moveFiles(fileDatabaseRepository.findIdsToTierIn(fileTierStore.getThreshold(), coldBefore, Limit.of(batchSize)));
+        }finally {
+            deleteMovedCopies();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        moverExecutor.shutdownNow();
+    }
+
+    //a file that cannot be moved is left where it is, it does not stop the others
+    private int moveFiles(List<UUID> fileIds) {
+        int movedFiles = 0;
+        for(UUID fileId : fileIds) {
+            try {
+                if(fileDatabaseService.moveToTier(fileId))
+                    movedFiles++;
+            }catch(FileInternalErrorException ignored) {
+            }
+        }
+        return movedFiles;
+    }
+
+    //false when the wait was interrupted, the copies are left to the next run, which deletes them before moving any file
+    private boolean deleteMovedCopies() {
+        if(!fileDatabaseService.hasMovedCopies())
+            return true;
+        try {
+            Thread.sleep(gracePeriod.toMillis());
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        fileDatabaseService.deleteMovedCopies();
+        return true;
+    }
+
+    //a failed run is retried by the next one, a failure must not cancel the schedule
+    private void moveFilesQuietly() {
+        try {
+            moveFiles();
+        }catch(RuntimeException ignored) {
+        }
+    }
+}
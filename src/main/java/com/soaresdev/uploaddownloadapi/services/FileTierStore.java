@@ -0,0 +1,114 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.configs.FileTieringConfig;
+import com.soaresdev.uploaddownloadapi.exceptions.FileInternalErrorException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+//the file system tier of the database backend. Files larger than the threshold, or not downloaded for cold-after,
+//keep their row in the database, their content is a file here named after the row id. Files are created and
+//deleted along with the transaction of their row: one created by a rolled back transaction is removed, one deleted
+//is only removed once committed.
+@Component
+class FileTierStore {
+    private final boolean enabled;
+    private final int threshold;
+    private final Path location;
+    private final Duration coldAfter;
+
+    FileTierStore(FileTieringConfig fileTieringConfig) {
+        enabled = fileTieringConfig.isEnabled();
+        //files up to the threshold are read into memory before it is known where they go
+        threshold = Math.toIntExact(fileTieringConfig.getThreshold().toBytes());
+        location = Paths.get(fileTieringConfig.getDirectory()).toAbsolutePath().normalize();
+        coldAfter = fileTieringConfig.getColdAfter();
+        if(!enabled)
+            return;
+
+        try {
+            Files.createDirectories(location);
+        }catch(Exception e) {
+            throw new FileInternalErrorException("Fatal error while creating file tier directory");
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    int getThreshold() {
+        return threshold;
+    }
+
+    boolean belongsToTier(long fileByteSize) {
+        return enabled && fileByteSize > threshold;
+    }
+
+    //a file last used before getColdBefore goes to the tier whatever its size, one without a time never does
+    boolean belongsToTier(long fileByteSize, Instant lastUsedTime) {
+        return belongsToTier(fileByteSize) || enabled && lastUsedTime != null && lastUsedTime.isBefore(getColdBefore());
+    }
+
+    //the epoch when cold-after is 0, no file is that old
+    Instant getColdBefore() {
+        return coldAfter.isZero() ? Instant.EPOCH : Instant.now().minus(coldAfter);
+    }
+
+    //the location is relative, so the directory can be moved along with the database
+    String newLocation(UUID fileId) {
+        String name = fileId.toString();
+        return name.substring(0, 2) + "/" + name;
+    }
+
+    Path resolve(String tierLocation) {
+        return location.resolve(tierLocation);
+    }
+
+    OutputStream create(String tierLocation) throws IOException {
+        Path path = resolve(tierLocation);
+        Files.createDirectories(path.getParent());
+        OutputStream outputStream = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK, path);
+        return outputStream;
+    }
+
+    void delete(String tierLocation) throws IOException {
+        Path path = resolve(tierLocation);
+        if(!afterCompletion(TransactionSynchronization.STATUS_COMMITTED, path))
+            Files.deleteIfExists(path);
+    }
+
+    //at once, whatever the transaction: for copies no row points to anymore
+    void deleteNow(String tierLocation) throws IOException {
+        Files.deleteIfExists(resolve(tierLocation));
+    }
+
+    //false when there is no transaction to wait for
+    private static boolean afterCompletion(int status, Path path) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive())
+            return false;
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int completionStatus) {
+                if(completionStatus != status)
+                    return;
+                try {
+                    Files.deleteIfExists(path);
+                }catch(IOException ignored) {
+                }
+            }
+        });
+        return true;
+    }
+}
@@ -0,0 +1,330 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.utils.DownloadUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//every upload and download is a transfer, timed from the request until its last byte was stored or written and
+//tagged by backend and operation. Throughput is the rate of file.transfer.bytes across transfers and
+//file.transfer.throughput for each one, so a slow path shows up both in the totals and in the distribution.
+@Component
+public class FileTransferMetrics {
+    public static final String IN_SYSTEM = "in-system";
+    public static final String IN_DATABASE = "in-database";
+    public static final String UPLOAD = "upload";
+    public static final String BATCH_UPLOAD = "batch-upload";
+    public static final String ARCHIVE_UPLOAD = "archive-upload";
+    public static final String PART_UPLOAD = "part-upload";
+    public static final String DOWNLOAD = "download";
+    public static final String ARCHIVE_DOWNLOAD = "archive-download";
+    private static final String UNKNOWN_BACKEND = "none";
+    private static final String TRANSFER_ATTRIBUTE = FileTransferMetrics.class.getName() + ".transfer";
+    private static final String API_PATH = "/api/v1/";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<List<String>, AtomicInteger> activeTransfers = new ConcurrentHashMap<>();
+
+    public FileTransferMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    //the transfer is bound to the current request, so the files the services store while it runs are counted in it
+    public Transfer startTransfer(String backend, String operation) {
+        AtomicInteger active = activeTransfers.computeIfAbsent(List.of(backend, operation), key -> {
+            AtomicInteger count = new AtomicInteger();
+            Gauge.builder("file.transfer.active", count, AtomicInteger::get).
+                    description("Transfers in progress").
+                    tags("backend", backend, "operation", operation).
+                    register(meterRegistry);
+            return count;
+        });
+        active.incrementAndGet();
+
+        Transfer transfer = new Transfer(backend, operation, active);
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if(requestAttributes != null)
+            requestAttributes.setAttribute(TRANSFER_ATTRIBUTE, transfer, RequestAttributes.SCOPE_REQUEST);
+        return transfer;
+    }
+
+    public <T> T record(String backend, String operation, Supplier<T> transfer) {
+        try(Transfer currentTransfer = startTransfer(backend, operation)) {
+            T result = transfer.get();
+            currentTransfer.succeeded();
+            return result;
+        }
+    }
+
+    //download bodies are written once the controller returned, so the transfer ends with the request and its
+    //outcome is the response status. Files handed to sendfile are written by Tomcat after that, their bytes are
+    //counted but the time the kernel takes to send them is not.
+    public Transfer startRequestTransfer(String backend, String operation) {
+        Transfer transfer = startTransfer(backend, operation);
+        if(!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes requestAttributes))
+            return transfer;
+
+        requestAttributes.registerDestructionCallback(TRANSFER_ATTRIBUTE, () -> {
+            long sendfileByteSize = DownloadUtils.getSendfileByteSize(requestAttributes.getRequest());
+            if(sendfileByteSize > 0)
+                transfer.addBytes(sendfileByteSize);
+
+            HttpServletResponse response = requestAttributes.getResponse();
+            if(response == null || response.getStatus() < HttpStatus.BAD_REQUEST.value())
+                transfer.succeeded();
+            transfer.close();
+        }, RequestAttributes.SCOPE_REQUEST);
+        return transfer;
+    }
+
+    //called by the services for every file they stored, on the request thread or on one working for it
+    public void recordFile(String backend, long fileByteSize) {
+        Transfer transfer = getCurrentTransfer();
+        String operation = transfer == null ? UPLOAD : transfer.operation;
+        getSizeSummary(backend, operation).record(fileByteSize);
+        getByteCounter(backend, operation).increment(fileByteSize);
+        if(transfer != null)
+            transfer.bytes.add(fileByteSize);
+    }
+
+    //only the bytes read are counted, a range skips the rest of the file without reading it
+    public DownloadedFileDTO meter(Transfer transfer, DownloadedFileDTO file) {
+        getSizeSummary(transfer.backend, transfer.operation).record(file.getFileByteSize());
+        Resource resource = new MeteredResource(file.getResource(), transfer);
+        Resource encodedResource = file.getEncodedResource() == null ? null :
+                file.getEncodedResource() == file.getResource() ? resource :
+                new MeteredResource(file.getEncodedResource(), transfer);
+
+        return new DownloadedFileDTO(file.getFileName(), file.getFileType(), file.getFileByteSize(),
+                file.getLastModifiedTime(), file.getContentHash(), resource, file.getContentEncoding(),
+                file.getEncodedByteSize(), encodedResource);
+    }
+
+    public List<DownloadedFileDTO> meter(Transfer transfer, List<DownloadedFileDTO> files) {
+        return files.stream().map(file -> meter(transfer, file)).toList();
+    }
+
+    public InputStream meter(Transfer transfer, InputStream inputStream) {
+        return new MeteredInputStream(inputStream, transfer);
+    }
+
+    //the backend is the segment of the path after the API version, errors of other paths are not about files
+    public void recordError(Exception e, HttpStatus status, HttpServletRequest request) {
+        String path = request.getRequestURI();
+        String backend = UNKNOWN_BACKEND;
+        if(path.startsWith(API_PATH)) {
+            int end = path.indexOf('/', API_PATH.length());
+            String segment = path.substring(API_PATH.length(), end < 0 ? path.length() : end);
+            if(segment.equals(IN_SYSTEM) || segment.equals(IN_DATABASE))
+                backend = segment;
+        }
+
+        Counter.builder("file.errors").
+                description("Errors answered by the file endpoints").
+                tags("backend", backend, "error", e.getClass().getSimpleName(), "status", String.valueOf(status.value())).
+                register(meterRegistry).
+                increment();
+    }
+
+    private Transfer getCurrentTransfer() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        return requestAttributes == null ? null :
+                (Transfer) requestAttributes.getAttribute(TRANSFER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    private DistributionSummary getSizeSummary(String backend, String operation) {
+        return DistributionSummary.builder("file.transfer.size").
+                description("Size of the files transferred").
+                baseUnit(BaseUnits.BYTES).
+                tags("backend", backend, "operation", operation).
+                publishPercentileHistogram().
+                minimumExpectedValue(1.0).
+                maximumExpectedValue(16.0 * 1024 * 1024 * 1024).
+                register(meterRegistry);
+    }
+
+    private Counter getByteCounter(String backend, String operation) {
+        return Counter.builder("file.transfer.bytes").
+                description("Bytes transferred, their rate is the throughput").
+                baseUnit(BaseUnits.BYTES).
+                tags("backend", backend, "operation", operation).
+                register(meterRegistry);
+    }
+
+    public class Transfer implements AutoCloseable {
+        private final String backend;
+        private final String operation;
+        private final AtomicInteger active;
+        private final long startTime = System.nanoTime();
+        private final LongAdder bytes = new LongAdder();
+        private final Counter byteCounter;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean succeeded;
+        private volatile boolean failed;
+
+        private Transfer(String backend, String operation, AtomicInteger active) {
+            this.backend = backend;
+            this.operation = operation;
+            this.active = active;
+            this.byteCounter = getByteCounter(backend, operation);
+        }
+
+        void addBytes(long count) {
+            bytes.add(count);
+            byteCounter.increment(count);
+        }
+
+        public void succeeded() {
+            succeeded = true;
+        }
+
+        void failed() {
+            failed = true;
+        }
+
+        @Override
+        public void close() {
+            if(!closed.compareAndSet(false, true))
+                return;
+            active.decrementAndGet();
+            RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+            if(requestAttributes != null && requestAttributes.getAttribute(TRANSFER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) == this)
+                requestAttributes.removeAttribute(TRANSFER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+
+            long duration = System.nanoTime() - startTime;
+            Timer.builder("file.transfer.duration").
+                    description("Time from the request until the last byte was stored or written").
+                    tags("backend", backend, "operation", operation, "outcome", succeeded && !failed ? "success" : "error").
+                    publishPercentileHistogram().
+                    minimumExpectedValue(Duration.ofMillis(1)).
+                    maximumExpectedValue(Duration.ofMinutes(30)).
+                    register(meterRegistry).
+                    record(duration, TimeUnit.NANOSECONDS);
+
+            long byteCount = bytes.sum();
+            if(byteCount > 0 && duration > 0) {
+                DistributionSummary.builder("file.transfer.throughput").
+                        description("Bytes per second of each transfer").
+                        baseUnit("bytes.per.second").
+                        tags("backend", backend, "operation", operation).
+                        publishPercentileHistogram().
+                        minimumExpectedValue(1024.0).
+                        maximumExpectedValue(16.0 * 1024 * 1024 * 1024).
+                        register(meterRegistry).
+                        record(byteCount * 1e9 / duration);
+            }
+        }
+    }
+
+    private static class MeteredResource extends AbstractResource {
+        private final Resource resource;
+        private final Transfer transfer;
+
+        MeteredResource(Resource resource, Transfer transfer) {
+            this.resource = resource;
+            this.transfer = transfer;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new MeteredInputStream(resource.getInputStream(), transfer);
+        }
+
+        @Override
+        public boolean exists() {
+            return resource.exists();
+        }
+
+        //sendfile needs the file itself, its bytes are counted from the request once Tomcat was handed them
+        @Override
+        public boolean isFile() {
+            return resource.isFile();
+        }
+
+        @Override
+        public File getFile() throws IOException {
+            return resource.getFile();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return resource.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return resource.lastModified();
+        }
+
+        @Override
+        public String getFilename() {
+            return resource.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return resource.getDescription();
+        }
+    }
+
+    private static class MeteredInputStream extends FilterInputStream {
+        private final Transfer transfer;
+
+        MeteredInputStream(InputStream inputStream, Transfer transfer) {
+            super(inputStream);
+            this.transfer = transfer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = super.read();
+                if(b != -1)
+                    transfer.addBytes(1);
+                return b;
+            }catch(IOException e) {
+                transfer.failed();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int count = in.read(b, off, len);
+                if(count > 0)
+                    transfer.addBytes(count);
+                return count;
+            }catch(IOException e) {
+                transfer.failed();
+                throw e;
+            }
+        }
+    }
+}
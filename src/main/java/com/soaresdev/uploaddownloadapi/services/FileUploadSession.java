@@ -0,0 +1,106 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+class FileUploadSession implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final UUID id;
+    private final String fileName;
+    private final long fileByteSize;
+    private final long partSize;
+    private final BitSet receivedParts = new BitSet();
+    //parts are written under the read lock so they run in parallel, completion takes the write lock
+    private transient ReadWriteLock lock = new ReentrantReadWriteLock();
+    private transient boolean closed;
+
+    FileUploadSession(UUID id, String fileName, long fileByteSize, long partSize) {
+        this.id = id;
+        this.fileName = fileName;
+        this.fileByteSize = fileByteSize;
+        this.partSize = partSize;
+    }
+
+    UUID getId() {
+        return id;
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    long getFileByteSize() {
+        return fileByteSize;
+    }
+
+    long getPartSize() {
+        return partSize;
+    }
+
+    int getPartCount() {
+        return Math.toIntExact((fileByteSize + partSize - 1) / partSize);
+    }
+
+    long getPartOffset(int partNumber) {
+        return (partNumber - 1) * partSize;
+    }
+
+    long getPartLength(int partNumber) {
+        return Math.min(partSize, fileByteSize - getPartOffset(partNumber));
+    }
+
+    ReadWriteLock getLock() {
+        return lock;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    synchronized void markReceived(int partNumber) {
+        receivedParts.set(partNumber);
+    }
+
+    synchronized boolean markMissing(int partNumber) {
+        boolean received = receivedParts.get(partNumber);
+        receivedParts.clear(partNumber);
+        return received;
+    }
+
+    synchronized List<Integer> getReceivedParts() {
+        return receivedParts.stream().boxed().toList();
+    }
+
+    synchronized int getMissingPartCount() {
+        return getPartCount() - receivedParts.cardinality();
+    }
+
+    synchronized long getMissingByteSize() {
+        return fileByteSize - receivedParts.stream().mapToLong(this::getPartLength).sum();
+    }
+
+    @Serial
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        lock = new ReentrantReadWriteLock();
+    }
+}
@@ -0,0 +1,315 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.configs.FileMultipartConfig;
+import com.soaresdev.uploaddownloadapi.configs.FileUploadSessionConfig;
+import com.soaresdev.uploaddownloadapi.dtos.UploadSessionDTO;
+import com.soaresdev.uploaddownloadapi.dtos.UploadSessionRequestDTO;
+import com.soaresdev.uploaddownloadapi.dtos.UploadedFileDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.FileInternalErrorException;
+import com.soaresdev.uploaddownloadapi.exceptions.FileNotFoundException;
+import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import com.soaresdev.uploaddownloadapi.projections.FileSystemMetadata;
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+@Service
+public class FileUploadSessionService {
+    private static final String SESSION_DIRECTORY = ".sessions";
+    private static final String DATA_EXTENSION = ".data";
+    private static final String STATE_EXTENSION = ".session";
+
+    private final FileSystemService fileSystemService;
+    private final Path sessionLocation;
+    private final long defaultPartSize;
+    private final int maxPartCount;
+    private final int maxOpenSessions;
+    private final long maxFileByteSize;
+    private final Duration expiration;
+    private final Map<UUID, FileUploadSession> sessions = new ConcurrentHashMap<>();
+    //held while sessions are counted and a new one takes its place, so concurrent ones never go past the limits
+    private final Object sessionsLock = new Object();
+
+    public FileUploadSessionService(FileSystemService fileSystemService, FileUploadSessionConfig fileUploadSessionConfig,
+                                    FileMultipartConfig fileMultipartConfig) {
+        this.fileSystemService = fileSystemService;
+        //inside the upload directory, so completing a session is a rename on the same file system
+        this.sessionLocation = fileSystemService.getFileUploadLocation().resolve(SESSION_DIRECTORY);
+        this.defaultPartSize = fileUploadSessionConfig.getDefaultPartSize().toBytes();
+        this.maxPartCount = fileUploadSessionConfig.getMaxPartCount();
+        this.maxOpenSessions = fileUploadSessionConfig.getMaxOpenSessions();
+        this.maxFileByteSize = fileMultipartConfig.getMaxFileSize().toBytes();
+        this.expiration = fileUploadSessionConfig.getExpiration();
+    }
+
+    public UploadSessionDTO initiateSession(UploadSessionRequestDTO request) {
+        String fileName = request.getFileName() == null ? null : StringUtils.cleanPath(request.getFileName());
+        FileStorageEngine.verifyFileName(fileName);
+        fileSystemService.verifyIfFileExists(fileName);
+
+        if(request.getFileByteSize() == null || request.getFileByteSize() < 0)
+            throw new FileUploadException("Invalid file size: " + request.getFileByteSize());
+        //a session is only another way to send a file, it has the same limit as a single request
+        if(request.getFileByteSize() > maxFileByteSize)
+            throw new FileUploadException("Maximum upload size exceeded: " + fileName);
+        long partSize = request.getPartSize() == null ? defaultPartSize : request.getPartSize();
+        if(partSize < 1)
+            throw new FileUploadException("Invalid part size: " + partSize);
+        long partCount = (request.getFileByteSize() + partSize - 1) / partSize;
+        if(partCount > maxPartCount)
+            throw new FileUploadException("Too many parts: " + partCount + ", the maximum is " + maxPartCount);
+
+        FileUploadSession session = new FileUploadSession(UUID.randomUUID(), fileName, request.getFileByteSize(), partSize);
+        try {
+            Files.createDirectories(sessionLocation);
+            synchronized(sessionsLock) {
+                loadOpenSessions();
+                if(sessions.size() >= maxOpenSessions)
+                    throw new FileUploadException("Too many open upload sessions, the maximum is " + maxOpenSessions);
+                //the data file is sparse, parts only take their space as they arrive, so the space every open
+                //session still expects is kept for it
+                long reservedByteSize = sessions.values().stream().mapToLong(FileUploadSession::getMissingByteSize).sum();
+                if(session.getFileByteSize() > fileSystemService.getFileUploadFreeSpace() - reservedByteSize)
+                    throw new FileUploadException("Not enough space for file: " + fileName);
+
+                //sized once, every part is then written straight to its own offset
+                try(RandomAccessFile dataFile = new RandomAccessFile(getDataLocation(session.getId()).toFile(), "rw")) {
+                    dataFile.setLength(session.getFileByteSize());
+                }
+                saveSession(session);
+                sessions.put(session.getId(), session);
+            }
+        }catch(IOException e) {
+            deleteSessionFiles(session.getId());
+            throw new FileInternalErrorException("Fatal error. Could not create upload session for file: " + fileName);
+        }
+
+        return toUploadSessionDTO(session);
+    }
+
+    public UploadSessionDTO getSessionStatus(UUID sessionId) {
+        return toUploadSessionDTO(getSession(sessionId));
+    }
+
+    public void uploadPart(UUID sessionId, int partNumber, InputStream inputStream) {
+        FileUploadSession session = getSession(sessionId);
+        if(partNumber < 1 || partNumber > session.getPartCount())
+            throw new FileUploadException("Invalid part number: " + partNumber);
+
+        Lock lock = session.getLock().readLock();
+        lock.lock();
+        try {
+            verifyIfSessionIsOpen(session);
+            //a part sent again overwrites the previous bytes, it only counts as received if it is written completely
+            if(session.markMissing(partNumber))
+                saveSession(session);
+
+            long partLength = session.getPartLength(partNumber);
+            try(FileChannel channel = FileChannel.open(getDataLocation(sessionId), StandardOpenOption.WRITE)) {
+                long written = writePart(channel, inputStream, session.getPartOffset(partNumber), partLength);
+                if(written != partLength || inputStream.read() != -1)
+                    throw new FileUploadException("Invalid size of part " + partNumber + ", expected " + partLength + " bytes");
+
+                //only recorded once it is durable, so a received part is never lost by a crash
+                channel.force(false);
+            }
+            session.markReceived(partNumber);
+            saveSession(session);
+        }catch(IOException e) {
+            throw new FileInternalErrorException("Fatal error. Could not upload part " + partNumber + " of session: " + sessionId);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    public UploadedFileDTO completeSession(UUID sessionId) {
+        FileUploadSession session = getSession(sessionId);
+
+        Lock lock = session.getLock().writeLock();
+        lock.lock();
+        try {
+            verifyIfSessionIsOpen(session);
+            if(session.getMissingPartCount() > 0)
+                throw new FileUploadException("Upload session " + sessionId + " is missing " + session.getMissingPartCount() + " parts");
+            fileSystemService.verifyIfFileExists(session.getFileName());
+
+            Path dataLocation = getDataLocation(sessionId);
+            FileSystemMetadata metadata;
+            try {
+                metadata = fileSystemService.publishFile(dataLocation, session.getFileName(), FileUtils.checksumOf(dataLocation));
+            }finally {
+                //the data is gone once published or moved into the blob store, nothing is left to resume
+                if(Files.notExists(dataLocation))
+                    closeSession(session);
+            }
+
+            return new UploadedFileDTO(session.getFileName(),
+                    FileUtils.getFileDownloadUri(fileSystemService.getFilesPath(), session.getFileName()),
+                    metadata.getFileType(),
+                    FileUtils.humanReadableByteCountSI(metadata.getFileByteSize()));
+        }catch(IOException e) {
+            throw new FileInternalErrorException("Fatal error. Could not complete upload session: " + sessionId);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    public void abortSession(UUID sessionId) {
+        FileUploadSession session = getSession(sessionId);
+
+        Lock lock = session.getLock().writeLock();
+        lock.lock();
+        try {
+            verifyIfSessionIsOpen(session);
+            closeSession(session);
+        }catch(IOException e) {
+            throw new FileInternalErrorException("Fatal error. Could not abort upload session: " + sessionId);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    private FileUploadSession getSession(UUID sessionId) {
+        //sessions survive restarts, the ones not in memory yet are read back from their state file
+        FileUploadSession session = sessions.computeIfAbsent(sessionId, this::loadSession);
+        if(session == null)
+            throw new FileNotFoundException("Upload session not found: " + sessionId);
+        return session;
+    }
+
+    private FileUploadSession loadSession(UUID sessionId) {
+        Path stateLocation = getStateLocation(sessionId);
+        if(!Files.isRegularFile(stateLocation) || !Files.isRegularFile(getDataLocation(sessionId)))
+            return null;
+
+        try(ObjectInputStream inputStream = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(stateLocation)))) {
+            return (FileUploadSession) inputStream.readObject();
+        }catch(IOException | ClassNotFoundException | ClassCastException e) {
+            throw new FileInternalErrorException("Fatal error. Could not read upload session: " + sessionId);
+        }
+    }
+
+    private void saveSession(FileUploadSession session) throws IOException {
+        Path stateLocation = getStateLocation(session.getId());
+        Path temporaryLocation = stateLocation.resolveSibling(stateLocation.getFileName() + ".tmp");
+
+        //parts finish concurrently, the state is saved one at a time so an older state never replaces a newer one
+        synchronized(session) {
+            try(ObjectOutputStream outputStream = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryLocation)))) {
+                outputStream.writeObject(session);
+            }
+            Files.move(temporaryLocation, stateLocation, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void closeSession(FileUploadSession session) throws IOException {
+        session.close();
+        sessions.remove(session.getId());
+        deleteSessionFiles(session.getId());
+    }
+
+    //the state file is rewritten with every part, so its modified time is the last activity of the session.
+    //Expired sessions are deleted, the others are read back so the ones left by a restart count as well,
+    //and the ones whose files are gone are over.
+    private void loadOpenSessions() throws IOException {
+        Instant expiredBefore = Instant.now().minus(expiration);
+        Set<UUID> openSessionIds = new HashSet<>();
+
+        try(DirectoryStream<Path> stateFiles = Files.newDirectoryStream(sessionLocation, "*" + STATE_EXTENSION)) {
+            for(Path stateFile : stateFiles) {
+                String fileName = stateFile.getFileName().toString();
+                UUID sessionId;
+                try {
+                    sessionId = UUID.fromString(fileName.substring(0, fileName.length() - STATE_EXTENSION.length()));
+                }catch(IllegalArgumentException e) {
+                    continue;
+                }
+
+                if(Files.getLastModifiedTime(stateFile).toInstant().isBefore(expiredBefore)) {
+                    FileUploadSession session = sessions.remove(sessionId);
+                    if(session != null)
+                        session.close();
+                    deleteSessionFiles(sessionId);
+                }else {
+                    try {
+                        if(sessions.computeIfAbsent(sessionId, this::loadSession) != null)
+                            openSessionIds.add(sessionId);
+                    }catch(FileInternalErrorException ignored) {
+                    }
+                }
+            }
+        }
+
+        sessions.values().removeIf(session -> {
+            if(openSessionIds.contains(session.getId()))
+                return false;
+            session.close();
+            return true;
+        });
+    }
+
+    private void deleteSessionFiles(UUID sessionId) {
+        try {
+            Files.deleteIfExists(getDataLocation(sessionId));
+            Files.deleteIfExists(getStateLocation(sessionId));
+        }catch(IOException ignored) {
+        }
+    }
+
+    private static long writePart(FileChannel channel, InputStream inputStream, long offset, long length) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(inputStream);
+        long written = 0;
+        while(written < length) {
+            long transferred = channel.transferFrom(source, offset + written, length - written);
+            if(transferred <= 0)
+                break;
+            written += transferred;
+        }
+        return written;
+    }
+
+    private static void verifyIfSessionIsOpen(FileUploadSession session) {
+        if(session.isClosed())
+            throw new FileNotFoundException("Upload session not found: " + session.getId());
+    }
+
+    private Path getDataLocation(UUID sessionId) {
+        return sessionLocation.resolve(sessionId + DATA_EXTENSION);
+    }
+
+    private Path getStateLocation(UUID sessionId) {
+        return sessionLocation.resolve(sessionId + STATE_EXTENSION);
+    }
+
+    private static UploadSessionDTO toUploadSessionDTO(FileUploadSession session) {
+        return new UploadSessionDTO(session.getId(),
+                session.getFileName(),
+                session.getFileByteSize(),
+                session.getPartSize(),
+                session.getPartCount(),
+                session.getReceivedParts());
+    }
+}
@@ -0,0 +1,49 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.configs.FileSystemConfig;
+import com.soaresdev.uploaddownloadapi.exceptions.FileInternalErrorException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//picks the volume a new file is written to. Volumes that would be left with less than the minimum free space are
+//skipped, so a full disk only stops taking new files while the others keep accepting them.
+class FileVolumePlacement {
+    private final List<FileSystemVolume> volumes;
+    private final FileSystemConfig.PlacementPolicy policy;
+    private final long minFreeSpace;
+    private final AtomicInteger nextVolume = new AtomicInteger();
+
+    FileVolumePlacement(List<FileSystemVolume> volumes, FileSystemConfig.PlacementPolicy policy, long minFreeSpace) {
+        this.volumes = volumes;
+        this.policy = policy;
+        this.minFreeSpace = minFreeSpace;
+    }
+
+    //the file counts as written to the volume from here, the caller ends the write once it is stored.
+    //The byte size is negative when it is not known before the file was read.
+    synchronized FileSystemVolume place(String fileName, long fileByteSize) {
+        FileSystemVolume volume = volumes.size() == 1 ? volumes.get(0) : choose(fileName, Math.max(fileByteSize, 0));
+        volume.startWrite(fileByteSize);
+        return volume;
+    }
+
+    private FileSystemVolume choose(String fileName, long fileByteSize) {
+        List<FileSystemVolume> candidates = volumes.stream().
+                filter(volume -> volume.getFreeSpace() - fileByteSize >= minFreeSpace).
+                toList();
+        if(candidates.isEmpty())
+            throw new FileInternalErrorException("Fatal error. No volume has space left for file: " + fileName);
+
+        return switch(policy) {
+            case FREE_SPACE -> candidates.stream().
+                    max(Comparator.comparingLong(FileSystemVolume::getFreeSpace)).
+                    orElseThrow();
+            case ROUND_ROBIN -> candidates.get(Math.floorMod(nextVolume.getAndIncrement(), candidates.size()));
+            case LEAST_IN_FLIGHT -> candidates.stream().
+                    min(Comparator.comparingInt(FileSystemVolume::getInFlightWrites).
+                            thenComparing(Comparator.comparingLong(FileSystemVolume::getFreeSpace).reversed())).
+                    orElseThrow();
+        };
+    }
+}
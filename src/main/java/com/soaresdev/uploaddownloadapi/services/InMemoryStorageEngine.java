@@ -0,0 +1,84 @@
+package com.soaresdev.uploaddownloadapi.services;
+
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.dtos.FileStatDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import com.soaresdev.uploaddownloadapi.utils.ContentTypeUtils;
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import org.springframework.core.io.ByteArrayResource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+//keeps every file on the heap, for tests and for benchmarks that measure the engines without any storage cost.
+//It is not a bean, nothing is served from it.
+public class InMemoryStorageEngine implements FileStorageEngine {
+    public static final String NAME = "in-memory";
+
+    private final ConcurrentNavigableMap<String, StoredFile> files = new ConcurrentSkipListMap<>();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public FileStatDTO put(String fileName, InputStream inputStream) throws IOException {
+        if(files.containsKey(fileName))
+            throw new FileUploadException("File already exists: " + fileName);
+
+        byte[] data;
+        try(inputStream) {
+            data = inputStream.readAllBytes();
+        }
+        MessageDigest digest = FileUtils.newChecksumDigest();
+        digest.update(data);
+        FileStatDTO stat = new FileStatDTO(fileName,
+                ContentTypeUtils.detectContentType(fileName, data, Math.min(data.length, ContentTypeUtils.SNIFF_LENGTH)),
+                data.length,
+                Instant.now(),
+                FileUtils.toChecksum(digest));
+
+        if(files.putIfAbsent(fileName, new StoredFile(stat, data)) != null)
+            throw new FileUploadException("File already exists: " + fileName);
+        return stat;
+    }
+
+    @Override
+    public Optional<DownloadedFileDTO> get(String fileName) {
+        return Optional.ofNullable(files.get(fileName)).map(file -> new DownloadedFileDTO(fileName,
+                file.stat().getFileType(),
+                file.stat().getFileByteSize(),
+                file.stat().getLastModifiedTime(),
+                file.stat().getContentHash(),
+                new ByteArrayResource(file.data())));
+    }
+
+    @Override
+    public Optional<FileStatDTO> stat(String fileName) {
+        return Optional.ofNullable(files.get(fileName)).map(StoredFile::stat);
+    }
+
+    @Override
+    public List<FileStatDTO> list(String prefix, String cursor, int limit) {
+        NavigableMap<String, StoredFile> listedFiles = prefix == null ? files :
+                files.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if(cursor != null)
+            listedFiles = listedFiles.tailMap(cursor, false);
+        return listedFiles.values().stream().limit(limit).map(StoredFile::stat).toList();
+    }
+
+    @Override
+    public boolean delete(String fileName) {
+        return files.remove(fileName) != null;
+    }
+
+    private record StoredFile(FileStatDTO stat, byte[] data) {
+    }
+}
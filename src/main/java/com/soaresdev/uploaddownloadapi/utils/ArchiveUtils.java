@@ -0,0 +1,55 @@
+package com.soaresdev.uploaddownloadapi.utils;
+
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ArchiveUtils {
+    public static final String ARCHIVE_FILE_NAME = "files.zip";
+    private static final String APPLICATION_ZIP_VALUE = "application/zip";
+    private static final List<MediaType> COMPRESSED_TYPES = MediaType.parseMediaTypes(List.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp", "audio/*", "video/*",
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2", "application/x-xz",
+            "application/x-7z-compressed", "application/vnd.rar", "application/x-rar-compressed"));
+
+    private ArchiveUtils() {
+    }
+
+    //the archive is built while it is sent, each entry streamed straight from storage, so nothing is held but the
+    //copy and deflate buffers. Anything that can fail is checked before, once the first bytes are out a failure
+    //can only abort the connection.
+    public static void writeZipResponse(List<DownloadedFileDTO> files, HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_ZIP_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + ARCHIVE_FILE_NAME);
+
+        try(ZipOutputStream zipOutputStream = new ZipOutputStream(response.getOutputStream())) {
+            for(DownloadedFileDTO file : files) {
+                //STORED entries need their CRC before the data, which would mean reading every file twice.
+                //Deflating already compressed content at level 0 only frames it into stored blocks instead.
+                zipOutputStream.setLevel(isCompressed(file) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+
+                ZipEntry entry = new ZipEntry(file.getFileName());
+                if(file.getLastModifiedTime() != null)
+                    entry.setLastModifiedTime(FileTime.from(file.getLastModifiedTime()));
+                zipOutputStream.putNextEntry(entry);
+                try(InputStream inputStream = file.getResource().getInputStream()) {
+                    inputStream.transferTo(zipOutputStream);
+                }
+                zipOutputStream.closeEntry();
+            }
+        }
+    }
+
+    private static boolean isCompressed(DownloadedFileDTO file) {
+        MediaType fileType = DownloadUtils.getContentType(file);
+        return COMPRESSED_TYPES.stream().anyMatch(type -> type.includes(fileType));
+    }
+}
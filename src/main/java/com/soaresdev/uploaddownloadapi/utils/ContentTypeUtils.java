@@ -0,0 +1,150 @@
+package com.soaresdev.uploaddownloadapi.utils;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
+
+//the type of a file is detected once, when it is stored, from its first bytes and its name. A known signature
+//wins over the extension, except for container formats the extension tells apart (a docx is a zip, an svg is xml).
+//Without a signature the extension decides, and without a known extension the content is either text or binary.
+public class ContentTypeUtils {
+    //enough for every signature below and for telling text from binary
+    public static final int SNIFF_LENGTH = 512;
+
+    private static final List<Signature> SIGNATURES = List.of(
+            new Signature("image/png", 0, bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)),
+            new Signature("image/jpeg", 0, bytes(0xFF, 0xD8, 0xFF)),
+            new Signature("image/gif", 0, "GIF87a"),
+            new Signature("image/gif", 0, "GIF89a"),
+            new Signature("image/webp", 0, "RIFF", 8, "WEBP"),
+            new Signature("image/tiff", 0, bytes('I', 'I', 0x2A, 0x00)),
+            new Signature("image/tiff", 0, bytes('M', 'M', 0x00, 0x2A)),
+            new Signature("audio/wav", 0, "RIFF", 8, "WAVE"),
+            new Signature("video/x-msvideo", 0, "RIFF", 8, "AVI "),
+            new Signature("audio/mpeg", 0, "ID3"),
+            new Signature("audio/flac", 0, "fLaC"),
+            new Signature("application/ogg", 0, "OggS", type -> "ogg".equals(type.getSubtype())),
+            new Signature("video/mp4", 4, "ftyp", type -> "audio".equals(type.getType()) ||
+                    "video".equals(type.getType()) || "image".equals(type.getType())),
+            new Signature("application/pdf", 0, "%PDF-"),
+            new Signature("application/postscript", 0, "%!PS"),
+            new Signature("application/zip", 0, bytes('P', 'K', 0x03, 0x04), type -> "application".equals(type.getType())),
+            new Signature("application/zip", 0, bytes('P', 'K', 0x05, 0x06), type -> "application".equals(type.getType())),
+            new Signature("application/gzip", 0, bytes(0x1F, 0x8B)),
+            new Signature("application/x-bzip2", 0, "BZh"),
+            new Signature("application/x-xz", 0, bytes(0xFD, '7', 'z', 'X', 'Z', 0x00)),
+            new Signature("application/x-7z-compressed", 0, bytes('7', 'z', 0xBC, 0xAF, 0x27, 0x1C)),
+            new Signature("application/vnd.rar", 0, bytes('R', 'a', 'r', '!', 0x1A, 0x07)),
+            new Signature("application/wasm", 0, bytes(0x00, 'a', 's', 'm')),
+            new Signature("application/xml", 0, "<?xml", type -> type.getSubtype().endsWith("xml")),
+            new Signature("text/html", 0, "<!DOCTYPE html", type -> type.getSubtype().endsWith("html")),
+            new Signature("text/html", 0, "<!doctype html", type -> type.getSubtype().endsWith("html")),
+            new Signature("text/html", 0, "<html", type -> type.getSubtype().endsWith("html")));
+
+    private ContentTypeUtils() {
+    }
+
+    public static String detectContentType(String fileName, byte[] head, int length) {
+        MediaType extensionType = MediaTypeFactory.getMediaType(fileName).
+                filter(type -> !MediaType.APPLICATION_OCTET_STREAM.equals(type)).
+                orElse(null);
+
+        for(Signature signature : SIGNATURES) {
+            if(signature.matches(head, length))
+                return extensionType != null && signature.refinedBy().test(extensionType) ?
+                        extensionType.toString() : signature.contentType();
+        }
+
+        if(extensionType != null)
+            return extensionType.toString();
+        return isText(head, length) ? MediaType.TEXT_PLAIN_VALUE : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    //reads the first bytes of the stream, which is left after them
+    public static String detectContentType(String fileName, InputStream inputStream) throws IOException {
+        byte[] head = inputStream.readNBytes(SNIFF_LENGTH);
+        return detectContentType(fileName, head, head.length);
+    }
+
+    public static String detectContentType(String fileName, Path path) throws IOException {
+        try(InputStream inputStream = Files.newInputStream(path)) {
+            return detectContentType(fileName, inputStream);
+        }
+    }
+
+    //the first bytes are pushed back once read, so the content is still stored from its start
+    public static String peekContentType(String fileName, PushbackInputStream inputStream) throws IOException {
+        byte[] head = inputStream.readNBytes(SNIFF_LENGTH);
+        inputStream.unread(head);
+        return detectContentType(fileName, head, head.length);
+    }
+
+    public static PushbackInputStream toPeekableInputStream(InputStream inputStream) {
+        return new PushbackInputStream(inputStream, SNIFF_LENGTH);
+    }
+
+    //control characters other than the usual whitespace never show up in text files
+    private static boolean isText(byte[] head, int length) {
+        if(length == 0)
+            return false;
+        for(int i = 0; i < length; i++) {
+            int b = head[i] & 0xFF;
+            if(b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B)
+                return false;
+        }
+        return true;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for(int i = 0; i < values.length; i++)
+            bytes[i] = (byte) values[i];
+        return bytes;
+    }
+
+    //refinedBy accepts the extension types that are more precise than the signature itself
+    private record Signature(String contentType, int offset, byte[] magic, int secondOffset, byte[] secondMagic,
+                             Predicate<MediaType> refinedBy) {
+        Signature(String contentType, int offset, byte[] magic) {
+            this(contentType, offset, magic, 0, new byte[0], type -> false);
+        }
+
+        Signature(String contentType, int offset, String magic) {
+            this(contentType, offset, magic.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        Signature(String contentType, int offset, String magic, Predicate<MediaType> refinedBy) {
+            this(contentType, offset, magic.getBytes(StandardCharsets.US_ASCII), 0, new byte[0], refinedBy);
+        }
+
+        Signature(String contentType, int offset, byte[] magic, Predicate<MediaType> refinedBy) {
+            this(contentType, offset, magic, 0, new byte[0], refinedBy);
+        }
+
+        Signature(String contentType, int offset, String magic, int secondOffset, String secondMagic) {
+            this(contentType, offset, magic.getBytes(StandardCharsets.US_ASCII), secondOffset,
+                    secondMagic.getBytes(StandardCharsets.US_ASCII), type -> false);
+        }
+
+        boolean matches(byte[] head, int length) {
+            return matches(head, length, offset, magic) && matches(head, length, secondOffset, secondMagic);
+        }
+
+        private static boolean matches(byte[] head, int length, int offset, byte[] magic) {
+            if(offset + magic.length > length)
+                return false;
+            for(int i = 0; i < magic.length; i++) {
+                if(head[offset + i] != magic[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
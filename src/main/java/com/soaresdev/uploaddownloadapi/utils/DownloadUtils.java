@@ -0,0 +1,236 @@
+package com.soaresdev.uploaddownloadapi.utils;
+
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.FileDownloadException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+public class DownloadUtils {
+    private static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private DownloadUtils() {
+    }
+
+    //the type is detected once when the file is stored, files stored before with a type sent by the client that is
+    //not valid are sent as binary
+    public static MediaType getContentType(DownloadedFileDTO file) {
+        if(file.getFileType() == null)
+            return MediaType.APPLICATION_OCTET_STREAM;
+        try {
+            return MediaType.parseMediaType(file.getFileType());
+        }catch(InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    //Range requests are answered by Spring MVC itself, which turns a Resource body into one or more
+    //ResourceRegions (206, multipart/byteranges or 416), reading each region through InputStream.skip
+    public static ResponseEntity<Resource> toDownloadResponse(DownloadedFileDTO storedFile, MediaType contentType,
+                                                              HttpHeaders requestHeaders) {
+        DownloadedFileDTO file = toRepresentation(storedFile, requestHeaders);
+        if(isNotModified(requestHeaders, file))
+            return toNotModifiedResponse(file);
+
+        ResponseEntity.BodyBuilder response = withDownloadHeaders(ResponseEntity.ok(), file, contentType);
+
+        if(requestHeaders.containsKey(HttpHeaders.RANGE) && !isIfRangeSatisfied(requestHeaders, file)) {
+            try {
+                //an InputStreamResource is never split into regions, so the whole file is sent with 200
+                return response.contentLength(file.getFileByteSize()).
+                        body(new InputStreamResource(file.getResource().getInputStream()));
+            }catch(IOException e) {
+                throw new FileDownloadException("Fatal error. Could not download file: " + file.getFileName());
+            }
+        }
+        return response.body(file.getResource());
+    }
+
+    //Tomcat writes the file straight from the page cache to the socket when these request attributes are
+    //set and no body is written. Multiple ranges and HEAD requests are left to toDownloadResponse.
+    public static Optional<ResponseEntity<Resource>> toSendfileResponse(DownloadedFileDTO storedFile, MediaType contentType,
+                                                                       HttpHeaders requestHeaders, HttpServletRequest request) {
+        DownloadedFileDTO file = toRepresentation(storedFile, requestHeaders);
+        //checked before the attributes are set, Tomcat would otherwise send the file along with the 304
+        if(isNotModified(requestHeaders, file))
+            return Optional.of(toNotModifiedResponse(file));
+        if(!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE)) ||
+                !HttpMethod.GET.matches(request.getMethod()) || !file.getResource().isFile())
+            return Optional.empty();
+
+        long start = 0;
+        long end = file.getFileByteSize() - 1;
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if(requestHeaders.containsKey(HttpHeaders.RANGE) && isIfRangeSatisfied(requestHeaders, file)) {
+            try {
+                List<HttpRange> ranges = requestHeaders.getRange();
+                if(ranges.size() != 1)
+                    return Optional.empty();
+
+                start = ranges.get(0).getRangeStart(file.getFileByteSize());
+                end = ranges.get(0).getRangeEnd(file.getFileByteSize());
+            }catch(IllegalArgumentException e) {
+                return Optional.empty();
+            }
+            response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).
+                    header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + file.getFileByteSize());
+        }
+
+        try {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getResource().getFile().getAbsolutePath());
+        }catch(IOException e) {
+            return Optional.empty();
+        }
+        request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+        request.setAttribute(SENDFILE_END_ATTRIBUTE, end + 1);
+
+        return Optional.of(withDownloadHeaders(response, file, contentType).
+                contentLength(end - start + 1).
+                build());
+    }
+
+    //bytes Tomcat was asked to send with sendfile for this request, 0 when the body is written by the application
+    public static long getSendfileByteSize(HttpServletRequest request) {
+        if(request.getAttribute(SENDFILE_FILENAME_ATTRIBUTE) == null ||
+                !(request.getAttribute(SENDFILE_START_ATTRIBUTE) instanceof Long start) ||
+                !(request.getAttribute(SENDFILE_END_ATTRIBUTE) instanceof Long end))
+            return 0;
+        return end - start;
+    }
+
+    //If-None-Match takes precedence over If-Modified-Since and is compared weakly, as a cache revalidating
+    //its copy only needs to know whether it is still equivalent
+    public static boolean isNotModified(HttpHeaders requestHeaders, DownloadedFileDTO file) {
+        try {
+            List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+            if(!ifNoneMatch.isEmpty()) {
+                String entityTag = toEntityTag(file);
+                return ifNoneMatch.stream().anyMatch(tag -> tag.equals("*") ||
+                        entityTag != null && stripWeakPrefix(tag).equals(entityTag));
+            }
+
+            long ifModifiedSince = requestHeaders.getIfModifiedSince();
+            return ifModifiedSince != -1 && file.getLastModifiedTime() != null &&
+                    file.getLastModifiedTime().truncatedTo(ChronoUnit.SECONDS).toEpochMilli() <= ifModifiedSince;
+        }catch(IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    //ranges are only combined with the part a client already holds when it is byte for byte the same,
+    //so If-Range needs a strong entity tag or a date
+    public static boolean isIfRangeSatisfied(HttpHeaders requestHeaders, DownloadedFileDTO file) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if(ifRange == null)
+            return true;
+        if(ifRange.startsWith("\""))
+            return ifRange.equals(toEntityTag(file));
+        if(ifRange.startsWith("W/") || file.getLastModifiedTime() == null)
+            return false;
+
+        try {
+            Instant lastModifiedTime = file.getLastModifiedTime().truncatedTo(ChronoUnit.SECONDS);
+            return requestHeaders.getFirstDate(HttpHeaders.IF_RANGE) == lastModifiedTime.toEpochMilli();
+        }catch(IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static ResponseEntity<Resource> toNotModifiedResponse(DownloadedFileDTO file) {
+        return withValidators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), file).build();
+    }
+
+    private static ResponseEntity.BodyBuilder withDownloadHeaders(ResponseEntity.BodyBuilder response,
+                                                                  DownloadedFileDTO file, MediaType contentType) {
+        response.contentType(contentType).
+                header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getFileName()).
+                header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        return withValidators(response, file);
+    }
+
+    private static ResponseEntity.BodyBuilder withValidators(ResponseEntity.BodyBuilder response, DownloadedFileDTO file) {
+        String entityTag = toEntityTag(file);
+        if(entityTag != null)
+            response.eTag(entityTag);
+        if(file.getLastModifiedTime() != null)
+            response.lastModified(file.getLastModifiedTime());
+        if(file.getContentEncoding() != null)
+            response.header(HttpHeaders.CONTENT_ENCODING, file.getContentEncoding());
+        if(file.getEncodedResource() != null)
+            response.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        return response;
+    }
+
+    //the content hash is computed while the upload is stored, so it is a strong validator that costs nothing here
+    //the encoded and the decoded bytes are different representations, each needs an entity tag of its own
+    private static String toEntityTag(DownloadedFileDTO file) {
+        if(file.getContentHash() == null)
+            return null;
+        return "\"" + file.getContentHash() + (file.getContentEncoding() == null ? "" : "-" + file.getContentEncoding()) + "\"";
+    }
+
+    //files stored compressed are sent as they are to clients accepting their encoding and decoded on the fly for
+    //the others. Both representations keep the stored resource, so the response varies by Accept-Encoding either way.
+    private static DownloadedFileDTO toRepresentation(DownloadedFileDTO file, HttpHeaders requestHeaders) {
+        if(file.getContentEncoding() == null)
+            return file;
+        if(!isEncodingAccepted(requestHeaders, file.getContentEncoding()))
+            return new DownloadedFileDTO(file.getFileName(), file.getFileType(), file.getFileByteSize(),
+                    file.getLastModifiedTime(), file.getContentHash(), file.getResource(),
+                    null, file.getEncodedByteSize(), file.getEncodedResource());
+
+        return new DownloadedFileDTO(file.getFileName(), file.getFileType(), file.getEncodedByteSize(),
+                file.getLastModifiedTime(), file.getContentHash(), file.getEncodedResource(),
+                file.getContentEncoding(), file.getEncodedByteSize(), file.getEncodedResource());
+    }
+
+    //an explicit q=0 refuses a coding even when * would accept it
+    private static boolean isEncodingAccepted(HttpHeaders requestHeaders, String contentEncoding) {
+        Double quality = null;
+        Double wildcardQuality = null;
+        for(String value : requestHeaders.getValuesAsList(HttpHeaders.ACCEPT_ENCODING)) {
+            String[] parameters = value.split(";");
+            String coding = parameters[0].trim().toLowerCase();
+            double codingQuality = 1;
+            for(int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if(parameter.startsWith("q="))
+                    codingQuality = parseQuality(parameter.substring(2));
+            }
+
+            if(coding.equals(contentEncoding) || coding.equals("x-" + contentEncoding))
+                quality = codingQuality;
+            else if(coding.equals("*"))
+                wildcardQuality = codingQuality;
+        }
+        return quality != null ? quality > 0 : wildcardQuality != null && wildcardQuality > 0;
+    }
+
+    private static double parseQuality(String quality) {
+        try {
+            return Double.parseDouble(quality);
+        }catch(NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String stripWeakPrefix(String entityTag) {
+        return entityTag.startsWith("W/") ? entityTag.substring(2) : entityTag;
+    }
+}
@@ -1,38 +1,144 @@
 package com.soaresdev.uploaddownloadapi.utils;
 
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
-import java.text.CharacterIterator;
-import java.text.StringCharacterIterator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 public class FileUtils {
-    private static final String REGEX_FILE_NAME = "^[a-zA-Z0-9](?:[a-zA-Z0-9. _-]*[a-zA-Z0-9])?\\.[a-zA-Z0-9_-]+$";
+    private static final String CHECKSUM_ALGORITHM = "SHA-256";
+    private static final String SI_UNITS = "kMGTPE";
+    private static final String HEX_DIGITS = "0123456789abcdef";
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    public static final int MAX_SHARD_DIGITS = 16;
 
     private FileUtils() {
     }
 
+    //same rule as ^[a-zA-Z0-9](?:[a-zA-Z0-9. _-]*[a-zA-Z0-9])?\.[a-zA-Z0-9_-]+$ without a regex, names are checked
+    //for every file listed or indexed. The extension has no dot, so it always starts after the last one.
     public static boolean isValidFileName(String fileName) {
-        return fileName.matches(REGEX_FILE_NAME);
+        int extensionStart = fileName.lastIndexOf('.') + 1;
+        if(extensionStart < 2 || extensionStart == fileName.length())
+            return false;
+        if(!isAlphanumeric(fileName.charAt(0)) || !isAlphanumeric(fileName.charAt(extensionStart - 2)))
+            return false;
+
+        for(int i = 1; i < extensionStart - 2; i++) {
+            char c = fileName.charAt(i);
+            if(!isAlphanumeric(c) && c != '.' && c != ' ' && c != '_' && c != '-')
+                return false;
+        }
+        for(int i = extensionStart; i < fileName.length(); i++) {
+            char c = fileName.charAt(i);
+            if(!isAlphanumeric(c) && c != '_' && c != '-')
+                return false;
+        }
+        return true;
+    }
+
+    public static String getFileDownloadUri(String filesPath, String fileName) {
+        return toFileDownloadUri(getFileDownloadUriPrefix(filesPath), fileName);
+    }
+
+    //the part of the download URI shared by every file, built from the current request once for a whole listing
+    public static String getFileDownloadUriPrefix(String filesPath) {
+        return ServletUriComponentsBuilder.fromCurrentContextPath().
+                path(filesPath).
+                path("/download/").
+                toUriString();
     }
 
-    public static String getFileDownloadUri(String fileName) {
-        return ServletUriComponentsBuilder.fromCurrentRequest().
-                path("/download").
-                path("/{fileName}").
-                buildAndExpand(fileName).
-                toUriString().
-                replace("/uploads", "").
-                replace("/upload", "");
+    //valid file names have nothing to expand or encode, so the name is only appended
+    public static String toFileDownloadUri(String fileDownloadUriPrefix, String fileName) {
+        return fileDownloadUriPrefix.concat(fileName);
     }
 
+    //same output as String.format("%.1f %cB") with a dot as decimal separator, without parsing a format
     public static String humanReadableByteCountSI(long bytes) {
         if (-1000 < bytes && bytes < 1000) {
             return bytes + " B";
         }
-        CharacterIterator ci = new StringCharacterIterator("kMGTPE");
+        int unit = 0;
         while (bytes <= -999_950 || bytes >= 999_950) {
             bytes /= 1000;
-            ci.next();
+            unit++;
+        }
+
+        //tenths of the unit, rounded half up like the formatter does
+        long tenths = (Math.abs(bytes) + 50) / 100;
+        StringBuilder byteCount = new StringBuilder(9);
+        if (bytes < 0)
+            byteCount.append('-');
+        return byteCount.append(tenths / 10).
+                append('.').
+                append((char) ('0' + tenths % 10)).
+                append(' ').
+                append(SI_UNITS.charAt(unit)).
+                append('B').
+                toString();
+    }
+
+    //depth directories of width hex digits each, taken from the 64-bit FNV-1a hash of the name, like "3f/a2".
+    //Where every file is stored depends on it, so it must never change.
+    public static String getShardDirectory(String fileName, int depth, int width) {
+        long hash = FNV_OFFSET_BASIS;
+        for(int i = 0; i < fileName.length(); i++) {
+            hash ^= fileName.charAt(i);
+            hash *= FNV_PRIME;
+        }
+
+        StringBuilder shardDirectory = new StringBuilder(depth * (width + 1));
+        int shift = 64;
+        for(int level = 0; level < depth; level++) {
+            if(level > 0)
+                shardDirectory.append('/');
+            for(int i = 0; i < width; i++) {
+                shift -= 4;
+                shardDirectory.append(HEX_DIGITS.charAt((int) (hash >>> shift) & 0xF));
+            }
         }
-        return String.format("%.1f %cB", bytes / 1000.0, ci.current());
+        return shardDirectory.toString();
+    }
+
+    public static boolean isShardDirectoryName(String name, int width) {
+        if(name.length() != width)
+            return false;
+        for(int i = 0; i < width; i++) {
+            if(HEX_DIGITS.indexOf(name.charAt(i)) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    public static MessageDigest newChecksumDigest() {
+        try {
+            return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        }catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(CHECKSUM_ALGORITHM + " is not available", e);
+        }
+    }
+
+    public static String toChecksum(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String checksumOf(Path path) throws IOException {
+        MessageDigest digest = newChecksumDigest();
+        try(InputStream inputStream = new DigestInputStream(Files.newInputStream(path), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return toChecksum(digest);
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
     }
-}
\ No newline at end of file
+}
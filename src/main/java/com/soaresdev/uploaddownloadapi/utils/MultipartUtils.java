@@ -0,0 +1,181 @@
+package com.soaresdev.uploaddownloadapi.utils;
+
+import com.soaresdev.uploaddownloadapi.configs.FileMultipartConfig;
+import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class MultipartUtils {
+    private MultipartUtils() {
+    }
+
+    public static MultipartFile getFile(HttpServletRequest request, String fieldName, FileMultipartConfig config) {
+        return getFiles(request, fieldName, config).next();
+    }
+
+    //the request body is parsed incrementally, each part is handed over while it is still being received
+    //so it is written once, straight to its destination. When a MultipartResolver already parsed the
+    //request (for example in MockMvc), its parts are used instead.
+    public static Iterator<MultipartFile> getFiles(HttpServletRequest request, String fieldName, FileMultipartConfig config) {
+        if(request instanceof MultipartHttpServletRequest multipartRequest)
+            return getParsedFiles(multipartRequest, fieldName).iterator();
+
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> fileUpload = new JakartaServletFileUpload<>();
+        fileUpload.setMaxFileSize(config.getMaxFileSize().toBytes());
+        fileUpload.setMaxSize(config.getMaxRequestSize().toBytes());
+        fileUpload.setMaxPartHeaderSize(Math.toIntExact(config.getMaxPartHeaderSize().toBytes()));
+        Iterator<MultipartFile> files;
+        try {
+            files = new StreamedMultipartFileIterator(fileUpload.getItemIterator(request), fieldName,
+                    Math.min(request.getContentLengthLong(), config.getMaxFileSize().toBytes()));
+        }catch(IOException e) {
+            throw toUploadException(e);
+        }
+
+        if(!files.hasNext())
+            throw new FileUploadException("Required part '" + fieldName + "' is not present");
+        return files;
+    }
+
+    public static List<MultipartFile> getParsedFiles(MultipartHttpServletRequest request, String fieldName) {
+        List<MultipartFile> files = request.getFiles(fieldName);
+        if(files.isEmpty())
+            throw new FileUploadException("Required part '" + fieldName + "' is not present");
+        return files;
+    }
+
+    //a raw request body is a single file, it is held to the same size limit as a part of a multipart request
+    public static InputStream getBody(HttpServletRequest request, String fileName, FileMultipartConfig config) {
+        if(request.getContentLengthLong() > config.getMaxFileSize().toBytes())
+            throw new FileUploadException("Maximum upload size exceeded: " + fileName);
+
+        try {
+            return limitFileSize(request.getInputStream(), fileName, config);
+        }catch(IOException e) {
+            throw new FileUploadException("Invalid request body");
+        }
+    }
+
+    //an archive body holds many files, it is held to the size limit of a whole multipart request
+    public static InputStream getArchiveBody(HttpServletRequest request, FileMultipartConfig config) {
+        long maxRequestSize = config.getMaxRequestSize().toBytes();
+        if(request.getContentLengthLong() > maxRequestSize)
+            throw new FileUploadException("Maximum upload size exceeded");
+
+        try {
+            return new SizeLimitedInputStream(request.getInputStream(), maxRequestSize, "Maximum upload size exceeded");
+        }catch(IOException e) {
+            throw new FileUploadException("Invalid request body");
+        }
+    }
+
+    public static InputStream limitFileSize(InputStream inputStream, String fileName, FileMultipartConfig config) {
+        return new SizeLimitedInputStream(inputStream, config.getMaxFileSize().toBytes(), "Maximum upload size exceeded: " + fileName);
+    }
+
+    private static FileUploadException toUploadException(IOException e) {
+        if(e instanceof FileUploadSizeException || e.getCause() instanceof FileUploadSizeException)
+            return new FileUploadException("Maximum upload size exceeded");
+        return new FileUploadException("Invalid multipart request");
+    }
+
+    private static class StreamedMultipartFileIterator implements Iterator<MultipartFile> {
+        private final FileItemInputIterator items;
+        private final String fieldName;
+        private final long maxFileByteSize;
+        private FileItemInput next;
+
+        StreamedMultipartFileIterator(FileItemInputIterator items, String fieldName, long maxFileByteSize) {
+            this.items = items;
+            this.fieldName = fieldName;
+            this.maxFileByteSize = maxFileByteSize;
+        }
+
+        //moving to the next part skips whatever was left unread of the current one
+        @Override
+        public boolean hasNext() {
+            try {
+                while(next == null && items.hasNext()) {
+                    FileItemInput item = items.next();
+                    if(!item.isFormField() && fieldName.equals(item.getFieldName()))
+                        next = item;
+                }
+                return next != null;
+            }catch(IOException e) {
+                throw toUploadException(e);
+            }
+        }
+
+        @Override
+        public MultipartFile next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+
+            MultipartFile file = new StreamedMultipartFile(next, getDeclaredSize(next));
+            next = null;
+            return file;
+        }
+
+        //clients rarely send the length of a part, a part is then at most as large as the whole request body
+        //(or the file size limit). Both are unknown when the body is chunked.
+        private long getDeclaredSize(FileItemInput item) {
+            String contentLength = item.getHeaders().getHeader("Content-Length");
+            if(contentLength != null) {
+                try {
+                    return Long.parseLong(contentLength.trim());
+                }catch(NumberFormatException e) {
+                    throw new FileUploadException("Invalid multipart request");
+                }
+            }
+            return maxFileByteSize;
+        }
+    }
+
+    //the declared length may be missing (chunked transfer encoding), so the bytes are also counted as they are read
+    private static class SizeLimitedInputStream extends FilterInputStream {
+        private final long maxSize;
+        private final String message;
+        private long count;
+
+        SizeLimitedInputStream(InputStream inputStream, long maxSize, String message) {
+            super(inputStream);
+            this.maxSize = maxSize;
+            this.message = message;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if(read != -1)
+                count(1);
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if(read > 0)
+                count(read);
+            return read;
+        }
+
+        private void count(int read) {
+            count += read;
+            if(count > maxSize)
+                throw new FileUploadException(message);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.soaresdev.uploaddownloadapi.utils;
+
+import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.springframework.web.multipart.MultipartFile;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+//a part read straight from the request body: its stream can be opened once, before the next part is requested,
+//and its exact size is only known once it was read. Until then the size is the one declared by the request,
+//an upper bound that lets placement and space checks account for the file, or -1 when nothing was declared.
+class StreamedMultipartFile implements MultipartFile {
+    private final FileItemInput item;
+    private long size;
+    private boolean opened;
+
+    StreamedMultipartFile(FileItemInput item, long declaredSize) {
+        this.item = item;
+        this.size = declaredSize;
+    }
+
+    @Override
+    public String getName() {
+        return item.getFieldName();
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return item.getName();
+    }
+
+    @Override
+    public String getContentType() {
+        return item.getContentType();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        try(InputStream inputStream = getInputStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if(opened)
+            throw new IllegalStateException("Part already read: " + getOriginalFilename());
+        opened = true;
+
+        return new FilterInputStream(item.getInputStream()) {
+            private long count;
+
+            @Override
+            public int read() throws IOException {
+                try {
+                    int read = super.read();
+                    count(read == -1 ? -1 : 1);
+                    return read;
+                }catch(IOException e) {
+                    throw toUploadException(e);
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    int read = super.read(b, off, len);
+                    count(read);
+                    return read;
+                }catch(IOException e) {
+                    throw toUploadException(e);
+                }
+            }
+
+            private void count(int read) {
+                if(read == -1)
+                    size = count;
+                else
+                    count += read;
+            }
+        };
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        transferTo(dest.toPath());
+    }
+
+    @Override
+    public void transferTo(Path dest) throws IOException {
+        try(InputStream inputStream = getInputStream()) {
+            Files.copy(inputStream, dest);
+        }
+    }
+
+    //a size limit is a client error, thrown unchecked so it is not reported as a failure to write the file
+    private IOException toUploadException(IOException e) {
+        if(e instanceof FileUploadSizeException || e.getCause() instanceof FileUploadSizeException)
+            throw new FileUploadException("Maximum upload size exceeded: " + getOriginalFilename());
+        return e;
+    }
+}
@@ -0,0 +1,85 @@
+package com.soaresdev.uploaddownloadapi.benchmarks;
+
+import com.soaresdev.uploaddownloadapi.UploadDownloadApiApplication;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * What every benchmark of this package shares: the JMH options read from -Dbenchmark.* properties, the application
+ * the storage engines are taken from and the random files they are fed with.
+ */
+public final class Benchmarks {
+    static final String FILE_SIZE_PARAM = "fileSizeMb";
+
+    private Benchmarks() {
+    }
+
+    static void run(ChainedOptionsBuilder options) throws RunnerException {
+        new Runner(options.build()).run();
+    }
+
+    //operations taking microseconds, measured for -Dbenchmark.iterations seconds after as many of warmup
+    static ChainedOptionsBuilder options(Class<?> benchmark) {
+        int iterations = Integer.getInteger("benchmark.iterations", 5);
+        return new OptionsBuilder().
+                include(benchmark.getName() + "\\.").
+                forks(Integer.getInteger("benchmark.forks", 1)).
+                warmupIterations(iterations).
+                warmupTime(TimeValue.seconds(1)).
+                measurementIterations(iterations).
+                measurementTime(TimeValue.seconds(1));
+    }
+
+    //transfers of a whole file through a real server, each one timed on its own (Mode.SingleShotTime) after a first
+    //one to warm up. The size of the file, the @Param of the benchmark unless -Dbenchmark.file-size-mb is set, and
+    //the count of transfers, -Dbenchmark.rounds, can be changed.
+    static ChainedOptionsBuilder transferOptions(Class<?> benchmark, int rounds) {
+        ChainedOptionsBuilder options = new OptionsBuilder().
+                include(benchmark.getName() + "\\.").
+                forks(Integer.getInteger("benchmark.forks", 1)).
+                warmupIterations(1).
+                measurementIterations(Integer.getInteger("benchmark.rounds", rounds)).
+                addProfiler(ProcessCpuProfiler.class);
+        String fileSizeMb = System.getProperty("benchmark.file-size-mb");
+        return fileSizeMb == null ? options : options.param(FILE_SIZE_PARAM, fileSizeMb);
+    }
+
+    //the web server listens on a random port, found in local.server.port
+    static ConfigurableApplicationContext startApplication(WebApplicationType webApplicationType, String... properties) {
+        String[] args = Stream.concat(Stream.of("--server.port=0", "--spring.jpa.show-sql=false"), Stream.of(properties)).
+                toArray(String[]::new);
+        return new SpringApplicationBuilder(UploadDownloadApiApplication.class).web(webApplicationType).run(args);
+    }
+
+    static String getBaseUri(ConfigurableApplicationContext context) {
+        return "http://localhost:" + context.getEnvironment().getRequiredProperty("local.server.port");
+    }
+
+    static long toBytes(int fileSizeMb) {
+        return fileSizeMb * 1024L * 1024;
+    }
+
+    //random bytes, so compression or deduplication never make a transfer cheaper than it is
+    static void createFile(Path path, long fileByteSize) throws IOException {
+        byte[] block = new byte[1024 * 1024];
+        ThreadLocalRandom.current().nextBytes(block);
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for(long written = 0; written < fileByteSize; written += block.length)
+                channel.write(ByteBuffer.wrap(block, 0, (int) Math.min(block.length, fileByteSize - written)));
+        }
+    }
+}
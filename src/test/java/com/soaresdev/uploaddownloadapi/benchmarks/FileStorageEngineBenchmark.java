@@ -0,0 +1,128 @@
+package com.soaresdev.uploaddownloadapi.benchmarks;
+
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.dtos.FileStatDTO;
+import com.soaresdev.uploaddownloadapi.services.FileStorageEngine;
+import com.soaresdev.uploaddownloadapi.services.InMemoryStorageEngine;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH benchmarks of the same operations on every storage engine, each holding {@code fileCount} files of
+ * {@code fileSize} bytes. The file system and database engines are the beans of an application started without a
+ * web server and with the download cache disabled, so what is measured is the storage itself; the in-memory engine
+ * is the baseline without any. Run with {@code mvn test -Pbenchmark}; iterations and forks can be set with
+ * -Dbenchmark.iterations and -Dbenchmark.forks.
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileStorageEngineBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"in-memory", "in-system", "in-database"})
+    public String engine;
+
+    @Param({"1000"})
+    public int fileCount;
+
+    @Param({"65536"})
+    public int fileSize;
+
+    private final AtomicLong putFiles = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private FileStorageEngine fileStorageEngine;
+    private Path uploadDirectory;
+    private byte[] data;
+
+    @Test
+    void runBenchmarks() throws Exception {
+        Benchmarks.run(Benchmarks.options(FileStorageEngineBenchmark.class));
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        data = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(data);
+
+        if(engine.equals(InMemoryStorageEngine.NAME)) {
+            fileStorageEngine = new InMemoryStorageEngine();
+        }else {
+            uploadDirectory = Files.createTempDirectory("engine-benchmark-");
+            context = Benchmarks.startApplication(WebApplicationType.NONE,
+                    "--file.upload-directory=" + uploadDirectory,
+                    "--file.cache.enabled=false");
+            fileStorageEngine = context.getBeansOfType(FileStorageEngine.class).values().stream().
+                    filter(bean -> bean.getName().equals(engine)).
+                    findFirst().
+                    orElseThrow();
+        }
+
+        for(int i = 0; i < fileCount; i++)
+            fileStorageEngine.put(getFileName(i), new ByteArrayInputStream(data));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if(context != null)
+            context.close();
+        if(uploadDirectory != null)
+            FileSystemUtils.deleteRecursively(uploadDirectory);
+    }
+
+    //the file is deleted again so the engine keeps its size across iterations
+    @Benchmark
+    public FileStatDTO putAndDelete() throws IOException {
+        String fileName = "put-" + putFiles.incrementAndGet() + ".bin";
+        FileStatDTO stat = fileStorageEngine.put(fileName, new ByteArrayInputStream(data));
+        fileStorageEngine.delete(fileName);
+        return stat;
+    }
+
+    @Benchmark
+    public long get() throws IOException {
+        DownloadedFileDTO file = fileStorageEngine.get(getFileName(ThreadLocalRandom.current().nextInt(fileCount))).
+                orElseThrow();
+        try(InputStream inputStream = file.getResource().getInputStream()) {
+            return inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public FileStatDTO stat() throws IOException {
+        return fileStorageEngine.stat(getFileName(ThreadLocalRandom.current().nextInt(fileCount))).orElseThrow();
+    }
+
+    @Benchmark
+    public List<FileStatDTO> listPage() throws IOException {
+        return fileStorageEngine.list(null, getFileName(ThreadLocalRandom.current().nextInt(fileCount)), PAGE_SIZE);
+    }
+
+    private static String getFileName(int i) {
+        return String.format("file-%06d.bin", i);
+    }
+}
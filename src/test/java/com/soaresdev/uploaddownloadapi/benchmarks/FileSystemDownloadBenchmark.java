@@ -0,0 +1,90 @@
+package com.soaresdev.uploaddownloadapi.benchmarks;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of downloads of a {@code fileSizeMb} file through a real Tomcat, either with the streamed Resource
+ * path or with sendfile. Each download is timed on its own, and the process CPU time per GB is reported next to
+ * it; the difference between both modes is the server-side saving. Run with {@code mvn test -Pbenchmark}; size
+ * and rounds can be set with -Dbenchmark.file-size-mb and -Dbenchmark.rounds.
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileSystemDownloadBenchmark {
+    private static final String FILE_NAME = "benchmark.bin";
+
+    @Param({"false", "true"})
+    public boolean sendfile;
+
+    @Param({"512"})
+    public int fileSizeMb;
+
+    private Path uploadDirectory;
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Test
+    void runBenchmarks() throws Exception {
+        Benchmarks.run(Benchmarks.transferOptions(FileSystemDownloadBenchmark.class, 4));
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        uploadDirectory = Files.createTempDirectory("download-benchmark-");
+        Benchmarks.createFile(uploadDirectory.resolve(FILE_NAME), Benchmarks.toBytes(fileSizeMb));
+
+        context = Benchmarks.startApplication(WebApplicationType.SERVLET,
+                "--file.upload-directory=" + uploadDirectory,
+                "--file.sendfile-enabled=" + sendfile);
+        client = HttpClient.newHttpClient();
+        request = HttpRequest.newBuilder(URI.create(Benchmarks.getBaseUri(context) +
+                "/api/v1/in-system/files/download/" + FILE_NAME)).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if(context != null)
+            context.close();
+        FileSystemUtils.deleteRecursively(uploadDirectory.toFile());
+    }
+
+    @Benchmark
+    public long download() throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try(InputStream body = response.body()) {
+            if(response.statusCode() != 200)
+                throw new IllegalStateException("Download failed with " + response.statusCode());
+            long bytes = body.transferTo(OutputStream.nullOutputStream());
+            if(bytes != Benchmarks.toBytes(fileSizeMb))
+                throw new IllegalStateException("Downloaded " + bytes + " bytes");
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.soaresdev.uploaddownloadapi.benchmarks;
+
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.FileSystemUtils;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * JMH benchmarks of an upload directory holding {@code fileCount} files, either all at its root or fanned out
+ * into shard directories of two levels of two hex digits. Lookups and creates are single file system calls, the
+ * directory scan is what the index pays whenever the directory of a file changed under it. Run with
+ * {@code mvn test -Pbenchmark}; the file count can be set with -Dbenchmark.files, iterations and forks with
+ * -Dbenchmark.iterations and -Dbenchmark.forks.
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileSystemShardingBenchmark {
+    private static final int SHARD_DEPTH = 2;
+    private static final int SHARD_WIDTH = 2;
+
+    @Param({"flat", "sharded"})
+    public String layout;
+
+    @Param({"1000000"})
+    public int fileCount;
+
+    private final AtomicLong createdFiles = new AtomicLong();
+    private Path root;
+
+    @Test
+    void runBenchmarks() throws Exception {
+        Benchmarks.run(Benchmarks.options(FileSystemShardingBenchmark.class).
+                param("fileCount", System.getProperty("benchmark.files", "1000000")));
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("sharding-benchmark-");
+        IntStream.range(0, fileCount).parallel().forEach(i -> {
+            try {
+                Path location = resolve(getFileName(i));
+                Files.createDirectories(location.getParent());
+                Files.createFile(location);
+            }catch(IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public boolean lookupExistingFile() {
+        return Files.exists(resolve(getFileName(ThreadLocalRandom.current().nextInt(fileCount))));
+    }
+
+    @Benchmark
+    public boolean lookupMissingFile() {
+        return Files.exists(resolve("missing-" + ThreadLocalRandom.current().nextInt(fileCount) + ".bin"));
+    }
+
+    //the file is deleted again so the directory keeps its size across iterations
+    @Benchmark
+    public void createFile() throws IOException {
+        Path location = resolve("created-" + createdFiles.incrementAndGet() + ".bin");
+        Files.createDirectories(location.getParent());
+        Files.createFile(location);
+        Files.delete(location);
+    }
+
+    @Benchmark
+    public int scanDirectoryOfFile() throws IOException {
+        Path directory = resolve(getFileName(ThreadLocalRandom.current().nextInt(fileCount))).getParent();
+        int count = 0;
+        try(DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for(Path ignored : entries)
+                count++;
+        }
+        return count;
+    }
+
+    private Path resolve(String fileName) {
+        return layout.equals("flat") ? root.resolve(fileName) :
+                root.resolve(FileUtils.getShardDirectory(fileName, SHARD_DEPTH, SHARD_WIDTH)).resolve(fileName);
+    }
+
+    private static String getFileName(int i) {
+        return "file-" + i + ".bin";
+    }
+}
@@ -0,0 +1,122 @@
+package com.soaresdev.uploaddownloadapi.benchmarks;
+
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import java.text.CharacterIterator;
+import java.text.StringCharacterIterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH microbenchmarks of the FileUtils helpers called once per file of a listing, each next to the implementation
+ * it replaced. Every operation handles a whole listing of {@code LISTING_SIZE} files, and the GC profiler reports
+ * the bytes allocated per operation along with the time. Run with {@code mvn test -Pbenchmark}; iterations and
+ * forks can be set with -Dbenchmark.iterations and -Dbenchmark.forks.
+ */
+@Tag("benchmark")
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileUtilsBenchmark {
+    private static final int LISTING_SIZE = 1000;
+    private static final String FILES_PATH = "/api/v1/in-system/files";
+    private static final String REGEX_FILE_NAME = "^[a-zA-Z0-9](?:[a-zA-Z0-9. _-]*[a-zA-Z0-9])?\\.[a-zA-Z0-9_-]+$";
+
+    private String[] fileNames;
+    private long[] fileByteSizes;
+
+    @Test
+    void runBenchmarks() throws Exception {
+        Benchmarks.run(Benchmarks.options(FileUtilsBenchmark.class).
+                addProfiler(GCProfiler.class));
+    }
+
+    @Setup
+    public void setup() {
+        fileNames = new String[LISTING_SIZE];
+        fileByteSizes = new long[LISTING_SIZE];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(int i = 0; i < LISTING_SIZE; i++) {
+            fileNames[i] = "report-" + random.nextInt(1_000_000) + "_final version." + (i % 2 == 0 ? "pdf" : "tar-gz");
+            fileByteSizes[i] = random.nextLong(1L << random.nextInt(1, 40));
+        }
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", FILES_PATH);
+        request.setServerName("files.example.com");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public void validFileNameRegex(Blackhole blackhole) {
+        for(String fileName : fileNames)
+            blackhole.consume(fileName.matches(REGEX_FILE_NAME));
+    }
+
+    @Benchmark
+    public void validFileName(Blackhole blackhole) {
+        for(String fileName : fileNames)
+            blackhole.consume(FileUtils.isValidFileName(fileName));
+    }
+
+    @Benchmark
+    public void downloadUriPerFile(Blackhole blackhole) {
+        for(String fileName : fileNames)
+            blackhole.consume(ServletUriComponentsBuilder.fromCurrentRequestUri().
+                    path("/download").
+                    path("/{fileName}").
+                    buildAndExpand(fileName).
+                    toUriString().
+                    replace("/uploads", "").
+                    replace("/upload", ""));
+    }
+
+    @Benchmark
+    public void downloadUriPerListing(Blackhole blackhole) {
+        String fileDownloadUriPrefix = FileUtils.getFileDownloadUriPrefix(FILES_PATH);
+        for(String fileName : fileNames)
+            blackhole.consume(FileUtils.toFileDownloadUri(fileDownloadUriPrefix, fileName));
+    }
+
+    @Benchmark
+    public void byteCountFormat(Blackhole blackhole) {
+        for(long fileByteSize : fileByteSizes)
+            blackhole.consume(formatByteCount(fileByteSize));
+    }
+
+    @Benchmark
+    public void byteCount(Blackhole blackhole) {
+        for(long fileByteSize : fileByteSizes)
+            blackhole.consume(FileUtils.humanReadableByteCountSI(fileByteSize));
+    }
+
+    private static String formatByteCount(long bytes) {
+        if(-1000 < bytes && bytes < 1000)
+            return bytes + " B";
+        CharacterIterator ci = new StringCharacterIterator("kMGTPE");
+        while(bytes <= -999_950 || bytes >= 999_950) {
+            bytes /= 1000;
+            ci.next();
+        }
+        return String.format("%.1f %cB", bytes / 1000.0, ci.current());
+    }
+}
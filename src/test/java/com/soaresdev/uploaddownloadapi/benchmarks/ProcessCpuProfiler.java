@@ -0,0 +1,48 @@
+package com.soaresdev.uploaddownloadapi.benchmarks;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports the CPU time of the whole process per GB transferred, from the fileSizeMb parameter. Client and server
+ * share the forked JVM, so it includes the client; differences between the modes of a benchmark are the server's.
+ */
+public class ProcessCpuProfiler implements InternalProfiler {
+    private long cpuTimeBefore;
+
+    @Override
+    public String getDescription() {
+        return "Process CPU time per GB transferred";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        cpuTimeBefore = getProcessCpuTime();
+    }
+
+    @Override
+    public List<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams,
+                                                 IterationResult result) {
+        long cpuTime = getProcessCpuTime() - cpuTimeBefore;
+        long operations = result.getMetadata().getMeasuredOps();
+        String fileSizeMb = benchmarkParams.getParam(Benchmarks.FILE_SIZE_PARAM);
+        List<Result> results = new ArrayList<>();
+        if(operations > 0 && fileSizeMb != null) {
+            double gigabytes = operations * Benchmarks.toBytes(Integer.parseInt(fileSizeMb)) / (1024.0 * 1024 * 1024);
+            results.add(new ScalarResult("cpu", cpuTime / 1e9 / gigabytes, "s/GB", AggregationPolicy.AVG));
+        }
+        return results;
+    }
+
+    private static long getProcessCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
@@ -0,0 +1,112 @@
+package com.soaresdev.uploaddownloadapi.benchmarks;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of uploads of a {@code fileSizeMb} file through a real Tomcat into the file system, either as a
+ * multipart request or as a raw PUT body. Each upload is timed on its own, and the process CPU time per GB is
+ * reported next to it; the difference between both modes is the cost of the multipart parsing. Run with
+ * {@code mvn test -Pbenchmark}; size and rounds can be set with -Dbenchmark.file-size-mb and -Dbenchmark.rounds.
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RawUploadBenchmark {
+    @Param({"multipart", "raw"})
+    public String mode;
+
+    @Param({"64"})
+    public int fileSizeMb;
+
+    private Path uploadDirectory;
+    private Path source;
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUri;
+
+    @Test
+    void runBenchmarks() throws Exception {
+        Benchmarks.run(Benchmarks.transferOptions(RawUploadBenchmark.class, 3));
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        uploadDirectory = Files.createTempDirectory("upload-benchmark-");
+        source = Files.createTempFile("upload-benchmark-", ".bin");
+        Files.delete(source);
+        Benchmarks.createFile(source, Benchmarks.toBytes(fileSizeMb));
+
+        context = Benchmarks.startApplication(WebApplicationType.SERVLET, "--file.upload-directory=" + uploadDirectory);
+        client = HttpClient.newHttpClient();
+        baseUri = Benchmarks.getBaseUri(context) + "/api/v1/in-system/files";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if(context != null)
+            context.close();
+        FileSystemUtils.deleteRecursively(uploadDirectory);
+        Files.deleteIfExists(source);
+    }
+
+    //every upload is a new file, the ones before are kept until the trial ends
+    @Benchmark
+    public int upload() throws IOException, InterruptedException {
+        HttpRequest request = mode.equals("raw") ? toRawRequest() : toMultipartRequest();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if(response.statusCode() != 200)
+            throw new IllegalStateException("Upload failed with " + response.statusCode() + ": " + response.body());
+        return response.statusCode();
+    }
+
+    private HttpRequest toRawRequest() throws IOException {
+        return HttpRequest.newBuilder(URI.create(baseUri + "/" + newFileName())).
+                header("Content-Type", "application/octet-stream").
+                PUT(HttpRequest.BodyPublishers.ofFile(source)).
+                build();
+    }
+
+    private HttpRequest toMultipartRequest() throws IOException {
+        String boundary = UUID.randomUUID().toString();
+        String header = "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"" + newFileName() + "\"\r\n" +
+                "Content-Type: application/octet-stream\r\n\r\n";
+        String trailer = "\r\n--" + boundary + "--\r\n";
+
+        return HttpRequest.newBuilder(URI.create(baseUri + "/upload")).
+                header("Content-Type", "multipart/form-data; boundary=" + boundary).
+                POST(HttpRequest.BodyPublishers.concat(
+                        HttpRequest.BodyPublishers.ofString(header),
+                        HttpRequest.BodyPublishers.ofFile(source),
+                        HttpRequest.BodyPublishers.ofString(trailer))).
+                build();
+    }
+
+    private static String newFileName() {
+        return "benchmark-" + UUID.randomUUID() + ".bin";
+    }
+}
@@ -1,13 +1,33 @@
 package com.soaresdev.uploaddownloadapi.controllers.v1;
 
+import com.soaresdev.uploaddownloadapi.configs.FileTieringConfig;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadCacheStatsDTO;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadedFileDTO;
+import com.soaresdev.uploaddownloadapi.entities.FileChunkEntity;
 import com.soaresdev.uploaddownloadapi.entities.FileDatabaseEntity;
 import com.soaresdev.uploaddownloadapi.exceptions.FileDownloadException;
 import com.soaresdev.uploaddownloadapi.exceptions.FileNotFoundException;
 import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import com.soaresdev.uploaddownloadapi.repositories.FileChunkRepository;
 import com.soaresdev.uploaddownloadapi.repositories.FileDatabaseRepository;
+import com.soaresdev.uploaddownloadapi.services.FileDatabaseService;
+import com.soaresdev.uploaddownloadapi.services.FileDownloadCache;
+import com.soaresdev.uploaddownloadapi.services.FileTierMover;
+import com.soaresdev.uploaddownloadapi.services.FileTransferMetrics;
 import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -15,9 +35,37 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.Matchers.matchesRegex;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -27,6 +75,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@TestPropertySource(properties = {"file.database.chunk-size=64KB", "spring.jpa.properties.hibernate.generate_statistics=true"})
 class FileDatabaseControllerTest {
     @Autowired
     private MockMvc mockMvc;
@@ -34,12 +83,31 @@ class FileDatabaseControllerTest {
     @Autowired
     private FileDatabaseRepository fileDatabaseRepository;
 
+    @Autowired
+    private FileChunkRepository fileChunkRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private FileDownloadCache fileDownloadCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private FileDatabaseService fileDatabaseService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     private static final String URL_PATH = "/api/v1/in-database/files";
     private static final String FORM_NAME = "file";
     private static final String VALID_FILE_NAME_ONE = "testing-one.txt";
     private static final String VALID_FILE_NAME_TWO = "testing-two.png";
     private static final String INVALID_FILE_NAME = "te!sting.txt";
     private static final int ONE_MB_IN_BYTES = 1000000;
+    private static final int CHUNK_SIZE = 64 * 1024;
     private static final byte[] BINARY_DATA_ONE = "testing...".getBytes();
     private static final byte[] BINARY_DATA_TWO = new byte[ONE_MB_IN_BYTES];
 
@@ -50,6 +118,8 @@ class FileDatabaseControllerTest {
     void setup() {
         init();
         fileDatabaseRepository.deleteAll();
+        fileChunkRepository.deleteAll();
+        fileDownloadCache.clear();
     }
 
     @Test
@@ -87,7 +157,7 @@ class FileDatabaseControllerTest {
 
     @Test
     void shouldReturn400WhenFileExistsInUploadFile() throws Exception {
-        fileDatabaseRepository.save(new FileDatabaseEntity(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE.length, BINARY_DATA_ONE));
+        saveFile(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
 
         mockMvc.perform(multipart(URL_PATH + "/upload").
                 file(validFile)).
@@ -152,7 +222,7 @@ class FileDatabaseControllerTest {
 
     @Test
     void shouldReturn400WhenFileExistsInUploadFiles() throws Exception {
-        fileDatabaseRepository.save(new FileDatabaseEntity(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO.length, BINARY_DATA_TWO));
+        saveFile(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO);
         String formName = "files";
         MockMultipartFile validFile = new MockMultipartFile(formName, VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
         MockMultipartFile validFileTwo = new MockMultipartFile(formName, VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO);
@@ -173,9 +243,98 @@ class FileDatabaseControllerTest {
         assertEquals(1, fileDatabaseRepository.count());
     }
 
+    @Test
+    void shouldUploadFilesInJdbcBatchesAndReturn200() throws Exception {
+        MockMultipartHttpServletRequestBuilder request = multipart(URL_PATH + "/uploads");
+        for(int i = 0; i < 40; i++)
+            request.file(new MockMultipartFile("files", "testing-" + i + ".txt", MediaType.TEXT_PLAIN_VALUE, ("testing " + i).getBytes()));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(request).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.length()", is(40))).
+                andExpect(jsonPath("$.[39].fileName", is("testing-39.txt"))).
+                andExpect(jsonPath("$.[39].fileSize", is(FileUtils.humanReadableByteCountSI("testing 39".length())))).
+                andDo(print());
+
+        //40 files and 40 chunks are inserted and updated in a handful of statements instead of one each
+        assertTrue(statistics.getPrepareStatementCount() < 10, "statements: " + statistics.getPrepareStatementCount());
+        assertEquals(40, fileDatabaseRepository.count());
+        assertEquals(40, fileChunkRepository.count());
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", "testing-17.txt")).
+                andExpect(status().isOk()).
+                andExpect(content().string("testing 17"));
+    }
+
+    @Test
+    void shouldReturn400AndUploadNothingWhenFileNameIsRepeatedInUploadFiles() throws Exception {
+        mockMvc.perform(multipart(URL_PATH + "/uploads").
+                file(new MockMultipartFile("files", VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE)).
+                file(new MockMultipartFile("files", VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE))).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.error", is(FileUploadException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("Duplicate file name: " + VALID_FILE_NAME_ONE))).
+                andDo(print());
+
+        assertEquals(0, fileDatabaseRepository.count());
+    }
+
+    @Test
+    void shouldPutFileAndReturn200() throws Exception {
+        mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_TWO).
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_TWO)).
+                andExpect(status().isOk()).
+                andExpect(content().contentType(MediaType.APPLICATION_JSON)).
+                andExpect(jsonPath("$.fileName", is(VALID_FILE_NAME_TWO))).
+                andExpect(jsonPath("$.fileDownloadUri", endsWith(URL_PATH + "/download/" + VALID_FILE_NAME_TWO))).
+                andExpect(jsonPath("$.fileType", is(MediaType.IMAGE_PNG_VALUE))).
+                andExpect(jsonPath("$.fileSize", is(FileUtils.humanReadableByteCountSI(BINARY_DATA_TWO.length)))).
+                andDo(print());
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                andExpect(status().isOk()).
+                andExpect(content().contentType(MediaType.IMAGE_PNG_VALUE)).
+                andExpect(content().bytes(BINARY_DATA_TWO));
+    }
+
+    @Test
+    void shouldDetectFileTypeFromContentInsteadOfTrustingTheClient() throws Exception {
+        byte[] pdfData = "%PDF-1.7 testing...".getBytes();
+
+        mockMvc.perform(multipart(URL_PATH + "/upload").
+                file(new MockMultipartFile(FORM_NAME, VALID_FILE_NAME_ONE, "not a type", pdfData))).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.fileType", is(MediaType.APPLICATION_PDF_VALUE)));
+        //a file stored before types were detected may hold whatever the client sent, it is sent as binary
+        saveFile(VALID_FILE_NAME_TWO, "not a type", BINARY_DATA_ONE);
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isOk()).
+                andExpect(content().contentType(MediaType.APPLICATION_PDF_VALUE)).
+                andExpect(content().bytes(pdfData));
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                andExpect(status().isOk()).
+                andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM_VALUE));
+    }
+
+    @Test
+    void shouldReturn400WhenUploadFileWithInvalidNameInPutFile() throws Exception {
+        mockMvc.perform(put(URL_PATH + "/{fileName}", INVALID_FILE_NAME).
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_ONE)).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.error", is(FileUploadException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("Invalid file name: " + INVALID_FILE_NAME))).
+                andDo(print());
+
+        assertEquals(0, fileDatabaseRepository.count());
+    }
+
     @Test
     void shouldDownloadFileAndReturn200() throws Exception {
-        fileDatabaseRepository.save(new FileDatabaseEntity(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE.length, BINARY_DATA_ONE));
+        saveFile(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
 
         mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
                 andExpect(status().isOk()).
@@ -185,6 +344,33 @@ class FileDatabaseControllerTest {
                 andDo(print());
     }
 
+    @Test
+    void shouldReturn304WithoutReadingChunksWhenEntityTagMatches() throws Exception {
+        mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_TWO).
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_TWO)).
+                andExpect(status().isOk());
+        String contentHash = fileDatabaseRepository.findByFileName(VALID_FILE_NAME_TWO).get().getContentHash();
+        String entityTag = "\"" + contentHash + "\"";
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO).
+                header(HttpHeaders.IF_NONE_MATCH, entityTag)).
+                andExpect(status().isNotModified()).
+                andExpect(header().string(HttpHeaders.ETAG, entityTag)).
+                andExpect(content().bytes(new byte[0])).
+                andDo(print());
+        //only the metadata row is read, the chunks are not
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, fileDownloadCache.getStats().getEntryCount());
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                andExpect(status().isOk()).
+                andExpect(header().string(HttpHeaders.ETAG, entityTag)).
+                andExpect(content().bytes(BINARY_DATA_TWO));
+    }
+
     @Test
     void shouldReturn400WhenInvalidFileNameInDownloadFile() throws Exception {
         mockMvc.perform(get(URL_PATH + "/download/{fileName}", INVALID_FILE_NAME)).
@@ -215,10 +401,54 @@ class FileDatabaseControllerTest {
                 andDo(print());
     }
 
+    @Test
+    void shouldDeleteFileWithItsChunksAndReturn204() throws Exception {
+        saveFile(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO);
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                andExpect(status().isOk());
+
+        mockMvc.perform(delete(URL_PATH + "/{fileName}", VALID_FILE_NAME_TWO)).
+                andExpect(status().isNoContent()).
+                andDo(print());
+
+        assertFalse(fileDatabaseRepository.existsByFileName(VALID_FILE_NAME_TWO));
+        assertEquals(0, fileChunkRepository.count());
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                andExpect(status().isNotFound());
+    }
+
+    //a download running while the delete is not committed yet still reads the file and caches it again
+    @Test
+    void shouldDropFileCachedByADownloadRunningBeforeTheDeleteCommitted() throws Exception {
+        saveFile(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertDoesNotThrow(() -> fileDatabaseService.delete(VALID_FILE_NAME_TWO));
+            MvcResult download = assertDoesNotThrow(() -> CompletableFuture.supplyAsync(() ->
+                    assertDoesNotThrow(() -> mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                            andExpect(status().isOk()).
+                            andReturn())).get());
+            assertArrayEquals(BINARY_DATA_TWO, download.getResponse().getContentAsByteArray());
+        });
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                andExpect(status().isNotFound());
+        assertEquals(0, fileDownloadCache.getStats().getEntryCount());
+    }
+
+    @Test
+    void shouldReturn404WhenFileNotFoundInDeleteFile() throws Exception {
+        mockMvc.perform(delete(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isNotFound()).
+                andExpect(jsonPath("$.error", is(FileNotFoundException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("File not found: " + VALID_FILE_NAME_ONE))).
+                andDo(print());
+    }
+
     @Test
     void shouldListAllFilesAndReturn200() throws Exception {
-        fileDatabaseRepository.save(new FileDatabaseEntity(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE.length, BINARY_DATA_ONE));
-        fileDatabaseRepository.save(new FileDatabaseEntity(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO.length, BINARY_DATA_TWO));
+        saveFile(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
+        saveFile(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO);
 
         mockMvc.perform(get(URL_PATH)).
                 andExpect(status().isOk()).
@@ -234,8 +464,705 @@ class FileDatabaseControllerTest {
                 andDo(print());
     }
 
+    @Test
+    void shouldListFilesPageByPageAndReturn200() throws Exception {
+        saveFile(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
+        saveFile(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO);
+
+        mockMvc.perform(get(URL_PATH).param("size", "1")).
+                andExpect(status().isOk()).
+                andExpect(header().string(FileDatabaseController.NEXT_CURSOR_HEADER, VALID_FILE_NAME_ONE)).
+                andExpect(jsonPath("$.length()", is(1))).
+                andExpect(jsonPath("$.[0].fileName", is(VALID_FILE_NAME_ONE))).
+                andExpect(jsonPath("$.[0].fileDownloadUri", endsWith(URL_PATH + "/download/" + VALID_FILE_NAME_ONE))).
+                andDo(print());
+
+        mockMvc.perform(get(URL_PATH).param("size", "1").param("cursor", VALID_FILE_NAME_ONE)).
+                andExpect(status().isOk()).
+                andExpect(header().doesNotExist(FileDatabaseController.NEXT_CURSOR_HEADER)).
+                andExpect(jsonPath("$.length()", is(1))).
+                andExpect(jsonPath("$.[0].fileName", is(VALID_FILE_NAME_TWO))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldUploadFileInChunksAndDownloadItBack() throws Exception {
+        byte[] binaryData = new byte[ONE_MB_IN_BYTES];
+        for(int i = 0; i < binaryData.length; i++)
+            binaryData[i] = (byte) i;
+        MockMultipartFile largeFile = new MockMultipartFile(FORM_NAME, VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, binaryData);
+
+        mockMvc.perform(multipart(URL_PATH + "/upload").
+                file(largeFile)).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.fileSize", is(FileUtils.humanReadableByteCountSI(binaryData.length)))).
+                andDo(print());
+
+        assertEquals((binaryData.length + CHUNK_SIZE - 1) / CHUNK_SIZE, fileChunkRepository.count());
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                andExpect(status().isOk()).
+                andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, binaryData.length)).
+                andExpect(content().bytes(binaryData));
+    }
+
+    @Test
+    void shouldDownloadRangeAcrossChunksAndReturn206() throws Exception {
+        byte[] binaryData = new byte[ONE_MB_IN_BYTES];
+        for(int i = 0; i < binaryData.length; i++)
+            binaryData[i] = (byte) (i % 251);
+        saveFile(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, binaryData);
+        int start = CHUNK_SIZE - 10;
+        int end = 2 * CHUNK_SIZE + 9;
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO).
+                header(HttpHeaders.RANGE, "bytes=" + start + "-" + end)).
+                andExpect(status().isPartialContent()).
+                andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes")).
+                andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + binaryData.length)).
+                andExpect(content().bytes(Arrays.copyOfRange(binaryData, start, end + 1)));
+    }
+
+    @Test
+    void shouldDownloadRangesAsMultipartAndReturn206() throws Exception {
+        saveFile(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.RANGE, "bytes=0-1,-3")).
+                andExpect(status().isPartialContent()).
+                andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/byteranges"))).
+                andExpect(content().string(containsString("Content-Range: bytes 0-1/" + BINARY_DATA_ONE.length))).
+                andExpect(content().string(containsString("Content-Range: bytes 7-9/" + BINARY_DATA_ONE.length))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldServeHotFileFromCacheAndInvalidateItOnUpload() throws Exception {
+        mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE).
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_ONE)).
+                andExpect(status().isOk());
+        DownloadCacheStatsDTO before = fileDownloadCache.getStats();
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isOk()).
+                andExpect(content().bytes(BINARY_DATA_ONE));
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.RANGE, "bytes=2-5")).
+                andExpect(status().isPartialContent()).
+                andExpect(content().bytes(Arrays.copyOfRange(BINARY_DATA_ONE, 2, 6)));
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        DownloadCacheStatsDTO after = fileDownloadCache.getStats();
+        assertEquals(1, after.getMissCount() - before.getMissCount());
+        assertEquals(1, after.getHitCount() - before.getHitCount());
+        assertEquals(1, after.getEntryCount());
+        assertEquals(BINARY_DATA_ONE.length, after.getByteSize());
+
+        fileDatabaseRepository.deleteAll();
+        fileChunkRepository.deleteAll();
+        mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE).
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_TWO)).
+                andExpect(status().isOk());
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isOk()).
+                andExpect(content().bytes(BINARY_DATA_TWO));
+    }
+
+    @Test
+    void shouldDownloadFilesWithPrefixAsZipArchiveWithOneMetadataQuery() throws Exception {
+        saveFile("testing_1.txt", MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
+        saveFile("testing_2.png", MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO);
+        //_ is a wildcard in like patterns, the prefix must still match it literally
+        saveFile("testingX.txt", MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        MvcResult result = mockMvc.perform(get(URL_PATH + "/archive").
+                param("prefix", "testing_")).
+                andExpect(status().isOk()).
+                andExpect(content().contentType("application/zip")).
+                andReturn();
+
+        Map<String, byte[]> entries = readZipEntries(result.getResponse().getContentAsByteArray());
+        assertEquals(List.of("testing_1.txt", "testing_2.png"), new ArrayList<>(entries.keySet()));
+        assertArrayEquals(BINARY_DATA_ONE, entries.get("testing_1.txt"));
+        assertArrayEquals(BINARY_DATA_TWO, entries.get("testing_2.png"));
+        //one query for all the metadata, then one per chunk read
+        assertEquals(1 + (BINARY_DATA_ONE.length + CHUNK_SIZE - 1) / CHUNK_SIZE + (BINARY_DATA_TWO.length + CHUNK_SIZE - 1) / CHUNK_SIZE,
+                statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void shouldDownloadNamedFilesAsZipArchiveOrReturn404() throws Exception {
+        saveFile(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
+        saveFile(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO);
+
+        MvcResult result = mockMvc.perform(get(URL_PATH + "/archive").
+                param("names", VALID_FILE_NAME_TWO, VALID_FILE_NAME_ONE)).
+                andExpect(status().isOk()).
+                andReturn();
+        assertEquals(List.of(VALID_FILE_NAME_TWO, VALID_FILE_NAME_ONE),
+                new ArrayList<>(readZipEntries(result.getResponse().getContentAsByteArray()).keySet()));
+
+        mockMvc.perform(get(URL_PATH + "/archive").
+                param("names", VALID_FILE_NAME_ONE, "missing.txt")).
+                andExpect(status().isNotFound()).
+                andExpect(jsonPath("$.message", is("File not found: missing.txt")));
+        mockMvc.perform(get(URL_PATH + "/archive").
+                param("names", INVALID_FILE_NAME)).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.message", is("Invalid file name: " + INVALID_FILE_NAME)));
+    }
+
+    @Test
+    void shouldExtractGzippedTarArchiveIntoDatabaseWithResultPerEntry() throws Exception {
+        mockMvc.perform(multipart(URL_PATH + "/upload").
+                file(validFile)).
+                andExpect(status().isOk());
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try(TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new GzipCompressorOutputStream(archive))) {
+            addTarEntry(tarOutputStream, VALID_FILE_NAME_TWO, BINARY_DATA_TWO);
+            addTarEntry(tarOutputStream, VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+            addTarEntry(tarOutputStream, "testing-three.txt", BINARY_DATA_ONE);
+        }
+
+        mockMvc.perform(post(URL_PATH + "/uploads/archive").
+                contentType("application/gzip").
+                content(archive.toByteArray())).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.length()", is(3))).
+                andExpect(jsonPath("$[0].fileName", is(VALID_FILE_NAME_TWO))).
+                andExpect(jsonPath("$[0].status", is("UPLOADED"))).
+                andExpect(jsonPath("$[0].fileDownloadUri", containsString(URL_PATH + "/download/" + VALID_FILE_NAME_TWO))).
+                andExpect(jsonPath("$[0].fileSize", is(FileUtils.humanReadableByteCountSI(BINARY_DATA_TWO.length)))).
+                andExpect(jsonPath("$[1].status", is("REJECTED"))).
+                andExpect(jsonPath("$[1].message", is("File already exists: " + VALID_FILE_NAME_ONE))).
+                andExpect(jsonPath("$[2].status", is("UPLOADED"))).
+                andDo(print());
+
+        assertEquals(3, fileDatabaseRepository.count());
+        MvcResult result = mockMvc.perform(get(URL_PATH + "/download/" + VALID_FILE_NAME_TWO)).
+                andExpect(status().isOk()).
+                andReturn();
+        assertArrayEquals(BINARY_DATA_TWO, result.getResponse().getContentAsByteArray());
+    }
+
+    @Test
+    void shouldReportDownloadCacheStats() throws Exception {
+        mockMvc.perform(get("/api/v1/download-cache")).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.policy", is("TINY_LFU"))).
+                andExpect(jsonPath("$.entryCount", is(0))).
+                andExpect(jsonPath("$.maxByteSize", is(64 * 1024 * 1024))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldRecordArchiveTransfersPerEntryAndCacheLookups() throws Exception {
+        long uploadedEntries = getSizeSummaryCount(FileTransferMetrics.ARCHIVE_UPLOAD);
+        long downloadedEntries = getSizeSummaryCount(FileTransferMetrics.ARCHIVE_DOWNLOAD);
+        double cacheHits = meterRegistry.get("file.cache.requests").tag("result", "hit").functionCounter().count();
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try(TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(archive)) {
+            addTarEntry(tarOutputStream, VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+            addTarEntry(tarOutputStream, VALID_FILE_NAME_TWO, BINARY_DATA_TWO);
+        }
+        mockMvc.perform(post(URL_PATH + "/uploads/archive").
+                contentType("application/x-tar").
+                content(archive.toByteArray())).
+                andExpect(status().isOk());
+        for(int i = 0; i < 2; i++)
+            mockMvc.perform(get(URL_PATH + "/archive").
+                    param("names", VALID_FILE_NAME_ONE, VALID_FILE_NAME_TWO)).
+                    andExpect(status().isOk());
+
+        //entries stored by the extraction workers count in the transfer of the request that sent them
+        assertEquals(2, getSizeSummaryCount(FileTransferMetrics.ARCHIVE_UPLOAD) - uploadedEntries);
+        assertEquals(4, getSizeSummaryCount(FileTransferMetrics.ARCHIVE_DOWNLOAD) - downloadedEntries);
+        assertTrue(meterRegistry.get("file.cache.requests").tag("result", "hit").functionCounter().count() > cacheHits);
+        assertEquals(fileDownloadCache.getStats().getEntryCount(), meterRegistry.get("file.cache.entries").gauge().value());
+    }
+
+    @Nested
+    @TestPropertySource(properties = {"file.cache.policy=lru", "file.cache.max-size=160KB", "file.cache.off-heap=true"})
+    class WithLruOffHeapCache {
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private FileDownloadCache fileDownloadCache;
+
+        @Test
+        void shouldEvictLeastRecentlyUsedFileWhenCacheIsFull() throws Exception {
+            byte[] binaryData = Arrays.copyOf(BINARY_DATA_TWO, 60 * 1024);
+            for(int i = 0; i < binaryData.length; i++)
+                binaryData[i] = (byte) (i % 253);
+
+            for(String fileName : new String[]{"testing-1.bin", "testing-2.bin", "testing-3.bin"})
+                mockMvc.perform(put(URL_PATH + "/{fileName}", fileName).
+                        contentType(MediaType.APPLICATION_OCTET_STREAM).
+                        content(binaryData)).
+                        andExpect(status().isOk());
+
+            for(String fileName : new String[]{"testing-1.bin", "testing-2.bin", "testing-1.bin", "testing-3.bin"})
+                mockMvc.perform(get(URL_PATH + "/download/{fileName}", fileName)).
+                        andExpect(status().isOk()).
+                        andExpect(content().bytes(binaryData));
+
+            DownloadCacheStatsDTO before = fileDownloadCache.getStats();
+            assertEquals("LRU", before.getPolicy());
+            assertTrue(before.isOffHeap());
+            assertEquals(2, before.getEntryCount());
+            assertEquals(1, before.getEvictionCount());
+
+            //testing-2 was the least recently used one, so it is the only one read again
+            for(String fileName : new String[]{"testing-1.bin", "testing-3.bin", "testing-2.bin"})
+                mockMvc.perform(get(URL_PATH + "/download/{fileName}", fileName)).
+                        andExpect(status().isOk()).
+                        andExpect(content().bytes(binaryData));
+            DownloadCacheStatsDTO after = fileDownloadCache.getStats();
+            assertEquals(2, after.getHitCount() - before.getHitCount());
+            assertEquals(1, after.getMissCount() - before.getMissCount());
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = "file.database.deduplication-enabled=true")
+    class WithDeduplication {
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private FileDatabaseService fileDatabaseService;
+
+        @Autowired
+        private PlatformTransactionManager transactionManager;
+
+        @Autowired
+        private FileDatabaseRepository fileDatabaseRepository;
+
+        @Autowired
+        private FileChunkRepository fileChunkRepository;
+
+        @BeforeEach
+        void setup() {
+            fileDatabaseRepository.deleteAll();
+            fileChunkRepository.deleteAll();
+        }
+
+        @Test
+        void shouldStoreSameContentOnceAndDownloadItUnderEveryName() throws Exception {
+            byte[] binaryData = new byte[ONE_MB_IN_BYTES];
+            for(int i = 0; i < binaryData.length; i++)
+                binaryData[i] = (byte) i;
+
+            mockMvc.perform(multipart(URL_PATH + "/uploads").
+                    file(new MockMultipartFile("files", VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, binaryData)).
+                    file(new MockMultipartFile("files", VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, binaryData))).
+                    andExpect(status().isOk());
+
+            assertEquals((binaryData.length + CHUNK_SIZE - 1) / CHUNK_SIZE, fileChunkRepository.count());
+            assertEquals(fileDatabaseRepository.findByFileName(VALID_FILE_NAME_ONE).get().getContentHash(),
+                    fileDatabaseRepository.findByFileName(VALID_FILE_NAME_TWO).get().getContentHash());
+
+            for(String fileName : new String[]{VALID_FILE_NAME_ONE, VALID_FILE_NAME_TWO})
+                mockMvc.perform(get(URL_PATH + "/download/{fileName}", fileName)).
+                        andExpect(status().isOk()).
+                        andExpect(content().bytes(binaryData));
+        }
+
+        @Test
+        void shouldKeepSharedChunksUntilTheLastFileHoldingThemIsDeleted() throws Exception {
+            byte[] binaryData = new byte[ONE_MB_IN_BYTES];
+            for(int i = 0; i < binaryData.length; i++)
+                binaryData[i] = (byte) i;
+
+            mockMvc.perform(multipart(URL_PATH + "/uploads").
+                    file(new MockMultipartFile("files", VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, binaryData)).
+                    file(new MockMultipartFile("files", VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, binaryData))).
+                    andExpect(status().isOk());
+            long chunkCount = fileChunkRepository.count();
+
+            //the first file owns the chunks the second one points to
+            mockMvc.perform(delete(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE)).
+                    andExpect(status().isNoContent());
+            assertEquals(chunkCount, fileChunkRepository.count());
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(binaryData));
+
+            mockMvc.perform(delete(URL_PATH + "/{fileName}", VALID_FILE_NAME_TWO)).
+                    andExpect(status().isNoContent());
+            assertEquals(0, fileChunkRepository.count());
+        }
+
+        //the deletion waits for the upload that pointed to the chunks, then finds it still holds them
+        @Test
+        void shouldKeepChunksAnUploadPointedToWhileTheirLastFileWasDeleted() throws Exception {
+            byte[] binaryData = toSharedData();
+            mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE).
+                    contentType(MediaType.APPLICATION_OCTET_STREAM).
+                    content(binaryData)).
+                    andExpect(status().isOk());
+            long chunkCount = fileChunkRepository.count();
+
+            CompletableFuture<?> deletion = new TransactionTemplate(transactionManager).execute(status -> {
+                fileDatabaseService.put(VALID_FILE_NAME_TWO, new ByteArrayInputStream(binaryData));
+                CompletableFuture<?> pendingDeletion = CompletableFuture.runAsync(() ->
+                        assertDoesNotThrow(() -> mockMvc.perform(delete(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE)).
+                                andExpect(status().isNoContent())));
+                assertThrows(TimeoutException.class, () -> pendingDeletion.get(500, TimeUnit.MILLISECONDS));
+                return pendingDeletion;
+            });
+            deletion.get();
+
+            assertEquals(chunkCount, fileChunkRepository.count());
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(binaryData));
+        }
+
+        //the upload waits for the deletion of the last file holding the same content, then keeps its own chunks
+        @Test
+        void shouldKeepOwnChunksWhenTheFileHoldingTheSameContentIsDeletedMeanwhile() throws Exception {
+            byte[] binaryData = toSharedData();
+            mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE).
+                    contentType(MediaType.APPLICATION_OCTET_STREAM).
+                    content(binaryData)).
+                    andExpect(status().isOk());
+            long chunkCount = fileChunkRepository.count();
+
+            CompletableFuture<?> upload = new TransactionTemplate(transactionManager).execute(status -> {
+                assertDoesNotThrow(() -> fileDatabaseService.delete(VALID_FILE_NAME_ONE));
+                CompletableFuture<?> pendingUpload = CompletableFuture.runAsync(() ->
+                        assertDoesNotThrow(() -> mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_TWO).
+                                        contentType(MediaType.APPLICATION_OCTET_STREAM).
+                                        content(binaryData)).
+                                andExpect(status().isOk())));
+                assertThrows(TimeoutException.class, () -> pendingUpload.get(500, TimeUnit.MILLISECONDS));
+                return pendingUpload;
+            });
+            upload.get();
+
+            assertEquals(chunkCount, fileChunkRepository.count());
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(binaryData));
+        }
+
+        private static byte[] toSharedData() {
+            byte[] binaryData = new byte[3 * CHUNK_SIZE + 7];
+            for(int i = 0; i < binaryData.length; i++)
+                binaryData[i] = (byte) (i % 251);
+            return binaryData;
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = "file.compression.enabled=true")
+    class WithCompression {
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private FileDatabaseRepository fileDatabaseRepository;
+
+        @Autowired
+        private FileChunkRepository fileChunkRepository;
+
+        @Autowired
+        private FileDownloadCache fileDownloadCache;
+
+        private static final String TEXT_FILE_NAME = "testing.csv";
+
+        @BeforeEach
+        void setup() {
+            fileDownloadCache.clear();
+        }
+
+        @Test
+        void shouldStoreCompressibleFileGzippedAndNegotiateItsEncoding() throws Exception {
+            byte[] textData = toTextData(50000);
+            mockMvc.perform(put(URL_PATH + "/{fileName}", TEXT_FILE_NAME).
+                    contentType(MediaType.APPLICATION_OCTET_STREAM).
+                    content(textData)).
+                    andExpect(status().isOk()).
+                    andExpect(jsonPath("$.fileSize", is(FileUtils.humanReadableByteCountSI(textData.length))));
+
+            FileDatabaseEntity storedFile = fileDatabaseRepository.findByFileName(TEXT_FILE_NAME).get();
+            assertEquals("gzip", storedFile.getContentEncoding());
+            assertEquals(textData.length, storedFile.getFileByteSize());
+            assertTrue(storedFile.getEncodedByteSize() < textData.length / 4);
+            assertEquals((storedFile.getEncodedByteSize() + CHUNK_SIZE - 1) / CHUNK_SIZE, fileChunkRepository.count());
+
+            byte[] encodedData = mockMvc.perform(get(URL_PATH + "/download/{fileName}", TEXT_FILE_NAME).
+                    header(HttpHeaders.ACCEPT_ENCODING, "x-gzip")).
+                    andExpect(status().isOk()).
+                    andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip")).
+                    andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)).
+                    andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, storedFile.getEncodedByteSize())).
+                    andExpect(header().string(HttpHeaders.ETAG, "\"" + storedFile.getContentHash() + "-gzip\"")).
+                    andReturn().getResponse().getContentAsByteArray();
+            assertArrayEquals(textData, gunzip(encodedData));
+
+            //served from the cache, which holds the encoded bytes and decodes them for this client
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", TEXT_FILE_NAME).
+                    header(HttpHeaders.ACCEPT_ENCODING, "identity")).
+                    andExpect(status().isOk()).
+                    andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING)).
+                    andExpect(header().string(HttpHeaders.ETAG, "\"" + storedFile.getContentHash() + "\"")).
+                    andExpect(content().bytes(textData));
+            assertEquals(1, fileDownloadCache.getStats().getEntryCount());
+            assertEquals(storedFile.getEncodedByteSize(), fileDownloadCache.getStats().getByteSize());
+        }
+
+        @Test
+        void shouldKeepIncompressibleFileAsItIs() throws Exception {
+            mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_TWO).
+                    contentType(MediaType.APPLICATION_OCTET_STREAM).
+                    content(BINARY_DATA_TWO)).
+                    andExpect(status().isOk());
+
+            FileDatabaseEntity storedFile = fileDatabaseRepository.findByFileName(VALID_FILE_NAME_TWO).get();
+            assertNull(storedFile.getContentEncoding());
+            assertNull(storedFile.getEncodedByteSize());
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO).
+                    header(HttpHeaders.ACCEPT_ENCODING, "gzip")).
+                    andExpect(status().isOk()).
+                    andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING)).
+                    andExpect(content().bytes(BINARY_DATA_TWO));
+        }
+
+        //the type detected from the content decides, whatever the extension says
+        @Test
+        void shouldDecideCompressionFromDetectedType() throws Exception {
+            byte[] textData = toTextData(1000);
+            byte[] pngData = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0x00};
+            mockMvc.perform(put(URL_PATH + "/{fileName}", "testing-text.bin").
+                    contentType(MediaType.APPLICATION_OCTET_STREAM).
+                    content(textData)).
+                    andExpect(status().isOk());
+            mockMvc.perform(put(URL_PATH + "/{fileName}", "testing-image.txt").
+                    contentType(MediaType.APPLICATION_OCTET_STREAM).
+                    content(pngData)).
+                    andExpect(status().isOk());
+
+            assertEquals("gzip", fileDatabaseRepository.findByFileName("testing-text.bin").get().getContentEncoding());
+            assertNull(fileDatabaseRepository.findByFileName("testing-image.txt").get().getContentEncoding());
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = {"file.database.tiering.enabled=true", "file.database.tiering.threshold=64KB",
+            "file.database.tiering.directory=testing-tiered", "file.database.tiering.mover-interval=0s",
+            "file.database.tiering.grace-period=3s"})
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    class WithTiering {
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private FileDatabaseRepository fileDatabaseRepository;
+
+        @Autowired
+        private FileChunkRepository fileChunkRepository;
+
+        @Autowired
+        private FileDownloadCache fileDownloadCache;
+
+        @Autowired
+        private FileTieringConfig fileTieringConfig;
+
+        @Autowired
+        private FileTierMover fileTierMover;
+
+        @Autowired
+        private FileDatabaseService fileDatabaseService;
+
+        private Path tierDirectory;
+
+        @BeforeEach
+        void setup() throws IOException {
+            tierDirectory = Paths.get(fileTieringConfig.getDirectory()).toAbsolutePath().normalize();
+            //downloads of the tests before are saved to their rows, so they are not taken for ones of the new files
+            fileDatabaseService.saveAccessTimes();
+            fileDatabaseRepository.deleteAll();
+            fileChunkRepository.deleteAll();
+            fileDownloadCache.clear();
+            FileSystemUtils.deleteRecursively(tierDirectory);
+            Files.createDirectories(tierDirectory);
+        }
+
+        @AfterAll
+        void after() throws IOException {
+            FileSystemUtils.deleteRecursively(tierDirectory);
+        }
+
+        @Test
+        void shouldStoreLargeFilesInTheTierAndSmallOnesInTheDatabase() throws Exception {
+            mockMvc.perform(multipart(URL_PATH + "/uploads").
+                    file(new MockMultipartFile("files", VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE)).
+                    file(new MockMultipartFile("files", VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO))).
+                    andExpect(status().isOk());
+
+            assertNull(fileDatabaseRepository.findByFileName(VALID_FILE_NAME_ONE).get().getTierLocation());
+            String tierLocation = fileDatabaseRepository.findByFileName(VALID_FILE_NAME_TWO).get().getTierLocation();
+            assertNotNull(tierLocation);
+            assertEquals(BINARY_DATA_TWO.length, Files.size(tierDirectory.resolve(tierLocation)));
+            assertEquals(1, fileChunkRepository.count());
+
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_ONE));
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_TWO));
+
+            mockMvc.perform(delete(URL_PATH + "/{fileName}", VALID_FILE_NAME_TWO)).
+                    andExpect(status().isNoContent());
+            assertFalse(Files.exists(tierDirectory.resolve(tierLocation)));
+        }
+
+        @Test
+        void shouldMoveFilesStoredInTheWrongTierForTheirSize() throws Exception {
+            FileDatabaseEntity largeFile = fileDatabaseRepository.save(
+                    new FileDatabaseEntity(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO.length, CHUNK_SIZE));
+            for(int sequence = 0; sequence * CHUNK_SIZE < BINARY_DATA_TWO.length; sequence++)
+                fileChunkRepository.save(new FileChunkEntity(largeFile.getId(), sequence, Arrays.copyOfRange(BINARY_DATA_TWO,
+                        sequence * CHUNK_SIZE, Math.min((sequence + 1) * CHUNK_SIZE, BINARY_DATA_TWO.length))));
+
+            FileDatabaseEntity smallFile = new FileDatabaseEntity(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE,
+                    BINARY_DATA_ONE.length, CHUNK_SIZE);
+            smallFile.setTierLocation("te/" + VALID_FILE_NAME_ONE);
+            fileDatabaseRepository.save(smallFile);
+            Files.createDirectories(tierDirectory.resolve("te"));
+            Files.write(tierDirectory.resolve(smallFile.getTierLocation()), BINARY_DATA_ONE);
+
+            assertEquals(2, fileTierMover.moveFiles());
+            assertEquals(0, fileTierMover.moveFiles());
+
+            String tierLocation = fileDatabaseRepository.findByFileName(VALID_FILE_NAME_TWO).get().getTierLocation();
+            assertNotNull(tierLocation);
+            assertEquals(BINARY_DATA_TWO.length, Files.size(tierDirectory.resolve(tierLocation)));
+            assertNull(fileDatabaseRepository.findByFileName(VALID_FILE_NAME_ONE).get().getTierLocation());
+            assertFalse(Files.exists(tierDirectory.resolve(smallFile.getTierLocation())));
+            assertEquals(1, fileChunkRepository.count());
+
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_ONE));
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_TWO));
+        }
+
+        @Test
+        void shouldMoveSmallFilesOutWhenColdAndBackWhenDownloadedAgain() throws Exception {
+            FileDatabaseEntity file = new FileDatabaseEntity(VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE,
+                    BINARY_DATA_ONE.length, CHUNK_SIZE);
+            file.setLastModifiedTime(Instant.now().minus(Duration.ofDays(31)));
+            file = fileDatabaseRepository.save(file);
+            fileChunkRepository.save(new FileChunkEntity(file.getId(), 0, BINARY_DATA_ONE));
+
+            assertEquals(1, fileTierMover.moveFiles());
+            String tierLocation = fileDatabaseRepository.findByFileName(VALID_FILE_NAME_ONE).get().getTierLocation();
+            assertNotNull(tierLocation);
+            assertArrayEquals(BINARY_DATA_ONE, Files.readAllBytes(tierDirectory.resolve(tierLocation)));
+            assertEquals(0, fileChunkRepository.count());
+
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_ONE));
+            assertEquals(1, fileTierMover.moveFiles());
+            FileDatabaseEntity movedFile = fileDatabaseRepository.findByFileName(VALID_FILE_NAME_ONE).get();
+            assertNull(movedFile.getTierLocation());
+            assertNotNull(movedFile.getLastAccessTime());
+            assertFalse(Files.exists(tierDirectory.resolve(tierLocation)));
+            assertEquals(1, fileChunkRepository.count());
+            assertEquals(0, fileTierMover.moveFiles());
+        }
+
+        @Test
+        void shouldKeepTheChunksForDownloadsStartedBeforeTheFileMovedOut() throws Exception {
+            FileDatabaseEntity file = fileDatabaseRepository.save(
+                    new FileDatabaseEntity(VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO.length, CHUNK_SIZE));
+            for(int sequence = 0; sequence * CHUNK_SIZE < BINARY_DATA_TWO.length; sequence++)
+                fileChunkRepository.save(new FileChunkEntity(file.getId(), sequence, Arrays.copyOfRange(BINARY_DATA_TWO,
+                        sequence * CHUNK_SIZE, Math.min((sequence + 1) * CHUNK_SIZE, BINARY_DATA_TWO.length))));
+            DownloadedFileDTO download = fileDatabaseService.get(VALID_FILE_NAME_TWO).get();
+
+            CompletableFuture<Integer> movedFiles = CompletableFuture.supplyAsync(fileTierMover::moveFiles);
+            for(int i = 0; i < 100 && fileDatabaseRepository.findByFileName(VALID_FILE_NAME_TWO).get().getTierLocation() == null; i++)
+                Thread.sleep(20);
+            assertNotNull(fileDatabaseRepository.findByFileName(VALID_FILE_NAME_TWO).get().getTierLocation());
+            try(InputStream inputStream = download.getResource().getInputStream()) {
+                assertArrayEquals(BINARY_DATA_TWO, inputStream.readAllBytes());
+            }
+
+            assertEquals(1, movedFiles.get(10, TimeUnit.SECONDS));
+            assertEquals(0, fileChunkRepository.count());
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_TWO));
+        }
+    }
+
+    private static byte[] toTextData(int lines) {
+        StringBuilder text = new StringBuilder("id,name,value\n");
+        for(int i = 0; i < lines; i++)
+            text.append(i).append(",name-").append(i % 100).append(',').append(i * 7 % 1000).append('\n');
+        return text.toString().getBytes();
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try(GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gzipInputStream.readAllBytes();
+        }
+    }
+
+    private long getSizeSummaryCount(String operation) {
+        DistributionSummary summary = meterRegistry.find("file.transfer.size").
+                tags("backend", FileTransferMetrics.IN_DATABASE, "operation", operation).
+                summary();
+        return summary == null ? 0 : summary.count();
+    }
+
+    private static void addTarEntry(TarArchiveOutputStream tarOutputStream, String fileName, byte[] binaryData) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(fileName);
+        entry.setSize(binaryData.length);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.write(binaryData);
+        tarOutputStream.closeArchiveEntry();
+    }
+
+    private static Map<String, byte[]> readZipEntries(byte[] archive) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try(ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while((entry = zipInputStream.getNextEntry()) != null)
+                entries.put(entry.getName(), zipInputStream.readAllBytes());
+        }
+        return entries;
+    }
+
     private void init() {
         validFile = new MockMultipartFile(FORM_NAME, VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
         invalidFile = new MockMultipartFile(FORM_NAME, INVALID_FILE_NAME, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
     }
+
+    private void saveFile(String fileName, String fileType, byte[] binaryData) {
+        FileDatabaseEntity file = fileDatabaseRepository.save(new FileDatabaseEntity(fileName, fileType, binaryData.length, CHUNK_SIZE));
+
+        for(int sequence = 0; sequence * CHUNK_SIZE < binaryData.length; sequence++) {
+            byte[] data = Arrays.copyOfRange(binaryData, sequence * CHUNK_SIZE, Math.min((sequence + 1) * CHUNK_SIZE, binaryData.length));
+            fileChunkRepository.save(new FileChunkEntity(file.getId(), sequence, data));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+package com.soaresdev.uploaddownloadapi.controllers.v1;
+
+import com.jayway.jsonpath.JsonPath;
+import com.soaresdev.uploaddownloadapi.configs.FileMigrationConfig;
+import com.soaresdev.uploaddownloadapi.configs.FileSystemConfig;
+import com.soaresdev.uploaddownloadapi.repositories.FileChunkRepository;
+import com.soaresdev.uploaddownloadapi.repositories.FileDatabaseRepository;
+import com.soaresdev.uploaddownloadapi.services.FileDownloadCache;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.util.FileSystemUtils;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {"file.upload-directory=testing-migration", "file.migration.threads=2",
+        "file.migration.batch-size=2", "file.migration.checkpoint-directory=testing-migration-checkpoints"})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class FileStorageMigrationControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FileSystemConfig fileSystemConfig;
+
+    @Autowired
+    private FileMigrationConfig fileMigrationConfig;
+
+    @Autowired
+    private FileDatabaseRepository fileDatabaseRepository;
+
+    @Autowired
+    private FileChunkRepository fileChunkRepository;
+
+    @Autowired
+    private FileDownloadCache fileDownloadCache;
+
+    private Path uploadDirectory;
+    private Path checkpointDirectory;
+
+    private static final String URL_PATH = "/api/v1/migration";
+    private static final String IN_SYSTEM_PATH = "/api/v1/in-system/files";
+    private static final String IN_DATABASE_PATH = "/api/v1/in-database/files";
+    private static final int FILE_COUNT = 5;
+
+    @BeforeEach
+    void setup() throws Exception {
+        uploadDirectory = Paths.get(fileSystemConfig.getUploadDirectory()).toAbsolutePath().normalize();
+        checkpointDirectory = Paths.get(fileMigrationConfig.getCheckpointDirectory()).toAbsolutePath().normalize();
+        for(int i = 1; i <= FILE_COUNT; i++) {
+            mockMvc.perform(delete(IN_SYSTEM_PATH + "/{fileName}", getFileName(i)));
+            mockMvc.perform(delete(IN_DATABASE_PATH + "/{fileName}", getFileName(i)));
+        }
+        fileDatabaseRepository.deleteAll();
+        fileChunkRepository.deleteAll();
+        fileDownloadCache.clear();
+        FileSystemUtils.deleteRecursively(checkpointDirectory);
+    }
+
+    @AfterAll
+    void after() throws Exception {
+        FileSystemUtils.deleteRecursively(uploadDirectory);
+        FileSystemUtils.deleteRecursively(checkpointDirectory);
+    }
+
+    @Test
+    void shouldCopyEveryFileToTheTargetAndSkipThemOnTheNextMigration() throws Exception {
+        long byteSize = 0;
+        for(int i = 1; i <= FILE_COUNT; i++) {
+            upload(IN_SYSTEM_PATH, i);
+            byteSize += getData(i).length;
+        }
+
+        startMigration("in-system", "in-database").
+                andExpect(status().isAccepted()).
+                andExpect(jsonPath("$.source", is("in-system"))).
+                andExpect(jsonPath("$.target", is("in-database")));
+        awaitMigration().
+                andExpect(jsonPath("$.state", is("COMPLETED"))).
+                andExpect(jsonPath("$.copiedFiles", is(FILE_COUNT))).
+                andExpect(jsonPath("$.skippedFiles", is(0))).
+                andExpect(jsonPath("$.failedFiles", is(0))).
+                andExpect(jsonPath("$.copiedBytes", is((int) byteSize))).
+                andExpect(jsonPath("$.message", nullValue()));
+
+        for(int i = 1; i <= FILE_COUNT; i++)
+            mockMvc.perform(get(IN_DATABASE_PATH + "/download/{fileName}", getFileName(i))).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(getData(i)));
+        assertFalse(Files.exists(checkpointDirectory.resolve("in-system-to-in-database")));
+
+        startMigration("in-system", "in-database").
+                andExpect(status().isAccepted());
+        awaitMigration().
+                andExpect(jsonPath("$.state", is("COMPLETED"))).
+                andExpect(jsonPath("$.copiedFiles", is(0))).
+                andExpect(jsonPath("$.skippedFiles", is(FILE_COUNT)));
+    }
+
+    @Test
+    void shouldResumeFromTheCheckpointOfTheLastMigration() throws Exception {
+        for(int i = 1; i <= FILE_COUNT; i++)
+            upload(IN_DATABASE_PATH, i);
+        Files.createDirectories(checkpointDirectory);
+        Files.writeString(checkpointDirectory.resolve("in-database-to-in-system"), getFileName(2));
+
+        startMigration("in-database", "in-system").
+                andExpect(status().isAccepted()).
+                andExpect(jsonPath("$.checkpoint", is(getFileName(2))));
+        awaitMigration().
+                andExpect(jsonPath("$.state", is("COMPLETED"))).
+                andExpect(jsonPath("$.copiedFiles", is(FILE_COUNT - 2)));
+
+        for(int i = 1; i <= FILE_COUNT; i++)
+            mockMvc.perform(get(IN_SYSTEM_PATH + "/download/{fileName}", getFileName(i))).
+                    andExpect(i <= 2 ? status().isNotFound() : status().isOk());
+    }
+
+    @Test
+    void shouldKeepTheCheckpointBeforeAFileThatCouldNotBeCopied() throws Exception {
+        for(int i = 1; i <= FILE_COUNT; i++)
+            upload(IN_SYSTEM_PATH, i);
+        mockMvc.perform(multipart(IN_DATABASE_PATH + "/upload").
+                        file(new MockMultipartFile("file", getFileName(3), null, "a different file".getBytes()))).
+                andExpect(status().isOk());
+
+        startMigration("in-system", "in-database").
+                andExpect(status().isAccepted());
+        awaitMigration().
+                andExpect(jsonPath("$.state", is("COMPLETED"))).
+                andExpect(jsonPath("$.copiedFiles", is(FILE_COUNT - 1))).
+                andExpect(jsonPath("$.failedFiles", is(1))).
+                andExpect(jsonPath("$.checkpoint", is(getFileName(2)))).
+                andExpect(jsonPath("$.message", containsString(getFileName(3))));
+        assertEquals(getFileName(2), Files.readString(checkpointDirectory.resolve("in-system-to-in-database")));
+
+        mockMvc.perform(delete(IN_DATABASE_PATH + "/{fileName}", getFileName(3))).
+                andExpect(status().isNoContent());
+        startMigration("in-system", "in-database").
+                andExpect(status().isAccepted());
+        awaitMigration().
+                andExpect(jsonPath("$.state", is("COMPLETED"))).
+                andExpect(jsonPath("$.copiedFiles", is(1))).
+                andExpect(jsonPath("$.skippedFiles", is(FILE_COUNT - 3))).
+                andExpect(jsonPath("$.failedFiles", is(0)));
+        assertFalse(Files.exists(checkpointDirectory.resolve("in-system-to-in-database")));
+        mockMvc.perform(get(IN_DATABASE_PATH + "/download/{fileName}", getFileName(3))).
+                andExpect(status().isOk()).
+                andExpect(content().bytes(getData(3)));
+    }
+
+    @Test
+    void shouldReturn409WhenBackendIsUnknownOrTheSame() throws Exception {
+        startMigration("in-system", "in-system").
+                andExpect(status().isConflict());
+        startMigration("in-system", "in-cloud").
+                andExpect(status().isConflict());
+    }
+
+    private ResultActions startMigration(String source, String target) throws Exception {
+        return mockMvc.perform(post(URL_PATH).param("source", source).param("target", target));
+    }
+
+    private ResultActions awaitMigration() throws Exception {
+        String state = "RUNNING";
+        for(int i = 0; i < 200 && state.equals("RUNNING"); i++) {
+            Thread.sleep(50);
+            MvcResult result = mockMvc.perform(get(URL_PATH)).andExpect(status().isOk()).andReturn();
+            state = JsonPath.read(result.getResponse().getContentAsString(), "$.state");
+        }
+        return mockMvc.perform(get(URL_PATH)).andExpect(status().isOk());
+    }
+
+    private void upload(String filesPath, int i) throws Exception {
+        mockMvc.perform(multipart(filesPath + "/upload").
+                        file(new MockMultipartFile("file", getFileName(i), null, getData(i)))).
+                andExpect(status().isOk());
+    }
+
+    private static String getFileName(int i) {
+        return "testing-migration-" + i + ".bin";
+    }
+
+    //files of different sizes, the last one spans several database chunks
+    private static byte[] getData(int i) {
+        byte[] data = new byte[i == FILE_COUNT ? 3 * 1024 * 1024 + 7 : i * 1000];
+        for(int j = 0; j < data.length; j++)
+            data[j] = (byte) ((j + i) % 251);
+        return data;
+    }
+}
@@ -1,13 +1,23 @@
 package com.soaresdev.uploaddownloadapi.controllers.v1;
 
+import com.jayway.jsonpath.JsonPath;
 import com.soaresdev.uploaddownloadapi.configs.FileSystemConfig;
+import com.soaresdev.uploaddownloadapi.dtos.DownloadCacheStatsDTO;
 import com.soaresdev.uploaddownloadapi.exceptions.FileDownloadException;
 import com.soaresdev.uploaddownloadapi.exceptions.FileInternalErrorException;
 import com.soaresdev.uploaddownloadapi.exceptions.FileNotFoundException;
 import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import com.soaresdev.uploaddownloadapi.services.FileDownloadCache;
+import com.soaresdev.uploaddownloadapi.services.FileTransferMetrics;
 import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,17 +26,40 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
 import org.springframework.util.FileSystemUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.Matchers.matchesRegex;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -45,6 +78,12 @@ class FileSystemControllerTest {
     @Autowired
     private FileSystemConfig fileSystemConfig;
 
+    @Autowired
+    private FileDownloadCache fileDownloadCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private Path uploadDirectory;
 
     private static final String URL_PATH = "/api/v1/in-system/files";
@@ -55,14 +94,16 @@ class FileSystemControllerTest {
     private static final int ONE_MB_IN_BYTES = 1000000;
     private static final byte[] BINARY_DATA_ONE = "testing...".getBytes();
     private static final byte[] BINARY_DATA_TWO = new byte[ONE_MB_IN_BYTES];
+    private static final Duration INDEX_WATCH_TIMEOUT = Duration.ofSeconds(5);
 
     private MockMultipartFile validFile;
     private MockMultipartFile invalidFile;
 
     @BeforeEach
-    void setup() throws IOException {
+    void setup() throws Exception {
         uploadDirectory = Paths.get(fileSystemConfig.getUploadDirectory()).toAbsolutePath().normalize();
         cleanup();
+        awaitEmptyIndex(mockMvc);
         init();
     }
 
@@ -83,7 +124,37 @@ class FileSystemControllerTest {
                 andExpect(jsonPath("$.fileSize", is(FileUtils.humanReadableByteCountSI(BINARY_DATA_ONE.length)))).
                 andDo(print());
 
-        assertEquals(1, Files.list(uploadDirectory).count());
+        assertEquals(1, countStoredFiles());
+    }
+
+    //files being written stay out of the directory the index watches until they are moved in
+    @Test
+    void shouldStageUploadsOutsideTheIndexedDirectory() throws Exception {
+        mockMvc.perform(multipart(URL_PATH + "/upload").
+                file(validFile)).
+                andExpect(status().isOk());
+        mockMvc.perform(multipart(URL_PATH + "/uploads").
+                file(new MockMultipartFile("files", VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO))).
+                andExpect(status().isOk());
+
+        try(Stream<Path> files = Files.list(uploadDirectory)) {
+            assertEquals(List.of(VALID_FILE_NAME_ONE, VALID_FILE_NAME_TWO), files.filter(Files::isRegularFile).
+                    map(file -> file.getFileName().toString()).sorted().toList());
+        }
+        try(Stream<Path> stagedFiles = Files.list(uploadDirectory.resolve(".staging"))) {
+            assertEquals(0, stagedFiles.count());
+        }
+    }
+
+    @Test
+    void shouldBuildDownloadUriFromFilesPathWhateverTheFileName() throws Exception {
+        mockMvc.perform(multipart(URL_PATH + "/uploads").
+                file(new MockMultipartFile("files", "uploads-upload.txt", MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE))).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.[0].fileDownloadUri", is("http://localhost" + URL_PATH + "/download/uploads-upload.txt")));
+        mockMvc.perform(get(URL_PATH)).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.[0].fileDownloadUri", is("http://localhost" + URL_PATH + "/download/uploads-upload.txt")));
     }
 
     @Test
@@ -101,7 +172,7 @@ class FileSystemControllerTest {
                 andExpect(jsonPath("$.path", is(URL_PATH + "/upload"))).
                 andDo(print());
 
-        assertEquals(0, Files.list(uploadDirectory).count());
+        assertEquals(0, countStoredFiles());
     }
 
     @Test
@@ -121,7 +192,7 @@ class FileSystemControllerTest {
                 andExpect(jsonPath("$.path", is(URL_PATH + "/upload"))).
                 andDo(print());
 
-        assertEquals(1, Files.list(uploadDirectory).count());
+        assertEquals(1, countStoredFiles());
     }
 
     @Test
@@ -163,7 +234,7 @@ class FileSystemControllerTest {
                 andExpect(jsonPath("$.[1].fileSize", is(FileUtils.humanReadableByteCountSI(BINARY_DATA_TWO.length)))).
                 andDo(print());
 
-        assertEquals(2, Files.list(uploadDirectory).count());
+        assertEquals(2, countStoredFiles());
     }
 
     @Test
@@ -185,7 +256,7 @@ class FileSystemControllerTest {
                 andExpect(jsonPath("$.path", is(URL_PATH + "/uploads"))).
                 andDo(print());
 
-        assertEquals(0, Files.list(uploadDirectory).count());
+        assertEquals(0, countStoredFiles());
     }
 
     @Test
@@ -208,7 +279,39 @@ class FileSystemControllerTest {
                 andExpect(jsonPath("$.path", is(URL_PATH + "/uploads"))).
                 andDo(print());
 
-        assertEquals(1, Files.list(uploadDirectory).count());
+        assertEquals(1, countStoredFiles());
+    }
+
+    @Test
+    void shouldUploadManyFilesInParallelAndReturn200() throws Exception {
+        MockMultipartHttpServletRequestBuilder request = multipart(URL_PATH + "/uploads");
+        for(int i = 0; i < 24; i++)
+            request.file(new MockMultipartFile("files", "testing-" + i + ".bin", MediaType.APPLICATION_OCTET_STREAM_VALUE, BINARY_DATA_TWO));
+
+        mockMvc.perform(request).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.length()", is(24))).
+                andExpect(jsonPath("$.[23].fileName", is("testing-23.bin"))).
+                andDo(print());
+
+        assertEquals(24, countStoredFiles());
+        assertEquals(BINARY_DATA_TWO.length, Files.size(uploadDirectory.resolve("testing-23.bin")));
+    }
+
+    @Test
+    void shouldReturn400AndWriteNothingWhenFileNameIsRepeatedInUploadFiles() throws Exception {
+        String formName = "files";
+        MockMultipartFile validFile = new MockMultipartFile(formName, VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
+
+        mockMvc.perform(multipart(URL_PATH + "/uploads").
+                file(validFile).file(validFile)).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.error",
+                        is(FileUploadException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("Duplicate file name: " + VALID_FILE_NAME_ONE))).
+                andDo(print());
+
+        assertEquals(0, countStoredFiles());
     }
 
     @Test
@@ -233,6 +336,72 @@ class FileSystemControllerTest {
                 andDo(print());
     }
 
+    @Test
+    void shouldPutFileAndReturn200() throws Exception {
+        mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE).
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_ONE)).
+                andExpect(status().isOk()).
+                andExpect(content().contentType(MediaType.APPLICATION_JSON)).
+                andExpect(jsonPath("$.fileName", is(VALID_FILE_NAME_ONE))).
+                andExpect(jsonPath("$.fileDownloadUri", endsWith(URL_PATH + "/download/" + VALID_FILE_NAME_ONE))).
+                andExpect(jsonPath("$.fileType", is(MediaType.TEXT_PLAIN_VALUE))).
+                andExpect(jsonPath("$.fileSize", is(FileUtils.humanReadableByteCountSI(BINARY_DATA_ONE.length)))).
+                andDo(print());
+
+        assertArrayEquals(BINARY_DATA_ONE, Files.readAllBytes(uploadDirectory.resolve(VALID_FILE_NAME_ONE)));
+    }
+
+    @Test
+    void shouldDetectFileTypeFromContentOnceAtUpload() throws Exception {
+        byte[] pngData = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0x00};
+        byte[] jpegData = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x00};
+
+        mockMvc.perform(put(URL_PATH + "/{fileName}", "picture.bin").
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(pngData)).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.fileType", is(MediaType.IMAGE_PNG_VALUE)));
+        //the type sent by the client and the extension both lose against the content
+        mockMvc.perform(multipart(URL_PATH + "/upload").
+                file(new MockMultipartFile(FORM_NAME, VALID_FILE_NAME_TWO, MediaType.TEXT_PLAIN_VALUE, jpegData))).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.fileType", is(MediaType.IMAGE_JPEG_VALUE)));
+        mockMvc.perform(put(URL_PATH + "/{fileName}", "notes.unknown").
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_ONE)).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.fileType", is(MediaType.TEXT_PLAIN_VALUE)));
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                andExpect(status().isOk()).
+                andExpect(content().contentType(MediaType.IMAGE_JPEG_VALUE));
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", "picture.bin")).
+                andExpect(status().isOk()).
+                andExpect(content().contentType(MediaType.IMAGE_PNG_VALUE));
+        mockMvc.perform(get(URL_PATH)).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.[0].fileName", is("notes.unknown"))).
+                andExpect(jsonPath("$.[0].fileType", is(MediaType.TEXT_PLAIN_VALUE))).
+                andExpect(jsonPath("$.[1].fileType", is(MediaType.IMAGE_PNG_VALUE))).
+                andExpect(jsonPath("$.[2].fileType", is(MediaType.IMAGE_JPEG_VALUE)));
+    }
+
+    @Test
+    void shouldReturn400WhenFileExistsInPutFile() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+
+        mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE).
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_TWO)).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.error", is(FileUploadException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("File already exists: " + VALID_FILE_NAME_ONE))).
+                andDo(print());
+
+        assertArrayEquals(BINARY_DATA_ONE, Files.readAllBytes(uploadDirectory.resolve(VALID_FILE_NAME_ONE)));
+    }
+
     @Test
     void shouldDownloadFileAndReturn200() throws Exception {
         addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
@@ -245,6 +414,239 @@ class FileSystemControllerTest {
                 andDo(print());
     }
 
+    @Test
+    void shouldDeleteFileAndReturn204() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isOk());
+
+        mockMvc.perform(delete(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isNoContent()).
+                andDo(print());
+
+        assertFalse(Files.exists(uploadDirectory.resolve(VALID_FILE_NAME_ONE)));
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isNotFound());
+        mockMvc.perform(get(URL_PATH)).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.length()", is(0)));
+    }
+
+    @Test
+    void shouldReturn404WhenFileNotFoundInDeleteFile() throws Exception {
+        mockMvc.perform(delete(URL_PATH + "/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isNotFound()).
+                andExpect(jsonPath("$.error", is(FileNotFoundException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("File not found: " + VALID_FILE_NAME_ONE))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldReturn400WhenInvalidFileNameInDeleteFile() throws Exception {
+        mockMvc.perform(delete(URL_PATH + "/{fileName}", INVALID_FILE_NAME)).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.error", is(FileDownloadException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("Invalid file name: " + INVALID_FILE_NAME))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldServeHotFileFromCacheUntilItChangesOutsideTheApi() throws Exception {
+        fileDownloadCache.clear();
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+        DownloadCacheStatsDTO before = fileDownloadCache.getStats();
+
+        for(int i = 0; i < 3; i++)
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_ONE));
+
+        DownloadCacheStatsDTO after = fileDownloadCache.getStats();
+        assertEquals(1, after.getMissCount() - before.getMissCount());
+        assertEquals(2, after.getHitCount() - before.getHitCount());
+
+        byte[] changedData = "changed outside".getBytes();
+        Files.delete(uploadDirectory.resolve(VALID_FILE_NAME_ONE));
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, changedData);
+
+        awaitRequest(mockMvc, get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE),
+                status().isOk(),
+                content().bytes(changedData));
+    }
+
+    @Test
+    void shouldDownloadFileRangeAndReturn206() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.RANGE, "bytes=2-5")).
+                andExpect(status().isPartialContent()).
+                andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes")).
+                andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/" + BINARY_DATA_ONE.length)).
+                andExpect(content().string(new String(BINARY_DATA_ONE, 2, 4))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldDownloadFileRangesAsMultipartAndReturn206() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.RANGE, "bytes=0-1,-3")).
+                andExpect(status().isPartialContent()).
+                andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/byteranges"))).
+                andExpect(content().string(containsString("Content-Range: bytes 0-1/" + BINARY_DATA_ONE.length))).
+                andExpect(content().string(containsString("Content-Range: bytes 7-9/" + BINARY_DATA_ONE.length))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldDownloadFileRangeWhenIfRangeMatchesLastModified() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+        String lastModified = mockMvc.perform(head(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                andReturn().getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.RANGE, "bytes=0-3").
+                header(HttpHeaders.IF_RANGE, lastModified)).
+                andExpect(status().isPartialContent()).
+                andExpect(content().string(new String(BINARY_DATA_ONE, 0, 4))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldDownloadWholeFileWhenIfRangeDoesNotMatch() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.RANGE, "bytes=0-3").
+                header(HttpHeaders.IF_RANGE, "Wed, 21 Oct 2015 07:28:00 GMT")).
+                andExpect(status().isOk()).
+                andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, BINARY_DATA_ONE.length)).
+                andExpect(content().string(new String(BINARY_DATA_ONE))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldReturn416WhenRangeIsNotSatisfiable() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.RANGE, "bytes=100-200")).
+                andExpect(status().isRequestedRangeNotSatisfiable()).
+                andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + BINARY_DATA_ONE.length)).
+                andDo(print());
+    }
+
+    @Test
+    void shouldHandDownloadOverToSendfileWhenSupported() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_TWO, BINARY_DATA_TWO);
+
+        MvcResult result = mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO).
+                requestAttr("org.apache.tomcat.sendfile.support", true).
+                header(HttpHeaders.RANGE, "bytes=10-19")).
+                andExpect(status().isPartialContent()).
+                andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-19/" + BINARY_DATA_TWO.length)).
+                andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10)).
+                andExpect(content().bytes(new byte[0])).
+                andDo(print()).
+                andReturn();
+
+        MockHttpServletRequest request = result.getRequest();
+        assertEquals(uploadDirectory.resolve(VALID_FILE_NAME_TWO).toString(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(20L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    @Test
+    void shouldRecordTransfersPerOperationWithTheirBytesAndOutcome() throws Exception {
+        double uploadedBytes = getTransferredBytes(FileTransferMetrics.UPLOAD);
+        double downloadedBytes = getTransferredBytes(FileTransferMetrics.DOWNLOAD);
+        long uploads = getTransferCount(FileTransferMetrics.UPLOAD, "success");
+        long downloads = getTransferCount(FileTransferMetrics.DOWNLOAD, "success");
+        long failedDownloads = getTransferCount(FileTransferMetrics.DOWNLOAD, "error");
+        double notFoundErrors = getErrorCount(FileNotFoundException.class.getSimpleName(), HttpStatus.NOT_FOUND);
+
+        mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_TWO).
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_TWO)).
+                andExpect(status().isOk());
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO).
+                header(HttpHeaders.RANGE, "bytes=0-99")).
+                andExpect(status().isPartialContent());
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO).
+                requestAttr("org.apache.tomcat.sendfile.support", true).
+                header(HttpHeaders.RANGE, "bytes=100-149")).
+                andExpect(status().isPartialContent());
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isNotFound());
+
+        assertEquals(BINARY_DATA_TWO.length, getTransferredBytes(FileTransferMetrics.UPLOAD) - uploadedBytes);
+        assertEquals(1, getTransferCount(FileTransferMetrics.UPLOAD, "success") - uploads);
+        //only the requested ranges were sent, whether written by the application or handed over to sendfile
+        assertEquals(150, getTransferredBytes(FileTransferMetrics.DOWNLOAD) - downloadedBytes);
+        assertEquals(2, getTransferCount(FileTransferMetrics.DOWNLOAD, "success") - downloads);
+        assertEquals(1, getTransferCount(FileTransferMetrics.DOWNLOAD, "error") - failedDownloads);
+        assertEquals(1, getErrorCount(FileNotFoundException.class.getSimpleName(), HttpStatus.NOT_FOUND) - notFoundErrors);
+        assertEquals(0, meterRegistry.get("file.transfer.active").
+                tags("backend", FileTransferMetrics.IN_SYSTEM, "operation", FileTransferMetrics.DOWNLOAD).
+                gauge().value());
+        assertTrue(meterRegistry.get("file.transfer.size").
+                tags("backend", FileTransferMetrics.IN_SYSTEM, "operation", FileTransferMetrics.UPLOAD).
+                summary().max() >= BINARY_DATA_TWO.length);
+    }
+
+    @Test
+    void shouldReturn304WhenEntityTagOrDateIsStillValid() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+        String entityTag = "\"" + FileUtils.checksumOf(uploadDirectory.resolve(VALID_FILE_NAME_ONE)) + "\"";
+
+        MvcResult result = mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                andExpect(status().isOk()).
+                andExpect(header().string(HttpHeaders.ETAG, entityTag)).
+                andExpect(header().exists(HttpHeaders.LAST_MODIFIED)).
+                andReturn();
+        String lastModified = result.getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + entityTag)).
+                andExpect(status().isNotModified()).
+                andExpect(header().string(HttpHeaders.ETAG, entityTag)).
+                andExpect(content().bytes(new byte[0])).
+                andDo(print());
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.IF_MODIFIED_SINCE, lastModified)).
+                andExpect(status().isNotModified());
+
+        //If-None-Match wins over a date that would still be valid
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.IF_NONE_MATCH, "\"other\"").
+                header(HttpHeaders.IF_MODIFIED_SINCE, lastModified)).
+                andExpect(status().isOk()).
+                andExpect(content().bytes(BINARY_DATA_ONE));
+        mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE).
+                header(HttpHeaders.RANGE, "bytes=0-3").
+                header(HttpHeaders.IF_RANGE, entityTag)).
+                andExpect(status().isPartialContent()).
+                andExpect(content().string(new String(BINARY_DATA_ONE, 0, 4)));
+    }
+
+    @Test
+    void shouldNotHandDownloadOverToSendfileWhenNotModified() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_TWO, BINARY_DATA_TWO);
+        String entityTag = "\"" + FileUtils.checksumOf(uploadDirectory.resolve(VALID_FILE_NAME_TWO)) + "\"";
+
+        MvcResult result = mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO).
+                requestAttr("org.apache.tomcat.sendfile.support", true).
+                header(HttpHeaders.IF_NONE_MATCH, entityTag)).
+                andExpect(status().isNotModified()).
+                andExpect(content().bytes(new byte[0])).
+                andDo(print()).
+                andReturn();
+
+        assertNull(result.getRequest().getAttribute("org.apache.tomcat.sendfile.filename"));
+    }
+
     @Test
     void shouldReturn400WhenInvalidFileNameInDownloadFile() throws Exception {
         mockMvc.perform(get(URL_PATH + "/download/{fileName}", INVALID_FILE_NAME)).
@@ -279,6 +681,7 @@ class FileSystemControllerTest {
     void shouldListAllFilesAndReturn200() throws Exception {
         addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
         addFileToUploadDirectory(VALID_FILE_NAME_TWO, BINARY_DATA_TWO);
+        awaitRequest(mockMvc, get(URL_PATH), jsonPath("$.length()", is(2)));
 
         mockMvc.perform(get(URL_PATH)).
                 andExpect(status().isOk()).
@@ -294,13 +697,147 @@ class FileSystemControllerTest {
                 andDo(print());
     }
 
+    @Test
+    void shouldKeepListedFilesConsistentWithChangesOutsideTheApi() throws Exception {
+        mockMvc.perform(multipart(URL_PATH + "/upload").
+                file(validFile)).
+                andExpect(status().isOk());
+        Files.delete(uploadDirectory.resolve(VALID_FILE_NAME_ONE));
+        addFileToUploadDirectory(VALID_FILE_NAME_TWO, BINARY_DATA_TWO);
+
+        awaitRequest(mockMvc, get(URL_PATH),
+                status().isOk(),
+                jsonPath("$.length()", is(1)),
+                jsonPath("$.[0].fileName", is(VALID_FILE_NAME_TWO)),
+                jsonPath("$.[0].fileSize", is(FileUtils.humanReadableByteCountSI(BINARY_DATA_TWO.length)))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldDownloadFilesWithPrefixAsZipArchive() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+        addFileToUploadDirectory(VALID_FILE_NAME_TWO, BINARY_DATA_TWO);
+        addFileToUploadDirectory("other.txt", BINARY_DATA_ONE);
+        awaitRequest(mockMvc, get(URL_PATH), jsonPath("$.length()", is(3)));
+
+        MvcResult result = mockMvc.perform(get(URL_PATH + "/archive").
+                param("prefix", "testing-")).
+                andExpect(status().isOk()).
+                andExpect(content().contentType("application/zip")).
+                andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=files.zip")).
+                andReturn();
+
+        byte[] archive = result.getResponse().getContentAsByteArray();
+        Map<String, byte[]> entries = readZipEntries(archive);
+        assertEquals(List.of(VALID_FILE_NAME_ONE, VALID_FILE_NAME_TWO), new ArrayList<>(entries.keySet()));
+        assertArrayEquals(BINARY_DATA_ONE, entries.get(VALID_FILE_NAME_ONE));
+        assertArrayEquals(BINARY_DATA_TWO, entries.get(VALID_FILE_NAME_TWO));
+        //a png is already compressed, so even a file of zeros is only framed into the archive
+        assertTrue(archive.length > BINARY_DATA_TWO.length);
+    }
+
+    @Test
+    void shouldDownloadNamedFilesAsZipArchiveInRequestedOrder() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+        addFileToUploadDirectory(VALID_FILE_NAME_TWO, BINARY_DATA_TWO);
+
+        MvcResult result = mockMvc.perform(post(URL_PATH + "/archive").
+                contentType(MediaType.APPLICATION_FORM_URLENCODED).
+                param("names", VALID_FILE_NAME_TWO, VALID_FILE_NAME_ONE, VALID_FILE_NAME_TWO)).
+                andExpect(status().isOk()).
+                andReturn();
+
+        Map<String, byte[]> entries = readZipEntries(result.getResponse().getContentAsByteArray());
+        assertEquals(List.of(VALID_FILE_NAME_TWO, VALID_FILE_NAME_ONE), new ArrayList<>(entries.keySet()));
+    }
+
+    @Test
+    void shouldReturn404WhenArchivedFileNotExists() throws Exception {
+        addFileToUploadDirectory(VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+
+        mockMvc.perform(get(URL_PATH + "/archive").
+                param("names", VALID_FILE_NAME_ONE, VALID_FILE_NAME_TWO)).
+                andExpect(status().isNotFound()).
+                andExpect(content().contentType(MediaType.APPLICATION_JSON)).
+                andExpect(jsonPath("$.message", is("File not found: " + VALID_FILE_NAME_TWO)));
+        mockMvc.perform(get(URL_PATH + "/archive").
+                param("prefix", "other")).
+                andExpect(status().isNotFound()).
+                andExpect(jsonPath("$.message", is("No files found with prefix: other")));
+    }
+
+    @Test
+    void shouldReturn400WhenArchiveHasNeitherNamesNorPrefix() throws Exception {
+        mockMvc.perform(get(URL_PATH + "/archive")).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.error", is(FileDownloadException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("Either file names or a prefix is required")));
+    }
+
+    @Test
+    void shouldExtractZipArchiveIntoFilesWithResultPerEntry() throws Exception {
+        addFileToUploadDirectory("other.txt", BINARY_DATA_ONE);
+        //bigger than what is buffered, so it is streamed from the archive
+        byte[] largeData = new byte[3 * ONE_MB_IN_BYTES];
+        Arrays.fill(largeData, (byte) 'a');
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try(ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(archive)) {
+            zipOutputStream.putArchiveEntry(new ZipArchiveEntry("folder/"));
+            zipOutputStream.closeArchiveEntry();
+            addZipEntry(zipOutputStream, VALID_FILE_NAME_ONE, BINARY_DATA_ONE);
+            addZipEntry(zipOutputStream, "testing-three.txt", largeData);
+            addZipEntry(zipOutputStream, INVALID_FILE_NAME, BINARY_DATA_ONE);
+            addZipEntry(zipOutputStream, VALID_FILE_NAME_TWO, BINARY_DATA_TWO);
+            addZipEntry(zipOutputStream, VALID_FILE_NAME_ONE, BINARY_DATA_TWO);
+            addZipEntry(zipOutputStream, "other.txt", BINARY_DATA_ONE);
+        }
+
+        mockMvc.perform(post(URL_PATH + "/uploads/archive").
+                contentType("application/zip").
+                content(archive.toByteArray())).
+                andExpect(status().isOk()).
+                andExpect(content().contentType(MediaType.APPLICATION_JSON)).
+                andExpect(jsonPath("$.length()", is(6))).
+                andExpect(jsonPath("$[0].fileName", is(VALID_FILE_NAME_ONE))).
+                andExpect(jsonPath("$[0].status", is("UPLOADED"))).
+                andExpect(jsonPath("$[0].fileDownloadUri", containsString(URL_PATH + "/download/" + VALID_FILE_NAME_ONE))).
+                andExpect(jsonPath("$[0].fileType", is(MediaType.TEXT_PLAIN_VALUE))).
+                andExpect(jsonPath("$[1].fileName", is("testing-three.txt"))).
+                andExpect(jsonPath("$[1].status", is("UPLOADED"))).
+                andExpect(jsonPath("$[1].fileSize", is(FileUtils.humanReadableByteCountSI(largeData.length)))).
+                andExpect(jsonPath("$[2].status", is("REJECTED"))).
+                andExpect(jsonPath("$[2].message", is("Invalid file name: " + INVALID_FILE_NAME))).
+                andExpect(jsonPath("$[3].fileName", is(VALID_FILE_NAME_TWO))).
+                andExpect(jsonPath("$[3].status", is("UPLOADED"))).
+                andExpect(jsonPath("$[4].status", is("REJECTED"))).
+                andExpect(jsonPath("$[4].message", is("Duplicate file name: " + VALID_FILE_NAME_ONE))).
+                andExpect(jsonPath("$[5].status", is("REJECTED"))).
+                andExpect(jsonPath("$[5].message", is("File already exists: other.txt"))).
+                andDo(print());
+
+        assertArrayEquals(BINARY_DATA_ONE, Files.readAllBytes(uploadDirectory.resolve(VALID_FILE_NAME_ONE)));
+        assertArrayEquals(BINARY_DATA_TWO, Files.readAllBytes(uploadDirectory.resolve(VALID_FILE_NAME_TWO)));
+        assertArrayEquals(largeData, Files.readAllBytes(uploadDirectory.resolve("testing-three.txt")));
+        assertFalse(Files.exists(uploadDirectory.resolve(INVALID_FILE_NAME)));
+    }
+
+    @Test
+    void shouldReturn400WhenUploadedArchiveIsNotZipOrTar() throws Exception {
+        mockMvc.perform(post(URL_PATH + "/uploads/archive").
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(BINARY_DATA_ONE)).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.error", is(FileUploadException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("Unsupported archive format, a ZIP or TAR archive is required")));
+    }
+
     @Test
     @DirtiesContext
     void shouldReturn500WhenUploadDirectoryNotExistsInListAllFiles() throws Exception {
         deleteUploadDirectory();
 
-        mockMvc.perform(get(URL_PATH)).
-                andExpect(status().isInternalServerError()).
+        awaitRequest(mockMvc, get(URL_PATH), status().isInternalServerError()).
                 andExpect(content().contentType(MediaType.APPLICATION_JSON)).
                 andExpect(jsonPath("$.timestamp",
                         matchesRegex("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}.\\d{9}Z"))).
@@ -312,28 +849,450 @@ class FileSystemControllerTest {
                 andDo(print());
     }
 
+    @Nested
+    @TestPropertySource(properties = {"file.upload-directory=testing-deduplicated", "file.deduplication-enabled=true"})
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    class WithDeduplication {
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private FileSystemConfig fileSystemConfig;
+
+        @BeforeEach
+        void setup() throws Exception {
+            uploadDirectory = Paths.get(fileSystemConfig.getUploadDirectory()).toAbsolutePath().normalize();
+            cleanup();
+            awaitEmptyIndex(mockMvc);
+        }
+
+        @AfterAll
+        void after() throws Exception {
+            deleteUploadDirectory();
+        }
+
+        @Test
+        void shouldStoreSameContentOnceAndDownloadItUnderEveryName() throws Exception {
+            mockMvc.perform(multipart(URL_PATH + "/uploads").
+                    file(new MockMultipartFile("files", VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_TWO)).
+                    file(new MockMultipartFile("files", VALID_FILE_NAME_TWO, MediaType.IMAGE_PNG_VALUE, BINARY_DATA_TWO))).
+                    andExpect(status().isOk());
+
+            try(Stream<Path> blobs = Files.walk(uploadDirectory.resolve(".blobs"))) {
+                assertEquals(1, blobs.filter(Files::isRegularFile).count());
+            }
+            assertTrue(Files.isSameFile(uploadDirectory.resolve(VALID_FILE_NAME_ONE), uploadDirectory.resolve(VALID_FILE_NAME_TWO)));
+
+            for(String fileName : new String[]{VALID_FILE_NAME_ONE, VALID_FILE_NAME_TWO})
+                mockMvc.perform(get(URL_PATH + "/download/{fileName}", fileName)).
+                        andExpect(status().isOk()).
+                        andExpect(content().bytes(BINARY_DATA_TWO));
+            mockMvc.perform(get(URL_PATH)).
+                    andExpect(status().isOk()).
+                    andExpect(jsonPath("$.length()", is(2)));
+        }
+
+        @Test
+        void shouldReturn400WhenFileExistsWithDeduplication() throws Exception {
+            mockMvc.perform(multipart(URL_PATH + "/upload").
+                    file(validFile)).
+                    andExpect(status().isOk());
+
+            mockMvc.perform(multipart(URL_PATH + "/upload").
+                    file(validFile)).
+                    andExpect(status().isBadRequest()).
+                    andExpect(jsonPath("$.message", is("File already exists: " + VALID_FILE_NAME_ONE)));
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = {"file.upload-directory=testing-compressed", "file.compression.enabled=true"})
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    class WithCompression {
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private FileSystemConfig fileSystemConfig;
+
+        private static final String TEXT_FILE_NAME = "testing.csv";
+
+        @BeforeEach
+        void setup() throws Exception {
+            uploadDirectory = Paths.get(fileSystemConfig.getUploadDirectory()).toAbsolutePath().normalize();
+            cleanup();
+            awaitEmptyIndex(mockMvc);
+        }
+
+        @AfterAll
+        void after() throws Exception {
+            deleteUploadDirectory();
+        }
+
+        @Test
+        void shouldStoreCompressibleFileGzippedAndNegotiateItsEncoding() throws Exception {
+            byte[] textData = toTextData(20000);
+            mockMvc.perform(multipart(URL_PATH + "/upload").
+                    file(new MockMultipartFile(FORM_NAME, TEXT_FILE_NAME, "text/csv", textData))).
+                    andExpect(status().isOk()).
+                    andExpect(jsonPath("$.fileSize", is(FileUtils.humanReadableByteCountSI(textData.length))));
+
+            byte[] storedData = Files.readAllBytes(uploadDirectory.resolve(TEXT_FILE_NAME));
+            assertTrue(storedData.length < textData.length / 4);
+            assertArrayEquals(textData, gunzip(storedData));
+
+            MvcResult encoded = mockMvc.perform(get(URL_PATH + "/download/{fileName}", TEXT_FILE_NAME).
+                    header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")).
+                    andExpect(status().isOk()).
+                    andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip")).
+                    andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)).
+                    andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, storedData.length)).
+                    andExpect(header().string(HttpHeaders.ETAG, endsWith("-gzip\""))).
+                    andExpect(content().bytes(storedData)).
+                    andReturn();
+
+            MvcResult decoded = mockMvc.perform(get(URL_PATH + "/download/{fileName}", TEXT_FILE_NAME)).
+                    andExpect(status().isOk()).
+                    andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING)).
+                    andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)).
+                    andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, textData.length)).
+                    andExpect(content().bytes(textData)).
+                    andReturn();
+            assertNotEquals(encoded.getResponse().getHeader(HttpHeaders.ETAG), decoded.getResponse().getHeader(HttpHeaders.ETAG));
+
+            //an explicit q=0 refuses gzip even though the wildcard accepts everything
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", TEXT_FILE_NAME).
+                    header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, *").
+                    header(HttpHeaders.RANGE, "bytes=100-199")).
+                    andExpect(status().isPartialContent()).
+                    andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING)).
+                    andExpect(content().bytes(Arrays.copyOfRange(textData, 100, 200)));
+        }
+
+        @Test
+        void shouldKeepIncompressibleFileAsItIs() throws Exception {
+            mockMvc.perform(put(URL_PATH + "/{fileName}", VALID_FILE_NAME_TWO).
+                    contentType(MediaType.APPLICATION_OCTET_STREAM).
+                    content(BINARY_DATA_TWO)).
+                    andExpect(status().isOk());
+
+            assertEquals(BINARY_DATA_TWO.length, Files.size(uploadDirectory.resolve(VALID_FILE_NAME_TWO)));
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO).
+                    header(HttpHeaders.ACCEPT_ENCODING, "gzip")).
+                    andExpect(status().isOk()).
+                    andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING)).
+                    andExpect(header().doesNotExist(HttpHeaders.VARY)).
+                    andExpect(content().bytes(BINARY_DATA_TWO));
+        }
+
+        //the type detected from the content decides, whatever the extension says
+        @Test
+        void shouldDecideCompressionFromDetectedType() throws Exception {
+            byte[] textData = toTextData(1000);
+            byte[] pngData = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0x00};
+            mockMvc.perform(put(URL_PATH + "/{fileName}", "testing-text.bin").
+                    contentType(MediaType.APPLICATION_OCTET_STREAM).
+                    content(textData)).
+                    andExpect(status().isOk());
+            mockMvc.perform(put(URL_PATH + "/{fileName}", "testing-image.txt").
+                    contentType(MediaType.APPLICATION_OCTET_STREAM).
+                    content(pngData)).
+                    andExpect(status().isOk());
+
+            assertArrayEquals(textData, gunzip(Files.readAllBytes(uploadDirectory.resolve("testing-text.bin"))));
+            assertArrayEquals(pngData, Files.readAllBytes(uploadDirectory.resolve("testing-image.txt")));
+        }
+
+        //the encoding is taken from the attribute recorded at upload, never from the bytes of the file
+        @Test
+        void shouldRecognizeGzippedFileAddedOutsideTheApiOnlyWhenItsEncodingIsRecorded() throws Exception {
+            byte[] textData = toTextData(1000);
+            byte[] gzippedData = gzip(textData);
+            addFileToUploadDirectory(TEXT_FILE_NAME, gzippedData);
+
+            awaitRequest(mockMvc, get(URL_PATH),
+                    status().isOk(),
+                    jsonPath("$[0].fileSize", is(FileUtils.humanReadableByteCountSI(gzippedData.length))));
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", TEXT_FILE_NAME).
+                    header(HttpHeaders.ACCEPT_ENCODING, "gzip")).
+                    andExpect(status().isOk()).
+                    andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING)).
+                    andExpect(content().bytes(gzippedData));
+
+            mockMvc.perform(delete(URL_PATH + "/{fileName}", TEXT_FILE_NAME)).
+                    andExpect(status().isNoContent());
+            Path location = uploadDirectory.resolve(TEXT_FILE_NAME);
+            Path temporaryLocation = Files.write(uploadDirectory.resolveSibling(TEXT_FILE_NAME), gzippedData);
+            Files.setAttribute(temporaryLocation, "user:content-encoding", "gzip".getBytes(StandardCharsets.US_ASCII));
+            Files.move(temporaryLocation, location);
+
+            awaitRequest(mockMvc, get(URL_PATH),
+                    status().isOk(),
+                    jsonPath("$[0].fileSize", is(FileUtils.humanReadableByteCountSI(textData.length))));
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", TEXT_FILE_NAME)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(textData));
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = {"file.volumes=testing-volume-one,testing-volume-two",
+            "file.placement-policy=round-robin"})
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    class WithVolumes {
+        @Autowired
+        private MockMvc mockMvc;
+
+        private final Path[] volumes = {Paths.get("testing-volume-one").toAbsolutePath(),
+                Paths.get("testing-volume-two").toAbsolutePath()};
+
+        @BeforeEach
+        void setup() throws Exception {
+            for(Path volume : volumes) {
+                uploadDirectory = volume;
+                cleanup();
+            }
+            awaitEmptyIndex(mockMvc);
+        }
+
+        @AfterAll
+        void after() throws Exception {
+            for(Path volume : volumes) {
+                uploadDirectory = volume;
+                deleteUploadDirectory();
+            }
+        }
+
+        @Test
+        void shouldSpreadFilesAcrossVolumesAndServeThemFromEither() throws Exception {
+            List<String> fileNames = List.of("testing-a.txt", "testing-b.txt", "testing-c.txt", "testing-d.txt");
+            MockMultipartHttpServletRequestBuilder request = multipart(URL_PATH + "/uploads");
+            for(String fileName : fileNames)
+                request.file(new MockMultipartFile("files", fileName, MediaType.TEXT_PLAIN_VALUE, fileName.getBytes()));
+            mockMvc.perform(request).andExpect(status().isOk());
+
+            for(Path volume : volumes) {
+                try(Stream<Path> files = Files.list(volume)) {
+                    assertEquals(2, files.filter(file -> fileNames.contains(file.getFileName().toString())).count());
+                }
+            }
+            for(String fileName : fileNames)
+                mockMvc.perform(get(URL_PATH + "/download/{fileName}", fileName)).
+                        andExpect(status().isOk()).
+                        andExpect(content().bytes(fileName.getBytes()));
+            mockMvc.perform(get(URL_PATH)).
+                    andExpect(status().isOk()).
+                    andExpect(jsonPath("$.length()", is(4))).
+                    andExpect(jsonPath("$[0].fileName", is("testing-a.txt"))).
+                    andExpect(jsonPath("$[3].fileName", is("testing-d.txt")));
+
+            //the next volume in turn does not hold the name, it is still taken on the other one
+            for(int i = 0; i < volumes.length; i++)
+                mockMvc.perform(multipart(URL_PATH + "/upload").
+                        file(new MockMultipartFile(FORM_NAME, "testing-a.txt", MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE))).
+                        andExpect(status().isBadRequest()).
+                        andExpect(jsonPath("$.message", is("File already exists: testing-a.txt")));
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = {"file.upload-directory=testing-sharded", "file.sharding.enabled=true",
+            "file.sharding.migration-grace-period=0s"})
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    class WithSharding {
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private FileSystemConfig fileSystemConfig;
+
+        private static final String SHARD_MIGRATION_PATH = "/api/v1/in-system/shards/migration";
+
+        @BeforeEach
+        void setup() throws Exception {
+            uploadDirectory = Paths.get(fileSystemConfig.getUploadDirectory()).toAbsolutePath().normalize();
+            cleanup();
+            awaitEmptyIndex(mockMvc);
+        }
+
+        @AfterAll
+        void after() throws Exception {
+            deleteUploadDirectory();
+        }
+
+        @Test
+        void shouldStoreFilesInTheirShardAndServeThemByName() throws Exception {
+            mockMvc.perform(multipart(URL_PATH + "/upload").
+                    file(new MockMultipartFile(FORM_NAME, VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE))).
+                    andExpect(status().isOk());
+
+            assertTrue(Files.exists(getShardLocation(VALID_FILE_NAME_ONE)));
+            assertFalse(Files.exists(uploadDirectory.resolve(VALID_FILE_NAME_ONE)));
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_ONE));
+
+            Path externalFile = getShardLocation(VALID_FILE_NAME_TWO);
+            Files.createDirectories(externalFile.getParent());
+            Files.write(externalFile, BINARY_DATA_TWO);
+            awaitRequest(mockMvc, get(URL_PATH),
+                    status().isOk(),
+                    jsonPath("$.length()", is(2)));
+
+            Files.delete(externalFile);
+            awaitRequest(mockMvc, get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO),
+                    status().isNotFound());
+        }
+
+        @Test
+        void shouldMigrateFlatFilesIntoTheirShardsWhileServingThem() throws Exception {
+            Files.write(uploadDirectory.resolve(VALID_FILE_NAME_ONE), BINARY_DATA_ONE);
+            Files.write(uploadDirectory.resolve(VALID_FILE_NAME_TWO), BINARY_DATA_TWO);
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_ONE)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_ONE));
+
+            mockMvc.perform(post(SHARD_MIGRATION_PATH)).
+                    andExpect(status().isAccepted()).
+                    andExpect(jsonPath("$.state", is("RUNNING")));
+            String state = "RUNNING";
+            for(int i = 0; i < 100 && state.equals("RUNNING"); i++) {
+                Thread.sleep(50);
+                MvcResult result = mockMvc.perform(get(SHARD_MIGRATION_PATH)).andExpect(status().isOk()).andReturn();
+                state = JsonPath.read(result.getResponse().getContentAsString(), "$.state");
+            }
+            mockMvc.perform(get(SHARD_MIGRATION_PATH)).
+                    andExpect(jsonPath("$.state", is("COMPLETED"))).
+                    andExpect(jsonPath("$.linkedFiles", is(2))).
+                    andExpect(jsonPath("$.migratedFiles", is(2)));
+
+            for(String fileName : new String[]{VALID_FILE_NAME_ONE, VALID_FILE_NAME_TWO}) {
+                assertTrue(Files.exists(getShardLocation(fileName)));
+                assertFalse(Files.exists(uploadDirectory.resolve(fileName)));
+            }
+            mockMvc.perform(get(URL_PATH + "/download/{fileName}", VALID_FILE_NAME_TWO)).
+                    andExpect(status().isOk()).
+                    andExpect(content().bytes(BINARY_DATA_TWO));
+            mockMvc.perform(get(URL_PATH)).
+                    andExpect(status().isOk()).
+                    andExpect(jsonPath("$.length()", is(2)));
+        }
+
+        private Path getShardLocation(String fileName) {
+            return uploadDirectory.resolve(FileUtils.getShardDirectory(fileName, 2, 2)).resolve(fileName);
+        }
+    }
+
+    private static byte[] toTextData(int lines) {
+        StringBuilder text = new StringBuilder("id,name,value\n");
+        for(int i = 0; i < lines; i++)
+            text.append(i).append(",name-").append(i % 100).append(',').append(i * 7 % 1000).append('\n');
+        return text.toString().getBytes();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try(GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(data);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try(GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gzipInputStream.readAllBytes();
+        }
+    }
+
+    private static void addZipEntry(ZipArchiveOutputStream zipOutputStream, String fileName, byte[] binaryData) throws IOException {
+        zipOutputStream.putArchiveEntry(new ZipArchiveEntry(fileName));
+        zipOutputStream.write(binaryData);
+        zipOutputStream.closeArchiveEntry();
+    }
+
+    private static Map<String, byte[]> readZipEntries(byte[] archive) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try(ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while((entry = zipInputStream.getNextEntry()) != null)
+                entries.put(entry.getName(), zipInputStream.readAllBytes());
+        }
+        return entries;
+    }
+
     private void init() {
         validFile = new MockMultipartFile(FORM_NAME, VALID_FILE_NAME_ONE, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
         invalidFile = new MockMultipartFile(FORM_NAME, INVALID_FILE_NAME, MediaType.TEXT_PLAIN_VALUE, BINARY_DATA_ONE);
     }
 
+    //a directory left open is not released when it is deleted, so its watch would never learn about it
     private void cleanup() throws IOException {
         if (Files.exists(uploadDirectory)) {
-            Files.walk(uploadDirectory)
-                    .filter(Files::isRegularFile)
-                    .forEach(file -> {
-                        try {
-                            Files.delete(file);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    });
+            try(Stream<Path> files = Files.walk(uploadDirectory)) {
+                files.filter(Files::isRegularFile)
+                        .forEach(file -> {
+                            try {
+                                Files.delete(file);
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        });
+            }
+        }
+    }
+
+    //the staging directory is not a stored file
+    private long countStoredFiles() throws IOException {
+        try(Stream<Path> files = Files.list(uploadDirectory)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private double getTransferredBytes(String operation) {
+        Counter counter = meterRegistry.find("file.transfer.bytes").
+                tags("backend", FileTransferMetrics.IN_SYSTEM, "operation", operation).
+                counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private long getTransferCount(String operation, String outcome) {
+        Timer timer = meterRegistry.find("file.transfer.duration").
+                tags("backend", FileTransferMetrics.IN_SYSTEM, "operation", operation, "outcome", outcome).
+                timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private double getErrorCount(String error, HttpStatus status) {
+        Counter counter = meterRegistry.find("file.errors").
+                tags("backend", FileTransferMetrics.IN_SYSTEM, "error", error, "status", String.valueOf(status.value())).
+                counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private void awaitEmptyIndex(MockMvc mockMvc) throws Exception {
+        awaitRequest(mockMvc, get(URL_PATH), status().isOk(), jsonPath("$.length()", is(0)));
+    }
+
+    //changes made outside the API reach the index through its watcher, so the request is repeated until it sees them.
+    //Until then, a file deleted by others is still indexed and fails while it is sent.
+    private static ResultActions awaitRequest(MockMvc mockMvc, RequestBuilder request, ResultMatcher... matchers) throws Exception {
+        long deadline = System.nanoTime() + INDEX_WATCH_TIMEOUT.toNanos();
+        while(true) {
+            try {
+                return mockMvc.perform(request).andExpectAll(matchers);
+            }catch(AssertionError | IOException e) {
+                if(System.nanoTime() - deadline >= 0)
+                    throw e;
+                Thread.sleep(20);
+            }
         }
     }
 
+    //written next to the directory and moved in, so the watcher never reports a file only partly written
     private void addFileToUploadDirectory(String fileName, byte[] binaryData) throws IOException {
         Path filePath = uploadDirectory.resolve(fileName).normalize();
-        Files.write(filePath, binaryData);
+        Path temporaryPath = Files.write(uploadDirectory.resolveSibling(uploadDirectory.getFileName() + "-" + fileName), binaryData);
+        Files.move(temporaryPath, filePath, StandardCopyOption.ATOMIC_MOVE);
     }
 
     private void deleteUploadDirectory() throws Exception {
@@ -0,0 +1,303 @@
+package com.soaresdev.uploaddownloadapi.controllers.v1;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soaresdev.uploaddownloadapi.configs.FileSystemConfig;
+import com.soaresdev.uploaddownloadapi.dtos.UploadSessionRequestDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.FileNotFoundException;
+import com.soaresdev.uploaddownloadapi.exceptions.FileUploadException;
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = "file.upload-directory=testing-sessions")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class FileUploadSessionControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FileSystemConfig fileSystemConfig;
+
+    private Path uploadDirectory;
+
+    private static final String URL_PATH = "/api/v1/in-system/upload-sessions";
+    private static final String FILES_URL_PATH = "/api/v1/in-system/files";
+    private static final String VALID_FILE_NAME = "testing-session.bin";
+    private static final int PART_SIZE = 256 * 1024;
+    private static final byte[] BINARY_DATA = new byte[PART_SIZE * 3 + 1000];
+
+    @BeforeEach
+    void setup() throws Exception {
+        uploadDirectory = Paths.get(fileSystemConfig.getUploadDirectory()).toAbsolutePath().normalize();
+        for(int i = 0; i < BINARY_DATA.length; i++)
+            BINARY_DATA[i] = (byte) (i % 251);
+        cleanup();
+        awaitEmptyIndex();
+    }
+
+    @AfterAll
+    void after() throws Exception {
+        FileSystemUtils.deleteRecursively(uploadDirectory);
+    }
+
+    @Test
+    void shouldUploadPartsInAnyOrderAndCompleteSession() throws Exception {
+        String sessionId = initiateSession(VALID_FILE_NAME, BINARY_DATA.length, PART_SIZE);
+
+        for(int partNumber : new int[]{4, 2, 1, 3})
+            uploadPart(sessionId, partNumber, getPart(partNumber)).
+                    andExpect(status().isNoContent());
+
+        mockMvc.perform(get(URL_PATH + "/{sessionId}", sessionId)).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.partCount", is(4))).
+                andExpect(jsonPath("$.receivedParts", contains(1, 2, 3, 4))).
+                andDo(print());
+
+        mockMvc.perform(post(URL_PATH + "/{sessionId}/complete", sessionId)).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.fileName", is(VALID_FILE_NAME))).
+                andExpect(jsonPath("$.fileDownloadUri", endsWith(FILES_URL_PATH + "/download/" + VALID_FILE_NAME))).
+                andExpect(jsonPath("$.fileSize", is(FileUtils.humanReadableByteCountSI(BINARY_DATA.length)))).
+                andDo(print());
+
+        mockMvc.perform(get(FILES_URL_PATH + "/download/{fileName}", VALID_FILE_NAME)).
+                andExpect(status().isOk()).
+                andExpect(content().bytes(BINARY_DATA));
+        mockMvc.perform(get(URL_PATH + "/{sessionId}", sessionId)).
+                andExpect(status().isNotFound());
+        try(Stream<Path> sessionFiles = Files.list(uploadDirectory.resolve(".sessions"))) {
+            assertEquals(0, sessionFiles.count());
+        }
+    }
+
+    @Test
+    void shouldUploadPartsConcurrently() throws Exception {
+        String sessionId = initiateSession(VALID_FILE_NAME, BINARY_DATA.length, PART_SIZE);
+
+        Arrays.asList(1, 2, 3, 4).parallelStream().forEach(partNumber -> {
+            try {
+                uploadPart(sessionId, partNumber, getPart(partNumber)).
+                        andExpect(status().isNoContent());
+            }catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        mockMvc.perform(post(URL_PATH + "/{sessionId}/complete", sessionId)).
+                andExpect(status().isOk());
+        mockMvc.perform(get(FILES_URL_PATH + "/download/{fileName}", VALID_FILE_NAME)).
+                andExpect(status().isOk()).
+                andExpect(content().bytes(BINARY_DATA));
+    }
+
+    @Test
+    void shouldReturn400WhenCompletingSessionWithMissingParts() throws Exception {
+        String sessionId = initiateSession(VALID_FILE_NAME, BINARY_DATA.length, PART_SIZE);
+        uploadPart(sessionId, 1, getPart(1)).
+                andExpect(status().isNoContent());
+
+        mockMvc.perform(post(URL_PATH + "/{sessionId}/complete", sessionId)).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.error", is(FileUploadException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("Upload session " + sessionId + " is missing 3 parts"))).
+                andDo(print());
+
+        assertFalse(Files.exists(uploadDirectory.resolve(VALID_FILE_NAME)));
+    }
+
+    @Test
+    void shouldReturn400AndNotRecordPartWithInvalidSize() throws Exception {
+        String sessionId = initiateSession(VALID_FILE_NAME, BINARY_DATA.length, PART_SIZE);
+
+        uploadPart(sessionId, 2, Arrays.copyOf(getPart(2), PART_SIZE - 1)).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.message", is("Invalid size of part 2, expected " + PART_SIZE + " bytes"))).
+                andDo(print());
+        uploadPart(sessionId, 5, new byte[1]).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.message", is("Invalid part number: 5")));
+
+        mockMvc.perform(get(URL_PATH + "/{sessionId}", sessionId)).
+                andExpect(status().isOk()).
+                andExpect(jsonPath("$.receivedParts", empty()));
+    }
+
+    @Test
+    void shouldReturn400WhenInitiatingSessionForExistingFile() throws Exception {
+        Files.write(uploadDirectory.resolve(VALID_FILE_NAME), BINARY_DATA);
+
+        mockMvc.perform(post(URL_PATH).
+                contentType(MediaType.APPLICATION_JSON).
+                content(objectMapper.writeValueAsBytes(new UploadSessionRequestDTO(VALID_FILE_NAME, (long) BINARY_DATA.length, null)))).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.message", is("File already exists: " + VALID_FILE_NAME))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldReturn400WhenInitiatingSessionLargerThanMaxFileSize() throws Exception {
+        long fileByteSize = DataSize.ofGigabytes(6).toBytes();
+
+        mockMvc.perform(post(URL_PATH).
+                contentType(MediaType.APPLICATION_JSON).
+                content(objectMapper.writeValueAsBytes(new UploadSessionRequestDTO(VALID_FILE_NAME, fileByteSize, null)))).
+                andExpect(status().isBadRequest()).
+                andExpect(jsonPath("$.message", is("Maximum upload size exceeded: " + VALID_FILE_NAME))).
+                andDo(print());
+    }
+
+    @Test
+    void shouldAbortSessionAndReturn404Afterwards() throws Exception {
+        String sessionId = initiateSession(VALID_FILE_NAME, BINARY_DATA.length, PART_SIZE);
+
+        mockMvc.perform(delete(URL_PATH + "/{sessionId}", sessionId)).
+                andExpect(status().isNoContent());
+
+        uploadPart(sessionId, 1, getPart(1)).
+                andExpect(status().isNotFound()).
+                andExpect(jsonPath("$.error", is(FileNotFoundException.class.getSimpleName()))).
+                andExpect(jsonPath("$.message", is("Upload session not found: " + sessionId))).
+                andDo(print());
+    }
+
+    @Nested
+    @TestPropertySource(properties = {"file.upload-directory=testing-sessions-limited", "file.multipart.max-file-size=1000TB",
+            "file.upload-session.max-open-sessions=2"})
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    class WithLimits {
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private FileSystemConfig fileSystemConfig;
+
+        @BeforeEach
+        void setup() throws Exception {
+            uploadDirectory = Paths.get(fileSystemConfig.getUploadDirectory()).toAbsolutePath().normalize();
+            cleanup();
+        }
+
+        @AfterAll
+        void after() throws Exception {
+            FileSystemUtils.deleteRecursively(uploadDirectory);
+        }
+
+        @Test
+        void shouldReturn400WhenInitiatingSessionLargerThanFreeSpace() throws Exception {
+            long fileByteSize = DataSize.ofTerabytes(500).toBytes();
+
+            mockMvc.perform(post(URL_PATH).
+                    contentType(MediaType.APPLICATION_JSON).
+                    content(objectMapper.writeValueAsBytes(new UploadSessionRequestDTO(VALID_FILE_NAME, fileByteSize,
+                            DataSize.ofGigabytes(100).toBytes())))).
+                    andExpect(status().isBadRequest()).
+                    andExpect(jsonPath("$.message", is("Not enough space for file: " + VALID_FILE_NAME))).
+                    andDo(print());
+        }
+
+        @Test
+        void shouldReturn400WhenTooManySessionsAreOpen() throws Exception {
+            String sessionId = initiateSession(mockMvc, "testing-one.bin", BINARY_DATA.length, PART_SIZE);
+            initiateSession(mockMvc, "testing-two.bin", BINARY_DATA.length, PART_SIZE);
+
+            mockMvc.perform(post(URL_PATH).
+                    contentType(MediaType.APPLICATION_JSON).
+                    content(objectMapper.writeValueAsBytes(new UploadSessionRequestDTO(VALID_FILE_NAME, (long) BINARY_DATA.length, null)))).
+                    andExpect(status().isBadRequest()).
+                    andExpect(jsonPath("$.message", is("Too many open upload sessions, the maximum is 2"))).
+                    andDo(print());
+
+            mockMvc.perform(delete(URL_PATH + "/{sessionId}", sessionId)).
+                    andExpect(status().isNoContent());
+            initiateSession(mockMvc, VALID_FILE_NAME, BINARY_DATA.length, PART_SIZE);
+        }
+    }
+
+    private String initiateSession(String fileName, long fileByteSize, long partSize) throws Exception {
+        return initiateSession(mockMvc, fileName, fileByteSize, partSize);
+    }
+
+    private String initiateSession(MockMvc mockMvc, String fileName, long fileByteSize, long partSize) throws Exception {
+        String response = mockMvc.perform(post(URL_PATH).
+                contentType(MediaType.APPLICATION_JSON).
+                content(objectMapper.writeValueAsBytes(new UploadSessionRequestDTO(fileName, fileByteSize, partSize)))).
+                andExpect(status().isCreated()).
+                andExpect(header().exists(HttpHeaders.LOCATION)).
+                andExpect(jsonPath("$.receivedParts", empty())).
+                andReturn().getResponse().getContentAsString();
+
+        JsonNode session = objectMapper.readTree(response);
+        return session.get("sessionId").asText();
+    }
+
+    private ResultActions uploadPart(String sessionId, int partNumber, byte[] data) throws Exception {
+        return mockMvc.perform(put(URL_PATH + "/{sessionId}/parts/{partNumber}", sessionId, partNumber).
+                contentType(MediaType.APPLICATION_OCTET_STREAM).
+                content(data));
+    }
+
+    private static byte[] getPart(int partNumber) {
+        int offset = (partNumber - 1) * PART_SIZE;
+        return Arrays.copyOfRange(BINARY_DATA, offset, Math.min(offset + PART_SIZE, BINARY_DATA.length));
+    }
+
+    //files deleted outside the API leave the index once its watcher reported them
+    private void awaitEmptyIndex() throws Exception {
+        for(int i = 0; i < 250; i++) {
+            String files = mockMvc.perform(get(FILES_URL_PATH)).andReturn().getResponse().getContentAsString();
+            if(files.equals("[]"))
+                return;
+            Thread.sleep(20);
+        }
+        fail("Files deleted outside the API are still indexed");
+    }
+
+    private void cleanup() throws IOException {
+        if(Files.exists(uploadDirectory)) {
+            try(Stream<Path> files = Files.walk(uploadDirectory)) {
+                files.filter(Files::isRegularFile).forEach(file -> {
+                    try {
+                        Files.delete(file);
+                    }catch(IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+        }
+    }
+}
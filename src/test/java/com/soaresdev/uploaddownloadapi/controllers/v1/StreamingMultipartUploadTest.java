@@ -0,0 +1,335 @@
+package com.soaresdev.uploaddownloadapi.controllers.v1;
+
+import com.soaresdev.uploaddownloadapi.configs.FileSystemConfig;
+import com.soaresdev.uploaddownloadapi.dtos.UploadedFileDTO;
+import com.soaresdev.uploaddownloadapi.exceptions.StandardError;
+import com.soaresdev.uploaddownloadapi.repositories.FileChunkRepository;
+import com.soaresdev.uploaddownloadapi.repositories.FileDatabaseRepository;
+import com.soaresdev.uploaddownloadapi.utils.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//runs against the embedded server, so uploads go through the streaming multipart parser instead of MockMvc parts
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"file.upload-directory=testing-streaming", "file.multipart.max-file-size=2MB"})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StreamingMultipartUploadTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private FileSystemConfig fileSystemConfig;
+
+    @Autowired
+    private FileDatabaseRepository fileDatabaseRepository;
+
+    @Autowired
+    private FileChunkRepository fileChunkRepository;
+
+    private Path uploadDirectory;
+
+    private static final String SYSTEM_URL_PATH = "/api/v1/in-system/files";
+    private static final String DATABASE_URL_PATH = "/api/v1/in-database/files";
+    private static final String VALID_FILE_NAME_ONE = "testing-one.bin";
+    private static final String VALID_FILE_NAME_TWO = "testing-two.bin";
+    private static final byte[] BINARY_DATA = new byte[1500000];
+    private static final int FILE_COUNT = 12;
+
+    @BeforeEach
+    void setup() throws Exception {
+        uploadDirectory = Paths.get(fileSystemConfig.getUploadDirectory()).toAbsolutePath().normalize();
+        for(int i = 0; i < BINARY_DATA.length; i++)
+            BINARY_DATA[i] = (byte) (i % 241);
+        //the directory itself stays, the index of the running server watches it
+        try(Stream<Path> files = Files.list(uploadDirectory)) {
+            for(Path file : files.filter(Files::isRegularFile).toList())
+                Files.delete(file);
+        }
+        awaitEmptyIndex();
+        fileDatabaseRepository.deleteAll();
+        fileChunkRepository.deleteAll();
+    }
+
+    @AfterAll
+    void after() throws Exception {
+        FileSystemUtils.deleteRecursively(uploadDirectory);
+    }
+
+    @Test
+    void shouldStreamUploadIntoFileSystem() throws Exception {
+        ResponseEntity<UploadedFileDTO> response = restTemplate.postForEntity(SYSTEM_URL_PATH + "/upload",
+                toMultipartRequest("file", VALID_FILE_NAME_ONE, BINARY_DATA), UploadedFileDTO.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(VALID_FILE_NAME_ONE, response.getBody().getFileName());
+        assertEquals(FileUtils.humanReadableByteCountSI(BINARY_DATA.length), response.getBody().getFileSize());
+        assertArrayEquals(BINARY_DATA, Files.readAllBytes(uploadDirectory.resolve(VALID_FILE_NAME_ONE)));
+        assertArrayEquals(BINARY_DATA, restTemplate.getForObject(SYSTEM_URL_PATH + "/download/" + VALID_FILE_NAME_ONE, byte[].class));
+    }
+
+    @Test
+    void shouldStreamBatchUploadIntoFileSystem() throws Exception {
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("files", toFilePart(VALID_FILE_NAME_ONE, BINARY_DATA));
+        body.add("files", toFilePart(VALID_FILE_NAME_TWO, new byte[10]));
+
+        ResponseEntity<UploadedFileDTO[]> response = restTemplate.postForEntity(SYSTEM_URL_PATH + "/uploads",
+                toMultipartRequest(body), UploadedFileDTO[].class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(2, response.getBody().length);
+        assertEquals(FileUtils.humanReadableByteCountSI(10), response.getBody()[1].getFileSize());
+        assertEquals(2, listStoredFiles().size());
+    }
+
+    @Test
+    void shouldStreamManyFilesOfABatchThroughTheWritersIntoFileSystem() throws Exception {
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        for(int i = 0; i < FILE_COUNT; i++)
+            body.add("files", toFilePart(getFileName(i), getData(i)));
+
+        ResponseEntity<UploadedFileDTO[]> response = restTemplate.postForEntity(SYSTEM_URL_PATH + "/uploads",
+                toMultipartRequest(body), UploadedFileDTO[].class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(FILE_COUNT, response.getBody().length);
+        for(int i = 0; i < FILE_COUNT; i++) {
+            assertEquals(getFileName(i), response.getBody()[i].getFileName());
+            assertArrayEquals(getData(i), Files.readAllBytes(uploadDirectory.resolve(getFileName(i))));
+        }
+    }
+
+    @Test
+    void shouldReturn400AndKeepNothingWhenStreamedFileAlreadyExistsInFileSystem() throws Exception {
+        restTemplate.postForEntity(SYSTEM_URL_PATH + "/upload", toMultipartRequest("file", VALID_FILE_NAME_TWO, new byte[10]),
+                UploadedFileDTO.class);
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("files", toFilePart(VALID_FILE_NAME_ONE, BINARY_DATA));
+        body.add("files", toFilePart(VALID_FILE_NAME_TWO, BINARY_DATA));
+
+        ResponseEntity<StandardError> response = restTemplate.postForEntity(SYSTEM_URL_PATH + "/uploads",
+                toMultipartRequest(body), StandardError.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("File already exists: " + VALID_FILE_NAME_TWO, response.getBody().getMessage());
+        assertEquals(List.of(VALID_FILE_NAME_TWO), listStoredFiles());
+    }
+
+    @Test
+    void shouldStreamUploadIntoDatabase() {
+        ResponseEntity<UploadedFileDTO> response = restTemplate.postForEntity(DATABASE_URL_PATH + "/upload",
+                toMultipartRequest("file", VALID_FILE_NAME_ONE, BINARY_DATA), UploadedFileDTO.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(FileUtils.humanReadableByteCountSI(BINARY_DATA.length), response.getBody().getFileSize());
+        assertArrayEquals(BINARY_DATA, restTemplate.getForObject(DATABASE_URL_PATH + "/download/" + VALID_FILE_NAME_ONE, byte[].class));
+    }
+
+    @Test
+    void shouldStreamBatchUploadIntoDatabase() {
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        for(int i = 0; i < FILE_COUNT; i++)
+            body.add("files", toFilePart(getFileName(i), getData(i)));
+
+        ResponseEntity<UploadedFileDTO[]> response = restTemplate.postForEntity(DATABASE_URL_PATH + "/uploads",
+                toMultipartRequest(body), UploadedFileDTO[].class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(FILE_COUNT, response.getBody().length);
+        for(int i = 0; i < FILE_COUNT; i++)
+            assertArrayEquals(getData(i), restTemplate.getForObject(DATABASE_URL_PATH + "/download/" + getFileName(i), byte[].class));
+    }
+
+    //the name taken is only found when the rows are flushed, after the first part was already stored
+    @Test
+    void shouldReturn400AndKeepNothingWhenStreamedFileAlreadyExistsInDatabase() {
+        restTemplate.postForEntity(DATABASE_URL_PATH + "/upload", toMultipartRequest("file", VALID_FILE_NAME_TWO, new byte[10]),
+                UploadedFileDTO.class);
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("files", toFilePart(VALID_FILE_NAME_ONE, BINARY_DATA));
+        body.add("files", toFilePart(VALID_FILE_NAME_TWO, BINARY_DATA));
+
+        ResponseEntity<StandardError> response = restTemplate.postForEntity(DATABASE_URL_PATH + "/uploads",
+                toMultipartRequest(body), StandardError.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("File already exists: " + VALID_FILE_NAME_TWO, response.getBody().getMessage());
+        assertEquals(1, fileDatabaseRepository.count());
+        assertEquals(1, fileChunkRepository.count());
+    }
+
+    @Test
+    void shouldReturn400AndKeepNothingWhenFileIsTooLarge() throws Exception {
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("files", toFilePart(VALID_FILE_NAME_ONE, BINARY_DATA));
+        body.add("files", toFilePart(VALID_FILE_NAME_TWO, new byte[3000000]));
+
+        ResponseEntity<StandardError> response = restTemplate.postForEntity(SYSTEM_URL_PATH + "/uploads",
+                toMultipartRequest(body), StandardError.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertTrue(response.getBody().getMessage().startsWith("Maximum upload size exceeded"));
+        assertEquals(List.of(), listStoredFiles());
+    }
+
+    @Test
+    void shouldReturn400WhenPartIsMissing() {
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("other", toFilePart(VALID_FILE_NAME_ONE, BINARY_DATA));
+
+        ResponseEntity<StandardError> response = restTemplate.postForEntity(DATABASE_URL_PATH + "/upload",
+                toMultipartRequest(body), StandardError.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Required part 'file' is not present", response.getBody().getMessage());
+    }
+
+    @Test
+    void shouldReturn400AndKeepNothingWhenPartHeaderIsTooLarge() throws Exception {
+        ResponseEntity<StandardError> response = restTemplate.postForEntity(SYSTEM_URL_PATH + "/upload",
+                toMultipartRequest("file", "testing-" + "a".repeat(2000) + ".bin", BINARY_DATA), StandardError.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Maximum upload size exceeded", response.getBody().getMessage());
+        assertEquals(List.of(), listStoredFiles());
+    }
+
+    @Test
+    void shouldPutRequestBodyIntoFileSystem() throws Exception {
+        ResponseEntity<UploadedFileDTO> response = restTemplate.exchange(SYSTEM_URL_PATH + "/{fileName}", HttpMethod.PUT,
+                toBinaryRequest(BINARY_DATA), UploadedFileDTO.class, VALID_FILE_NAME_ONE);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(FileUtils.humanReadableByteCountSI(BINARY_DATA.length), response.getBody().getFileSize());
+        assertArrayEquals(BINARY_DATA, Files.readAllBytes(uploadDirectory.resolve(VALID_FILE_NAME_ONE)));
+    }
+
+    @Test
+    void shouldReturn400AndKeepNothingWhenRequestBodyIsTooLarge() {
+        ResponseEntity<StandardError> response = restTemplate.exchange(DATABASE_URL_PATH + "/{fileName}", HttpMethod.PUT,
+                toBinaryRequest(new byte[3000000]), StandardError.class, VALID_FILE_NAME_ONE);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Maximum upload size exceeded: " + VALID_FILE_NAME_ONE, response.getBody().getMessage());
+        assertEquals(0, fileDatabaseRepository.count());
+    }
+
+    //the servlet container parses the parts instead, with the same limits
+    @Nested
+    @TestPropertySource(properties = {"file.upload-directory=testing-streaming-servlet", "spring.servlet.multipart.enabled=true"})
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    class WithServletMultipart {
+        @Autowired
+        private TestRestTemplate restTemplate;
+
+        @Autowired
+        private FileSystemConfig fileSystemConfig;
+
+        @AfterAll
+        void after() throws Exception {
+            FileSystemUtils.deleteRecursively(Paths.get(fileSystemConfig.getUploadDirectory()).toAbsolutePath().normalize());
+        }
+
+        @Test
+        void shouldUploadParsedFileIntoFileSystem() {
+            ResponseEntity<UploadedFileDTO> response = restTemplate.postForEntity(SYSTEM_URL_PATH + "/upload",
+                    toMultipartRequest("file", VALID_FILE_NAME_ONE, BINARY_DATA), UploadedFileDTO.class);
+
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertEquals(FileUtils.humanReadableByteCountSI(BINARY_DATA.length), response.getBody().getFileSize());
+            assertArrayEquals(BINARY_DATA, restTemplate.getForObject(SYSTEM_URL_PATH + "/download/" + VALID_FILE_NAME_ONE, byte[].class));
+        }
+
+        @Test
+        void shouldReturn400WhenParsedFileIsTooLarge() {
+            ResponseEntity<StandardError> response = restTemplate.postForEntity(SYSTEM_URL_PATH + "/upload",
+                    toMultipartRequest("file", VALID_FILE_NAME_TWO, new byte[3000000]), StandardError.class);
+
+            assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+            assertEquals("Maximum upload size exceeded", response.getBody().getMessage());
+        }
+    }
+
+    //files deleted outside the API leave the index once its watcher reported them
+    private void awaitEmptyIndex() throws InterruptedException {
+        for(int i = 0; i < 250; i++) {
+            if(restTemplate.getForObject(SYSTEM_URL_PATH, UploadedFileDTO[].class).length == 0)
+                return;
+            Thread.sleep(20);
+        }
+        fail("Files deleted outside the API are still indexed");
+    }
+
+    //the staging directory is not a stored file
+    private List<String> listStoredFiles() throws IOException {
+        try(Stream<Path> files = Files.list(uploadDirectory)) {
+            return files.filter(Files::isRegularFile).map(path -> path.getFileName().toString()).toList();
+        }
+    }
+
+    private static String getFileName(int i) {
+        return "testing-batch-" + i + ".bin";
+    }
+
+    //a few files are larger than the pipe to their writer, most are much smaller
+    private static byte[] getData(int i) {
+        byte[] data = new byte[i % 4 == 0 ? 1200000 + i : 1000 * i];
+        for(int j = 0; j < data.length; j++)
+            data[j] = (byte) ((j + i) % 251);
+        return data;
+    }
+
+    private static HttpEntity<byte[]> toBinaryRequest(byte[] data) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        return new HttpEntity<>(data, headers);
+    }
+
+    private static HttpEntity<MultiValueMap<String, Object>> toMultipartRequest(String fieldName, String fileName, byte[] data) {
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add(fieldName, toFilePart(fileName, data));
+        return toMultipartRequest(body);
+    }
+
+    private static HttpEntity<MultiValueMap<String, Object>> toMultipartRequest(MultiValueMap<String, Object> body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        return new HttpEntity<>(body, headers);
+    }
+
+    private static HttpEntity<ByteArrayResource> toFilePart(String fileName, byte[] data) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        return new HttpEntity<>(new ByteArrayResource(data) {
+            @Override
+            public String getFilename() {
+                return fileName;
+            }
+        }, headers);
+    }
+}
@@ -0,0 +1,49 @@
+package com.soaresdev.uploaddownloadapi.repositories;
+
+import com.soaresdev.uploaddownloadapi.entities.FileChunkEntity;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class FileChunkRepositoryTest {
+    @Autowired
+    private FileChunkRepository fileChunkRepository;
+
+    private static final UUID FILE_ID = UUID.randomUUID();
+    private static final byte[] FIRST_CHUNK = "Testing...".getBytes();
+    private static final byte[] SECOND_CHUNK = "...again".getBytes();
+
+    @BeforeAll
+    void setup() {
+        fileChunkRepository.save(new FileChunkEntity(FILE_ID, 0, FIRST_CHUNK));
+        fileChunkRepository.save(new FileChunkEntity(FILE_ID, 1, SECOND_CHUNK));
+    }
+
+    @Test
+    void shouldFindChunkDataByFileIdAndSequence() {
+        Optional<byte[]> data = fileChunkRepository.findDataByFileIdAndSequence(FILE_ID, 1);
+
+        assertTrue(data.isPresent());
+        assertArrayEquals(SECOND_CHUNK, data.get());
+    }
+
+    @Test
+    void shouldNotFindChunkDataAfterLastSequence() {
+        assertFalse(fileChunkRepository.findDataByFileIdAndSequence(FILE_ID, 2).isPresent());
+    }
+
+    @Test
+    void shouldNotFindChunkDataOfOtherFile() {
+        assertFalse(fileChunkRepository.findDataByFileIdAndSequence(UUID.randomUUID(), 0).isPresent());
+    }
+}
@@ -1,6 +1,7 @@
 package com.soaresdev.uploaddownloadapi.repositories;
 
 import com.soaresdev.uploaddownloadapi.entities.FileDatabaseEntity;
+import com.soaresdev.uploaddownloadapi.projections.FileDatabaseMetadata;
 import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -22,11 +23,11 @@ class FileDatabaseRepositoryTest {
     private static final String IN_DB_FILE_NAME = "testing.txt";
     private static final String NOT_IN_DB_FILE_NAME = "other-text.txt";
     private static final long ONE_MB_IN_BYTES = 1000000;
-    private static final byte[] BINARY_DATA = "Testing...".getBytes();
+    private static final int CHUNK_SIZE = 1024;
 
     @BeforeAll
     void setup() {
-        fileDatabaseRepository.save(new FileDatabaseEntity(IN_DB_FILE_NAME, MediaType.TEXT_PLAIN_VALUE, ONE_MB_IN_BYTES, BINARY_DATA));
+        fileDatabaseRepository.save(new FileDatabaseEntity(IN_DB_FILE_NAME, MediaType.TEXT_PLAIN_VALUE, ONE_MB_IN_BYTES, CHUNK_SIZE));
     }
 
     @Test
@@ -37,7 +38,7 @@ class FileDatabaseRepositoryTest {
         assertEquals(IN_DB_FILE_NAME, file.get().getFileName());
         assertEquals(MediaType.TEXT_PLAIN_VALUE, file.get().getFileType());
         assertEquals(ONE_MB_IN_BYTES, file.get().getFileByteSize());
-        assertArrayEquals(BINARY_DATA, file.get().getBinaryData());
+        assertEquals(CHUNK_SIZE, file.get().getChunkSize());
     }
 
     @Test
@@ -47,6 +48,23 @@ class FileDatabaseRepositoryTest {
         assertFalse(file.isPresent());
     }
 
+    @Test
+    void shouldFindFileDatabaseMetadataByFileName() {
+        Optional<FileDatabaseMetadata> file = fileDatabaseRepository.findMetadataByFileName(IN_DB_FILE_NAME);
+
+        assertTrue(file.isPresent());
+        assertNotNull(file.get().getId());
+        assertEquals(IN_DB_FILE_NAME, file.get().getFileName());
+        assertEquals(MediaType.TEXT_PLAIN_VALUE, file.get().getFileType());
+        assertEquals(ONE_MB_IN_BYTES, file.get().getFileByteSize());
+        assertEquals(CHUNK_SIZE, file.get().getChunkSize());
+    }
+
+    @Test
+    void shouldNotFindFileDatabaseMetadataByFileName() {
+        assertFalse(fileDatabaseRepository.findMetadataByFileName(NOT_IN_DB_FILE_NAME).isPresent());
+    }
+
     @Test
     void shouldFileDatabaseEntityExistsByFileName() {
         assertTrue(fileDatabaseRepository.existsByFileName(IN_DB_FILE_NAME));
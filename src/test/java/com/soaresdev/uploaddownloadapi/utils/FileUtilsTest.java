@@ -0,0 +1,72 @@
+package com.soaresdev.uploaddownloadapi.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//expected values are what ^[a-zA-Z0-9](?:[a-zA-Z0-9. _-]*[a-zA-Z0-9])?\.[a-zA-Z0-9_-]+$ and
+//String.format("%.1f %cB") returned before both were replaced
+class FileUtilsTest {
+    @ParameterizedTest
+    @CsvSource({
+            "a.txt, true",
+            "1.2, true",
+            "A.B, true",
+            "file.tar.gz, true",
+            "a.t.x, true",
+            "a b.txt, true",
+            "my file_1-2.pdf, true",
+            "a.t-x_t, true",
+            "CON.txt, true",
+            "'', false",
+            "., false",
+            ".., false",
+            "..., false",
+            ".txt, false",
+            "a., false",
+            "a..txt, false",
+            "file, false",
+            "nul, false",
+            "-a.txt, false",
+            "a-.txt, false",
+            "'a .txt', false",
+            "a.tx t, false",
+            "../a.txt, false",
+            "a/b.txt, false",
+            "ação.txt, false"
+    })
+    void shouldValidateFileNamesLikeTheRegex(String fileName, boolean valid) {
+        assertEquals(valid, FileUtils.isValidFileName(fileName));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0, 0 B",
+            "1, 1 B",
+            "-1, -1 B",
+            "999, 999 B",
+            "-999, -999 B",
+            "1000, 1.0 kB",
+            "-1000, -1.0 kB",
+            "1049, 1.0 kB",
+            "1050, 1.1 kB",
+            "1149, 1.1 kB",
+            "1150, 1.2 kB",
+            "999949, 999.9 kB",
+            "-999949, -999.9 kB",
+            "999950, 1.0 MB",
+            "-999950, -1.0 MB",
+            "1000000, 1.0 MB",
+            "1049999, 1.0 MB",
+            "1050000, 1.1 MB",
+            "999949999, 999.9 MB",
+            "999950000, 1.0 GB",
+            "1000000000000, 1.0 TB",
+            "9223372036854775807, 9.2 EB",
+            "-9223372036854775808, -9.2 EB"
+    })
+    void shouldFormatByteCountsLikeTheFormatter(long bytes, String byteCount) {
+        assertEquals(byteCount, FileUtils.humanReadableByteCountSI(bytes));
+    }
+}